@@ -1,7 +1,9 @@
 import controller.AppController;
 import ui.LoginFrame;
+import util.PasswordUtil;
 
 import javax.swing.*;
+import java.util.concurrent.Executors;
 
 /**
  * Alkalmazás belépési pont.
@@ -12,8 +14,12 @@ public class Main {
      * @param args parancssori argumentumok
      */
     public static void main(String[] args) {
+        //bcrypt költség kalibrálása a géphez, az indulást nem tartja fel
+        Thread.ofVirtual().name("bcrypt-calibration").start(() -> PasswordUtil.calibrate(PasswordUtil.configuredBudget()));
+        //fájlműveletek virtuális szálakon, az eseménykezelő szál sosem vár a lemezre
+        AppController controller = new AppController(Executors.newVirtualThreadPerTaskExecutor());
+        Runtime.getRuntime().addShutdownHook(new Thread(controller::flush));
         SwingUtilities.invokeLater(() -> {
-            AppController controller = new AppController();
             LoginFrame loginFrame = new LoginFrame(controller);
             loginFrame.setVisible(true);
         });
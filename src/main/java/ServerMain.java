@@ -0,0 +1,65 @@
+import controller.AppController;
+import persistence.ReplicationLog;
+import server.ChatServer;
+import server.ReplicationLeader;
+import util.PasswordUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Fej nélküli szerver belépési pont: egyetlen folyamat birtokolja az adattárat,
+ * a kliensek TCP-n kapcsolódnak.
+ * Használat: ServerMain [port] [adatfájl] [replikációs port] [replikációs cím]
+ * A replikációs port megadásakor a csak olvasható replikák ({@link server.Replica}) ott kapcsolódhatnak;
+ * a végpont alapértelmezésben csak a helyi gépen figyel, és a {@value #REPLICATION_SECRET_ENV}
+ * környezeti változó titkát igazoló replikákat szolgálja ki.
+ */
+public class ServerMain {
+
+    /** Alapértelmezett port */
+    private static final int DEFAULT_PORT = 5190;
+
+    /** A replikációs titkot tartalmazó környezeti változó */
+    public static final String REPLICATION_SECRET_ENV = "CHAT_REPLICATION_SECRET";
+
+    /**
+     * Szerver indítása és futtatása leállításig.
+     * @param args port, adatfájl, replikációs port és cím (opcionálisak)
+     * @throws IOException ha a port nem nyitható meg
+     * @throws InterruptedException ha a fő szálat megszakítják
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        File dataFile = new File(args.length > 1 ? args[1] : AppController.DATA_FILE_PATH);
+        PasswordUtil.calibrate(PasswordUtil.configuredBudget());
+        AppController controller = new AppController(dataFile, Executors.newVirtualThreadPerTaskExecutor());
+        ChatServer server = new ChatServer(controller, new InetSocketAddress(port));
+        server.start();
+        ReplicationLeader replication = null;
+        String secret = System.getenv(REPLICATION_SECRET_ENV);
+        if (args.length > 2 && (secret == null || secret.isEmpty())) {
+            System.err.println("A replikációhoz a " + REPLICATION_SECRET_ENV + " környezeti változó szükséges, a replikáció nem indul");
+        } else if (args.length > 2) {
+            //más gépről csak kifejezetten megadott címen érhető el
+            InetAddress host = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+            replication = new ReplicationLeader(controller, new InetSocketAddress(host, Integer.parseInt(args[2])),
+                    ReplicationLog.DEFAULT_CAPACITY, secret.getBytes(StandardCharsets.UTF_8));
+            replication.start();
+            System.out.println("Replikáció a " + host.getHostAddress() + ":" + replication.getPort() + " címen");
+        }
+        final ReplicationLeader leader = replication;
+        //leállításkor előbb a kapcsolatok zárulnak, utána a függő mentés
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            if (leader != null) leader.close();
+            controller.flush();
+        }));
+        System.out.println("Szerver fut a " + server.getPort() + " porton, adatfájl: " + dataFile.getPath());
+        server.awaitTermination();
+    }
+}
@@ -1,37 +1,159 @@
 package controller;
 
+import model.Message;
 import model.Permissions;
+import persistence.ChangeRing;
 import persistence.DataStore;
-import persistence.FileManager;
+import persistence.ReplicationLog;
+import persistence.Storage;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * MVC Controller réteg - üzleti logika és adatkezelés.
+ * A fájlműveletek (mentés, újratöltés) a megadott I/O executoron futnak; az alapértelmezett
+ * konstruktor a hívó szálán végzi őket, a grafikus alkalmazás virtuális szálas executort ad meg,
+ * így az eseménykezelő szál sosem nyúl a lemezhez.
  */
 public class AppController {
-    private static final String DATA_FILE_PATH = "data/offline-chat.dat";
+    /** Alapértelmezett adatfájl (a Swing kliens és a szerver is ezt használja) */
+    public static final String DATA_FILE_PATH = "data/offline-chat.dat";
     private static final int MIN_USERNAME_LENGTH = 3;
     private static final int MAX_USERNAME_LENGTH = 20;
     private static final int MAX_MESSAGE_LENGTH = 1000;
     private static final int MAX_GROUP_NAME_LENGTH = 30;
+    private static final Duration SESSION_TTL = Duration.ofHours(12);
+    //percre kerekített takarítás: 12 órára 722 rekesz
+    private static final Duration SESSION_TICK = Duration.ofMinutes(1);
+    /** Olvasottsági jelek mentésének késleltetése; közben a jelölések összevonódnak */
+    private static final long READ_MARK_SAVE_DELAY_MILLIS = 5_000;
+    /** Változás figyelő lekérdezési időköze: változás után rövid, tétlenül legfeljebb 2 ms */
+    private static final long LISTENER_MIN_PARK_NANOS = 50_000;
+    private static final long LISTENER_MAX_PARK_NANOS = 2_000_000;
+    //üzenet folyamok kézbesítése, a küldő szálától függetlenül
+    private static final Executor STREAM_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    /** Alapértelmezett küldési keret: tartósan 5 üzenet/mp, 20-as löket */
+    private static final RateLimiter.Limit DEFAULT_SEND_LIMIT = new RateLimiter.Limit(5, 20);
 
-    private DataStore store;
-    private final File dataFile;
-    private long lastLoadedTimestamp = 0;
+    private volatile DataStore store;
+    private final Storage storage;
+    private final Executor ioExecutor;
+    private volatile long lastLoadedTimestamp = 0;
+
+    /** Mentés kérve, de a pillanatkép még nem készült el (az összevont mentés ezt is viszi) */
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    /** Mentetlen olvasottsági jel van, a késleltetett mentés ütemezve */
+    private final AtomicBoolean readMarksDirty = new AtomicBoolean();
+
+    /** Folyamatban lévő újratöltés, a következő tick addig kimarad */
+    private final AtomicBoolean reloadRunning = new AtomicBoolean();
+
+    /** Mentések és újratöltések sorosítása */
+    private final Object ioLock = new Object();
+
+    /**
+     * Az adattár cseréjének sorrendező zárja: a módosítók közösen, az újratöltés kizárólagosan
+     * fogja, így a cserét megelőző verzió ellenőrzés alatt nem futhat módosítás a régi példányon.
+     */
+    private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    /** Jelszó műveletek korlátos munkaszál készlete */
+    private final AuthService auth = new AuthService();
+
+    /** Bejelentkezési munkamenetek (nem mentjük, újraindításkor újra be kell lépni) */
+    private final SessionManager sessions = new SessionManager(SESSION_TTL, SESSION_TICK);
+
+    /** Felhasználónkénti küldési keret */
+    private final RateLimiter sendLimiter = new RateLimiter(DEFAULT_SEND_LIMIT);
+
+    /** Üzenet befogadó sor, az első küldéskor indul */
+    private volatile MessageCommitter committer;
+
+    /** Folyamatok közötti változás értesítő az adatfájl mellett (null: csak fájlfigyelés) */
+    private final ChangeRing changes;
+
+    /** Mentés után közzéteendő változott beszélgetések */
+    private final Queue<UUID> unpublished = new ConcurrentLinkedQueue<>();
+
+    /** Az értesítőt figyelő szál, ha fut */
+    private volatile Thread changeListener;
+
+    /** Replikációs napló, ha ez a folyamat replikákat szolgál ki */
+    private volatile ReplicationLog journal;
+
+    /** Folyamaton belüli változás értesítő (ablakok, előnézet) */
+    private final EventBus events = new EventBus();
+
+    /** Mentés után közzéteendő, nem üzenet jellegű változás történt (tagság, barátság) */
+    private volatile boolean unpublishedGeneral;
 
     /**
      * Controller inicializálása - adatok betöltése vagy új DataStore létrehozása.
+     * A fájlműveletek szinkron futnak a hívó szálán.
      */
     public AppController() {
-        this.dataFile = new File(DATA_FILE_PATH);
-        this.dataFile.getParentFile().mkdirs();
+        this(Runnable::run);
+    }
+
+    /**
+     * Controller inicializálása háttér I/O executorral.
+     * @param ioExecutor a mentéseket és újratöltéseket futtató executor
+     */
+    public AppController(Executor ioExecutor) {
+        this(new File(DATA_FILE_PATH), ioExecutor);
+    }
+
+    /**
+     * Controller inicializálása megadott adatfájllal és I/O executorral.
+     * @param dataFile adatfájl
+     * @param ioExecutor a mentéseket és újratöltéseket futtató executor
+     */
+    public AppController(File dataFile, Executor ioExecutor) {
+        this(Storage.open(dataFile, Integer.getInteger(Storage.SHARDS_PROPERTY, 0)), ioExecutor);
+    }
+
+    /**
+     * Controller inicializálása megadott tárolóval (pl. shardolt) és I/O executorral.
+     * @param storage tároló
+     * @param ioExecutor a mentéseket és újratöltéseket futtató executor
+     */
+    public AppController(Storage storage, Executor ioExecutor) {
+        this.storage = storage;
+        this.ioExecutor = ioExecutor;
+        File dataFile = storage.location();
+        File parent = dataFile.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
         
-        DataStore loaded = FileManager.load(dataFile);
+        DataStore loaded = storage.load();
         this.store = (loaded != null) ? loaded : new DataStore();
         updateTimestamp();
+        this.changes = openChangeRing(dataFile);
+    }
+
+    private static ChangeRing openChangeRing(File dataFile) {
+        try {
+            return ChangeRing.open(new File(dataFile.getPath() + ".events"), ChangeRing.DEFAULT_CAPACITY);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Változás értesítő nem elérhető, marad a fájlfigyelés: " + e.getMessage());
+            return null;
+        }
     }
 
     
@@ -43,29 +165,342 @@ public class AppController {
         return store;
     }
 
+    /**
+     * Változás értesítő elérése.
+     * @return az eseménybusz
+     */
+    public EventBus getEventBus() {
+        return events;
+    }
+
+    /**
+     * Egy csoport új üzenetei és törlései folyamként, alapértelmezett pufferrel.
+     * @param groupId csoport UUID
+     * @return publisher; minden feliratkozó csak a feliratkozása utáni eseményeket kapja
+     */
+    public Flow.Publisher<MessageEvent> groupMessageEvents(UUID groupId) {
+        return groupMessageEvents(groupId, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Egy csoport új üzenetei és törlései folyamként.
+     * @param groupId csoport UUID
+     * @param bufferSize feliratkozónként legfeljebb ennyi ki nem kézbesített elem; felette
+     *                   a régiek eldobódnak és {@link MessageEvent.FellBehind} jelzi
+     * @return publisher
+     */
+    public Flow.Publisher<MessageEvent> groupMessageEvents(UUID groupId, int bufferSize) {
+        return new MessageStream(events, () -> Map.of(groupId, () -> store.getGroupMessages(groupId)),
+                null, m -> true, bufferSize, STREAM_EXECUTOR);
+    }
+
+    /**
+     * Egy privát beszélgetés új üzenetei folyamként, alapértelmezett pufferrel.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return publisher
+     */
+    public Flow.Publisher<MessageEvent> privateMessageEvents(String a, String b) {
+        return privateMessageEvents(a, b, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Egy privát beszélgetés új üzenetei folyamként.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @param bufferSize feliratkozónkénti puffer mérete
+     * @return publisher
+     */
+    public Flow.Publisher<MessageEvent> privateMessageEvents(String a, String b, int bufferSize) {
+        UUID conversation = DataStore.privateConversationId(a, b);
+        return new MessageStream(events, () -> Map.of(conversation, () -> store.getPrivateMessages(a, b)),
+                null, m -> true, bufferSize, STREAM_EXECUTOR);
+    }
+
+    /**
+     * A felhasználó bejövő üzenetei minden beszélgetéséből, alapértelmezett pufferrel.
+     * @param username felhasználónév
+     * @return publisher
+     */
+    public Flow.Publisher<MessageEvent> inboxEvents(String username) {
+        return inboxEvents(username, Flow.defaultBufferSize());
+    }
+
+    /**
+     * A felhasználó bejövő üzenetei minden barátjától és csoportjából; a saját üzenetei
+     * kimaradnak. Barátság és tagság változáskor a beszélgetések köre követi a felhasználót.
+     * @param username felhasználónév
+     * @param bufferSize feliratkozónkénti puffer mérete
+     * @return publisher
+     */
+    public Flow.Publisher<MessageEvent> inboxEvents(String username, int bufferSize) {
+        return new MessageStream(events, () -> inboxConversations(username), username,
+                m -> !username.equals(store.getUsernameById(m.getSenderId())), bufferSize, STREAM_EXECUTOR);
+    }
+
+    //a felhasználó beszélgetései: barátonként a privát, és a csoportjai
+    private Map<UUID, Supplier<List<Message>>> inboxConversations(String username) {
+        DataStore s = store;
+        Map<UUID, Supplier<List<Message>>> m = new HashMap<>();
+        for (String friend : s.getFriends(username)) {
+            m.put(DataStore.privateConversationId(username, friend), () -> store.getPrivateMessages(username, friend));
+        }
+        for (UUID groupId : s.getGroupsOf(username)) {
+            m.put(groupId, () -> store.getGroupMessages(groupId));
+        }
+        return m;
+    }
+
     private void updateTimestamp() {
-        if (dataFile.exists()) {
-            lastLoadedTimestamp = dataFile.lastModified();
+        if (storage.exists()) {
+            lastLoadedTimestamp = storage.lastModified();
         }
     }
 
     /**
-     * Adattár újratöltése fájlból, ha módosult.
+     * Adattár újratöltése fájlból, ha módosult (a hívó szálán).
+     * @return true ha új adattár került betöltésre
      */
-    public void reloadStore() {
-        if (!dataFile.exists()) return;
-        
-        long currentFileTime = dataFile.lastModified();
-        //csak akkor töltünk újra, ha a fájl módosult az utolsó betöltés óta
-        if (currentFileTime > lastLoadedTimestamp) {
-            DataStore loaded = FileManager.load(dataFile);
-            if (loaded != null) {
+    public boolean reloadStore() {
+        if (!reload(false)) return false;
+        events.publish(new StoreEvent.StoreReloaded());
+        return true;
+    }
+
+    //force: értesítés alapján, a módosítási időtől függetlenül (az időbélyeg felbontása durva lehet)
+    private boolean reload(boolean force) {
+        synchronized (ioLock) {
+            //függő saját mentés mellett a fájl régebbi a memóriánál
+            if (savePending.get() || !storage.exists()) return false;
+            
+            long currentFileTime = storage.lastModified();
+            //csak akkor töltünk újra, ha a fájl módosult az utolsó betöltés óta
+            if (!force && currentFileTime <= lastLoadedTimestamp) return false;
+            DataStore current = store;
+            long seen = current.getVersion();
+            DataStore loaded = storage.load();
+            if (loaded == null) return false;
+            //ellenőrzés és csere a módosítók kizárásával: a kettő között nem veszhet el írás
+            storeLock.writeLock().lock();
+            try {
+                //betöltés közbeni helyi módosítást nem írunk felül
+                if (savePending.get() || store != current || current.getVersion() != seen) return false;
+                ReplicationLog j = journal;
+                if (j != null) {
+                    //a replikák a fájlból jött változást csak pillanatképből kaphatják meg
+                    loaded.setJournal(j);
+                    current.setJournal(null);
+                    j.invalidate();
+                }
+                //a még nem mentett olvasottsági jelek nem veszhetnek el
+                if (readMarksDirty.get()) loaded.mergeReadMarks(current);
                 this.store = loaded;
-                updateTimestamp();
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+            lastLoadedTimestamp = currentFileTime;
+            return true;
+        }
+    }
+
+    //értesítés alapján csak a megnevezett beszélgetések újraolvasása; false: teljes újratöltés kell
+    private boolean reloadConversations(Set<UUID> changed) {
+        if (changed.contains(null)) return false;
+        synchronized (ioLock) {
+            if (savePending.get()) return false;
+            DataStore current = store;
+            long seen = current.getVersion();
+            Map<Object, List<Message>> logs = storage.loadConversations(current, changed);
+            if (logs == null) return false;
+            storeLock.writeLock().lock();
+            try {
+                if (savePending.get() || store != current || current.getVersion() != seen) return false;
+                current.restoreConversations(logs);
+                //a replikák a fájlból jött változást csak pillanatképből kaphatják meg
+                ReplicationLog j = journal;
+                if (j != null) j.invalidate();
+            } finally {
+                storeLock.writeLock().unlock();
             }
+            lastLoadedTimestamp = storage.lastModified();
+            return true;
+        }
+    }
+
+    //módosítás az aktuális adattáron; amíg fut, az adattár nem cserélődhet le
+    private <T> T mutate(Function<DataStore, T> op) {
+        storeLock.readLock().lock();
+        try {
+            return op.apply(store);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private void mutateRun(Consumer<DataStore> op) {
+        storeLock.readLock().lock();
+        try {
+            op.accept(store);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replikációs napló bekapcsolása (az író folyamatban, replikák kiszolgálásához).
+     * @param capacity megtartott bejegyzések száma
+     * @return a napló (ismételt hívásra a meglévő)
+     */
+    public synchronized ReplicationLog enableReplication(int capacity) {
+        if (journal == null) {
+            ReplicationLog j = new ReplicationLog(capacity);
+            store.setJournal(j);
+            journal = j;
+        }
+        return journal;
+    }
+
+    /**
+     * Van-e másik folyamattól érkezett, még fel nem dolgozott változás értesítés.
+     * Csak betekintés: az értesítéseket a változás figyelő szál dolgozza fel, ez a hívás nem fogyasztja el őket.
+     * Tétlen állapotban egyetlen volatile olvasás a leképezett fájlon.
+     * @return true ha más folyamat mentett azóta
+     */
+    public boolean hasPendingChanges() {
+        ChangeRing ring = changes;
+        if (ring == null || !ring.hasNew()) return false;
+        synchronized (ring) {
+            return ring.hasForeign();
+        }
+    }
+
+    //a változott beszélgetések gyűjtése (null elem: általános változás)
+    private boolean pollChanges(Set<UUID> changed) {
+        ChangeRing ring = changes;
+        if (ring == null || !ring.hasNew()) return false;
+        synchronized (ring) {
+            return ring.poll(change -> changed.add(change.conversation())) > 0;
+        }
+    }
+
+    /**
+     * Változás figyelő szál indítása; más folyamat mentése után újratölt és az eseménybuszon jelez.
+     * @return false ha az értesítő nem elérhető (ilyenkor marad az időzített újratöltés)
+     */
+    public boolean startChangeListener() {
+        return startChangeListener(() -> { });
+    }
+
+    /**
+     * Változás figyelő szál indítása: más folyamat mentése után azonnal újratölt, az eseménybuszon
+     * közzéteszi a változott beszélgetéseket, majd meghívja a megadott műveletet (a figyelő szálon).
+     * Tétlenül a lekérdezési időköz fokozatosan nő, változás után újra rövid.
+     * @param onReload újratöltés utáni művelet
+     * @return false ha az értesítő nem elérhető (ilyenkor marad az időzített újratöltés)
+     */
+    public synchronized boolean startChangeListener(Runnable onReload) {
+        if (changes == null) return false;
+        if (changeListener != null) return true;
+        Thread t = new Thread(() -> {
+            long idle = LISTENER_MIN_PARK_NANOS;
+            Set<UUID> changed = new LinkedHashSet<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                if (pollChanges(changed)) {
+                    idle = LISTENER_MIN_PARK_NANOS;
+                    if (reloadConversations(changed) || reload(true)) {
+                        publishReloaded(changed);
+                        onReload.run();
+                    }
+                    changed.clear();
+                } else {
+                    LockSupport.parkNanos(idle);
+                    idle = Math.min(idle * 2, LISTENER_MAX_PARK_NANOS);
+                }
+            }
+        }, "change-listener");
+        t.setDaemon(true);
+        changeListener = t;
+        t.start();
+        return true;
+    }
+
+    /**
+     * Változás figyelő szál leállítása.
+     */
+    public synchronized void stopChangeListener() {
+        Thread t = changeListener;
+        changeListener = null;
+        if (t != null) t.interrupt();
+    }
+
+    //más folyamat mentése után: üzenet értesítésnél csak az érintett beszélgetések, egyébként mindenki
+    private void publishReloaded(Set<UUID> changed) {
+        if (changed.contains(null)) {
+            events.publish(new StoreEvent.StoreReloaded());
+            return;
+        }
+        DataStore s = store;
+        for (UUID c : changed) {
+            //privát beszélgetésnél a gyűrű csak az azonosítót hozza
+            int seq = s.getGroup(c) != null ? s.getGroupMessages(c).size() - 1 : -1;
+            events.publish(new StoreEvent.MessageAdded(c, seq));
         }
     }
 
+    //helyi változás: közzététel a folyamaton belül, a mentés után a többi folyamatnak is
+    private void emit(StoreEvent event) {
+        if (!(event instanceof StoreEvent.MessageAdded)) unpublishedGeneral = true;
+        events.publish(event);
+    }
+
+    //új üzenet helyi közzététele
+    private void messageAdded(UUID conversation, List<Message> log) {
+        unpublished.add(conversation);
+        emit(new StoreEvent.MessageAdded(conversation, log.size() - 1));
+    }
+
+    //mentés után: a változott beszélgetések közzététele a többi folyamatnak
+    private void publishChanges() {
+        ChangeRing ring = changes;
+        boolean general = unpublishedGeneral;
+        unpublishedGeneral = false;
+        if (ring == null) {
+            unpublished.clear();
+            return;
+        }
+        Set<UUID> changed = new LinkedHashSet<>();
+        UUID id;
+        while ((id = unpublished.poll()) != null) changed.add(id);
+        //a nem üzenet jellegű módosítás (tagság, barátság) általános eseményt kap
+        if (changed.isEmpty() || general) ring.publish(null);
+        for (UUID c : changed) ring.publish(c);
+    }
+
+    /**
+     * Adattár újratöltése az I/O executoron. Ha már fut egy újratöltés, nem indít újat.
+     * Az eredményt a hívónak kell a saját (pl. Swing) szálára juttatnia.
+     * @return true-val teljesül, ha új adattár került betöltésre
+     */
+    public CompletableFuture<Boolean> reloadStoreAsync() {
+        if (!reloadRunning.compareAndSet(false, true)) return CompletableFuture.completedFuture(false);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            ioExecutor.execute(() -> {
+                try {
+                    result.complete(reloadStore());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    reloadRunning.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            reloadRunning.set(false);
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     //segéd metódus - művelet végrehajtása és mentés
     private boolean executeAndSave(BooleanSupplier operation) {
         boolean ok = operation.getAsBoolean();
@@ -95,20 +530,60 @@ public class AppController {
     }
 
     /**
-     * Adatok mentése fájlba.
-     * @return true ha sikeres
+     * Adatok mentése fájlba az I/O executoron.
+     * Az egymás után kért mentések összevonódnak: amíg egy mentés várakozik, az újabb kérés
+     * nem ütemez újat, mert a várakozó mentés a pillanatképet csak induláskor készíti el.
+     * @return szinkron executornál a mentés eredménye, háttér executornál true (ütemezve)
      */
     public boolean saveStore() {
+        if (!savePending.compareAndSet(false, true)) return true;
+        AtomicBoolean result = new AtomicBoolean(true);
         try {
-            boolean saved = FileManager.save(store, dataFile);
-            if (saved) {
-                updateTimestamp();
-            }
-            return saved;
-        } catch (Exception e) {
+            ioExecutor.execute(() -> result.set(writeStore()));
+        } catch (RuntimeException | Error e) {
+            //a jelző nem ragadhat be, különben több mentés nem indulna
+            savePending.set(false);
             e.printStackTrace();
             return false;
         }
+        return result.get();
+    }
+
+    /**
+     * Függő mentés azonnali elvégzése a hívó szálán (pl. kilépéskor).
+     * @return true ha nem volt függő mentés, vagy sikeresen lefutott
+     */
+    public boolean flush() {
+        //a zár megvárja a folyamatban lévő mentést is
+        synchronized (ioLock) {
+            boolean pending = savePending.get();
+            if (!pending && !readMarksDirty.get()) return true;
+            return writeStore(pending);
+        }
+    }
+
+    private boolean writeStore() {
+        return writeStore(true);
+    }
+
+    //tényleges mentés; a jelzőket a pillanatkép előtt töröljük, így az utána jövő módosítás új mentést kér
+    //publish: false csak az olvasottsági jelek mentésénél, azokról a többi folyamat nem kap értesítést
+    private boolean writeStore(boolean publish) {
+        synchronized (ioLock) {
+            savePending.set(false);
+            readMarksDirty.set(false);
+            try {
+                boolean saved = storage.save(store);
+                if (saved) {
+                    updateTimestamp();
+                    if (publish) publishChanges();
+                }
+                return saved;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
     }
     
     /**
@@ -118,6 +593,31 @@ public class AppController {
      * @return regisztráció eredménye
      */
     public RegistrationResult registerUser(String username, String passwordHash) {
+        RegistrationResult invalid = checkUsername(username);
+        if (invalid != null) return invalid;
+        
+        boolean created = executeAndSave(() -> mutate(s -> s.registerUser(username, passwordHash)));
+        return created ? RegistrationResult.SUCCESS : RegistrationResult.USERNAME_ALREADY_TAKEN;
+    }
+
+    /**
+     * Regisztráció jelszó hash-eléssel a hitelesítő munkaszálakon.
+     * A név ellenőrzése azonnal megtörténik, hibás névnél nem hash-elünk.
+     * @param username felhasználónév
+     * @param plainPassword jelszó
+     * @return a regisztráció eredményével teljesül; túlterheléskor RejectedExecutionException-nel
+     */
+    public CompletableFuture<RegistrationResult> registerUserAsync(String username, String plainPassword) {
+        RegistrationResult invalid = checkUsername(username);
+        if (invalid != null) return CompletableFuture.completedFuture(invalid);
+        if (store.getUserByName(username) != null) {
+            return CompletableFuture.completedFuture(RegistrationResult.USERNAME_ALREADY_TAKEN);
+        }
+        return auth.hash(plainPassword).thenApply(hash -> registerUser(username, hash));
+    }
+
+    //felhasználónév hossz ellenőrzés, null ha megfelelő
+    private RegistrationResult checkUsername(String username) {
         if (username == null || username.isBlank()) {
             return RegistrationResult.USERNAME_TOO_SHORT;
         }
@@ -127,9 +627,7 @@ public class AppController {
         if (username.length() > MAX_USERNAME_LENGTH) {
             return RegistrationResult.USERNAME_TOO_LONG;
         }
-        
-        boolean created = executeAndSave(() -> store.registerUser(username, passwordHash));
-        return created ? RegistrationResult.SUCCESS : RegistrationResult.USERNAME_ALREADY_TAKEN;
+        return null;
     }
 
     /**
@@ -141,11 +639,70 @@ public class AppController {
     public boolean authenticateUser(String username, String plainPassword) {
         var user = store.getUserByName(username);
         if (user == null) return false;
+        boolean ok;
         try {
-            return util.PasswordUtil.checkPassword(plainPassword, user.getPasswordHash());
+            ok = util.PasswordUtil.checkPassword(plainPassword, user.getPasswordHash());
         } catch (Exception e) {
             return false;
         }
+        if (ok) rehashIfNeeded(username, plainPassword, user.getPasswordHash());
+        return ok;
+    }
+
+    /**
+     * Felhasználó hitelesítése a hitelesítő munkaszálakon.
+     * @param username felhasználónév
+     * @param plainPassword jelszó
+     * @return true-val teljesül ha sikeres; túlterheléskor RejectedExecutionException-nel
+     */
+    public CompletableFuture<Boolean> authenticateUserAsync(String username, String plainPassword) {
+        var user = store.getUserByName(username);
+        if (user == null) return CompletableFuture.completedFuture(false);
+        String stored = user.getPasswordHash();
+        return auth.verify(plainPassword, stored).thenApply(ok -> {
+            if (ok) rehashIfNeeded(username, plainPassword, stored);
+            return ok;
+        });
+    }
+
+    /**
+     * Bejelentkezés jelszóval; siker esetén munkamenet token keletkezik.
+     * @param username felhasználónév
+     * @param plainPassword jelszó
+     * @return a tokennel teljesül, sikertelen hitelesítésnél null-lal
+     */
+    public CompletableFuture<String> loginAsync(String username, String plainPassword) {
+        return authenticateUserAsync(username, plainPassword)
+            .thenApply(ok -> ok ? sessions.open(username) : null);
+    }
+
+    /**
+     * Munkamenet folytatása token alapján, bcrypt nélkül.
+     * @param token munkamenet token
+     * @return felhasználónév, vagy null ha a token érvénytelen, lejárt, vagy a felhasználó már nem létezik
+     */
+    public String resumeSession(String token) {
+        String username = sessions.validate(token);
+        if (username == null) return null;
+        return store.getUserByName(username) != null ? username : null;
+    }
+
+    /**
+     * Kijelentkezés: a token érvénytelenítése.
+     * @param token munkamenet token
+     * @return true ha élő munkamenet volt
+     */
+    public boolean logout(String token) {
+        return sessions.close(token);
+    }
+
+    //gyengébb költségű hash cseréje a háttérben; a bejelentkezés nem vár rá
+    private void rehashIfNeeded(String username, String plainPassword, String stored) {
+        if (!util.PasswordUtil.needsRehash(stored)) return;
+        auth.hash(plainPassword).thenAccept(newHash -> {
+            //közben módosult jelszót nem írunk felül
+            if (mutate(s -> s.updatePasswordHash(username, stored, newHash))) saveStore();
+        });
     }
     
     /**
@@ -156,7 +713,8 @@ public class AppController {
      */
     public UUID createGroup(String name, String creatorUsername) {
         if (!isValidGroupName(name)) return null;
-        UUID id = store.createGroup(name, creatorUsername);
+        UUID id = mutate(s -> s.createGroup(name, creatorUsername));
+        if (id != null) emit(new StoreEvent.MemberRoleChanged(id, creatorUsername));
         saveStore();
         return id;
     }
@@ -171,7 +729,7 @@ public class AppController {
         if (group == null) return Collections.emptySet();
         
         Set<String> usernames = new HashSet<>();
-        for (UUID userId : group.getMemberRoles().keySet()) {
+        for (UUID userId : group.getMemberIds()) {
             String username = store.getUsernameById(userId);
             if (username != null) {
                 usernames.add(username);
@@ -188,10 +746,8 @@ public class AppController {
      * @return true ha sikeres
      */
     public boolean addGroupMember(UUID groupId, String username, String role) {
-        var group = store.getGroup(groupId);
-        var user = store.getUserByName(username);
-        if (group == null || user == null) return false;
-        group.addMember(user.getId(), role);
+        if (!mutate(s -> s.addGroupMember(groupId, username, role))) return false;
+        emit(new StoreEvent.MemberRoleChanged(groupId, username));
         return saveStore();
     }
 
@@ -208,6 +764,37 @@ public class AppController {
         return group.isAdmin(user.getId());
     }
 
+    /**
+     * Több csoport módosítás egyetlen tranzakcióban és egyetlen mentéssel.
+     * Ha bármely művelet sikertelen (vagy a törzs megszakítja), semmi sem marad meg belőle.
+     * @param body a módosításokat a kapott kötegen végző művelet
+     * @return true ha minden művelet sikerült és a mentés is
+     */
+    public boolean batch(Consumer<Transaction> body) {
+        Transaction[] last = new Transaction[1];
+        boolean ok = mutate(d -> d.inTransaction(s -> {
+            Transaction tx = new Transaction(s);
+            last[0] = tx;
+            body.accept(tx);
+            return tx.isOk();
+        }));
+        if (!ok) return false;
+        //csak a véglegesített köteg eseményei kerülnek ki
+        for (StoreEvent e : last[0].events()) emit(e);
+        return saveStore();
+    }
+
+    /**
+     * Több tag hozzáadása csoporthoz egy lépésben és egyetlen mentéssel.
+     * @param groupId csoport UUID
+     * @param usernames felhasználónevek
+     * @param role szerep (a csoportban léteznie kell)
+     * @return true ha mindenki bekerült
+     */
+    public boolean addGroupMembers(UUID groupId, Collection<String> usernames, String role) {
+        return batch(tx -> tx.addGroupMembers(groupId, usernames, role));
+    }
+
     /**
      * Tag eltávolítása csoportból.
      * @param groupId csoport UUID
@@ -215,10 +802,8 @@ public class AppController {
      * @return true ha sikeres
      */
     public boolean removeGroupMember(UUID groupId, String username) {
-        var group = store.getGroup(groupId);
-        var user = store.getUserByName(username);
-        if (group == null || user == null) return false;
-        group.removeMember(user.getId());
+        if (!mutate(s -> s.removeGroupMember(groupId, username))) return false;
+        emit(new StoreEvent.MemberRoleChanged(groupId, username));
         return saveStore();
     }
 
@@ -229,9 +814,8 @@ public class AppController {
      * @return true ha sikeres
      */
     public boolean addCustomRole(UUID groupId, String role) {
-        var group = store.getGroup(groupId);
-        if (group == null) return false;
-        group.addRole(role);
+        if (!mutate(s -> s.addGroupRole(groupId, role))) return false;
+        emit(new StoreEvent.MemberRoleChanged(groupId, null));
         return saveStore();
     }
 
@@ -243,15 +827,9 @@ public class AppController {
      * @return true ha sikeres
      */
     public boolean setGroupMemberRole(UUID groupId, String username, String role) {
-        var group = store.getGroup(groupId);
-        var user = store.getUserByName(username);
-        if (group == null || user == null) return false;
-        try {
-            group.setMemberRole(user.getId(), role);
-            return saveStore();
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        if (!mutate(s -> s.setGroupMemberRole(groupId, username, role))) return false;
+        emit(new StoreEvent.MemberRoleChanged(groupId, username));
+        return saveStore();
     }
 
     /**
@@ -262,14 +840,9 @@ public class AppController {
      * @return true ha sikeres
      */
     public boolean setRolePermissions(UUID groupId, String role, Set<String> perms) {
-        var group = store.getGroup(groupId);
-        if (group == null) return false;
-        try {
-            group.setRolePermissions(role, perms);
-            return saveStore();
-        } catch (IllegalArgumentException e) {
-            return false;
-        }
+        if (!mutate(s -> s.setGroupRolePermissions(groupId, role, perms))) return false;
+        emit(new StoreEvent.MemberRoleChanged(groupId, null));
+        return saveStore();
     }
 
     /**
@@ -288,15 +861,45 @@ public class AppController {
      * @param groupId csoport UUID
      * @param from küldő
      * @param content tartalom
-     * @return true ha sikeres
+     * @return küldés eredménye
+     */
+    public SendResult sendGroupMessage(UUID groupId, String from, String content) {
+        return sendGroupMessageAsync(groupId, from, content).join();
+    }
+
+    /**
+     * Üzenet küldése csoportba a befogadó soron keresztül, várakozás nélkül.
+     * @param groupId csoport UUID
+     * @param from küldő
+     * @param content tartalom
+     * @return a köteg mentése után teljesülő jövő a küldés eredményével
      */
-    public boolean sendGroupMessage(UUID groupId, String from, String content) {
-        if (!isValidMessage(content)) return false;
-        if (!checkPermission(groupId, from, Permissions.GROUP_SEND_MESSAGE)) return false;
+    public CompletableFuture<SendResult> sendGroupMessageAsync(UUID groupId, String from, String content) {
+        if (!isValidMessage(content)) return CompletableFuture.completedFuture(SendResult.INVALID);
+        if (!checkPermission(groupId, from, Permissions.GROUP_SEND_MESSAGE)) return CompletableFuture.completedFuture(SendResult.FORBIDDEN);
         var user = store.getUserByName(from);
-        if (user == null) return false;
-        store.sendGroupMessage(user.getId(), groupId, content);
-        return saveStore();
+        if (user == null) return CompletableFuture.completedFuture(SendResult.FORBIDDEN);
+        if (!sendLimiter.tryAcquire(from, groupId)) return CompletableFuture.completedFuture(SendResult.RATE_LIMITED);
+        UUID senderId = user.getId();
+        return committer().submit(() -> {
+            if (!mutate(s -> s.sendGroupMessage(senderId, groupId, content))) return false;
+            messageAdded(groupId, store.getGroupMessages(groupId));
+            return true;
+        }).thenApply(AppController::sent);
+    }
+
+    /**
+     * Csoportra vonatkozó küldési keret beállítása (pl. bot csoportoknak nagyobb, zajos csoportnak kisebb).
+     * @param groupId csoport UUID
+     * @param perSecond tartós ütem (üzenet/mp)
+     * @param burst löketméret
+     */
+    public void setGroupSendLimit(UUID groupId, double perSecond, int burst) {
+        sendLimiter.setGroupLimit(groupId, new RateLimiter.Limit(perSecond, burst));
+    }
+
+    private static SendResult sent(boolean ok) {
+        return ok ? SendResult.SENT : SendResult.FAILED;
     }
 
     /**
@@ -308,7 +911,8 @@ public class AppController {
      */
     public boolean deleteGroupMessage(UUID groupId, UUID messageId, String requester) {
         if (!checkPermission(groupId, requester, Permissions.GROUP_DELETE_MESSAGES)) return false;
-        store.deleteGroupMessage(groupId, messageId);
+        if (!mutate(s -> s.deleteGroupMessage(groupId, messageId))) return false;
+        emit(new StoreEvent.MessageDeleted(groupId, messageId));
         return saveStore();
     }
 
@@ -320,24 +924,179 @@ public class AppController {
      */
     public boolean deleteGroup(UUID groupId, String requester) {
         if (!checkPermission(groupId, requester, Permissions.GROUP_DELETE_GROUP)) return false;
-        store.deleteGroup(groupId);
+        //a tagokat a törlés előtt gyűjtjük, nekik változik a csoportlistájuk
+        Set<String> members = getGroupMembers(groupId);
+        mutateRun(s -> s.deleteGroup(groupId));
+        emit(new StoreEvent.MemberRoleChanged(groupId, null));
+        for (String m : members) emit(new StoreEvent.MemberRoleChanged(groupId, m));
+        return saveStore();
+    }
+
+    /**
+     * Barátkérés küldése.
+     * @param from küldő
+     * @param to címzett
+     * @return true ha a kérés bekerült
+     */
+    public boolean sendFriendRequest(String from, String to) {
+        if (!mutate(s -> s.sendFriendRequest(from, to))) return false;
+        emit(new StoreEvent.FriendRequestReceived(to, from));
+        return saveStore();
+    }
+
+    /**
+     * Barátkérés elfogadása.
+     * @param username elfogadó
+     * @param from a kérés küldője
+     * @return true ha sikeres
+     */
+    public boolean acceptFriendRequest(String username, String from) {
+        if (!mutate(s -> s.acceptFriendRequest(username, from))) return false;
+        emit(new StoreEvent.FriendshipChanged(username, from));
+        return saveStore();
+    }
+
+    /**
+     * Barátkérés elutasítása.
+     * @param username elutasító
+     * @param from a kérés küldője
+     * @return true ha sikeres
+     */
+    public boolean rejectFriendRequest(String username, String from) {
+        if (!mutate(s -> s.rejectFriendRequest(username, from))) return false;
+        //élő nézete nincs, csak a többi folyamat tudjon róla
+        unpublishedGeneral = true;
+        return saveStore();
+    }
+
+    /**
+     * Küldött barátkérés visszavonása.
+     * @param from küldő
+     * @param to címzett
+     * @return true ha sikeres
+     */
+    public boolean cancelOutgoingFriendRequest(String from, String to) {
+        if (!mutate(s -> s.cancelOutgoingFriendRequest(from, to))) return false;
+        unpublishedGeneral = true;
+        return saveStore();
+    }
+
+    /**
+     * Barátság megszüntetése.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return true ha sikeres
+     */
+    public boolean removeFriend(String a, String b) {
+        if (!mutate(s -> s.removeFriend(a, b))) return false;
+        emit(new StoreEvent.FriendshipChanged(a, b));
         return saveStore();
     }
 
+    /**
+     * Beszélgetés olvasottnak jelölése az adott üzenetig.
+     * A jel azonnal látszik a folyamaton belül, a mentése késleltetve, összevonva történik,
+     * és a többi folyamat nem kap róla változás értesítést.
+     * @param username olvasó
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param seq az utoljára látott üzenet sorszáma
+     * @param lastSeen az utoljára látott üzenet
+     * @return true ha a jel előre lépett
+     */
+    public boolean markRead(String username, UUID conversation, int seq, Message lastSeen) {
+        if (!mutate(s -> s.markRead(username, conversation, seq, lastSeen))) return false;
+        events.publish(new StoreEvent.ConversationRead(username, conversation, lastSeen.getId()));
+        scheduleReadMarkSave();
+        return true;
+    }
+
+    //egy késleltetett mentés az összes addigi jelre; a közben lefutó rendes mentés ezeket is viszi
+    private void scheduleReadMarkSave() {
+        if (!readMarksDirty.compareAndSet(false, true)) return;
+        try {
+            CompletableFuture.delayedExecutor(READ_MARK_SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS, ioExecutor)
+                    .execute(this::writeReadMarks);
+        } catch (RuntimeException e) {
+            readMarksDirty.set(false);
+            e.printStackTrace();
+        }
+    }
+
+    private void writeReadMarks() {
+        synchronized (ioLock) {
+            //függő rendes mentés úgyis viszi a jeleket
+            if (!readMarksDirty.get() || savePending.get()) return;
+            writeStore(false);
+        }
+    }
+
     /**
      * Privát üzenet küldése.
      * @param from küldő
      * @param to címzett
      * @param content tartalom
-     * @return true ha sikeres
+     * @return küldés eredménye
      */
-    public boolean sendPrivateMessage(String from, String to, String content) {
-        if (!isValidMessage(content)) return false;
-        if (!store.areFriends(from, to)) return false;
+    public SendResult sendPrivateMessage(String from, String to, String content) {
+        return sendPrivateMessageAsync(from, to, content).join();
+    }
+
+    /**
+     * Privát üzenet küldése a befogadó soron keresztül, várakozás nélkül.
+     * @param from küldő
+     * @param to címzett
+     * @param content tartalom
+     * @return a köteg mentése után teljesülő jövő a küldés eredményével
+     */
+    public CompletableFuture<SendResult> sendPrivateMessageAsync(String from, String to, String content) {
+        if (!isValidMessage(content)) return CompletableFuture.completedFuture(SendResult.INVALID);
+        if (!store.areFriends(from, to)) return CompletableFuture.completedFuture(SendResult.FORBIDDEN);
         var user = store.getUserByName(from);
-        if (user == null) return false;
-        store.sendPrivateMessage(user.getId(), from, to, content);
-        saveStore();
-        return true;
+        if (user == null) return CompletableFuture.completedFuture(SendResult.FORBIDDEN);
+        if (!sendLimiter.tryAcquire(from, null)) return CompletableFuture.completedFuture(SendResult.RATE_LIMITED);
+        UUID senderId = user.getId();
+        return committer().submit(() -> {
+            mutateRun(s -> s.sendPrivateMessage(senderId, from, to, content));
+            messageAdded(DataStore.privateConversationId(from, to), store.getPrivateMessages(from, to));
+            return true;
+        }).thenApply(AppController::sent);
+    }
+
+    /**
+     * Csoport üzeneteinek egy lapja (bármely szálról hívható).
+     * @param groupId csoport UUID
+     * @param from első sorszám; negatív érték a végétől számít
+     * @param to utolsó utáni sorszám
+     * @return a lap
+     */
+    public MessagePage getGroupMessagesPage(UUID groupId, int from, int to) {
+        return MessagePage.of(store.getGroupMessages(groupId), from, to);
+    }
+
+    /**
+     * Privát beszélgetés üzeneteinek egy lapja (bármely szálról hívható).
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @param from első sorszám; negatív érték a végétől számít
+     * @param to utolsó utáni sorszám
+     * @return a lap
+     */
+    public MessagePage getPrivateMessagesPage(String a, String b, int from, int to) {
+        return MessagePage.of(store.getPrivateMessages(a, b), from, to);
+    }
+
+    //befogadó sor lusta indítása
+    private MessageCommitter committer() {
+        MessageCommitter c = committer;
+        if (c == null) {
+            synchronized (this) {
+                c = committer;
+                if (c == null) {
+                    c = new MessageCommitter(this::saveStore);
+                    committer = c;
+                }
+            }
+        }
+        return c;
     }
 }
@@ -0,0 +1,119 @@
+package controller;
+
+import util.PasswordUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Aszinkron jelszó hash-elés és ellenőrzés korlátos munkaszál készlettel.
+ * A bcrypt szándékosan lassú, ezért nem futhat az eseménykezelő szálon; a készlet mérete
+ * a processzormagok száma, a befogadás pedig korlátozott, így egy bejelentkezési hullám
+ * nem foglalhatja le a gépet: a korláton felüli kérések azonnal elutasítva teljesülnek.
+ */
+public class AuthService {
+
+    /** Magonként ennyi kérés lehet egyszerre futásban vagy sorban */
+    private static final int ADMISSION_PER_WORKER = 4;
+
+    private final ThreadPoolExecutor pool;
+    private final Semaphore admission;
+
+    /**
+     * Szolgáltatás a processzormagok számához méretezve.
+     */
+    public AuthService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Szolgáltatás megadott munkaszál számmal.
+     * @param workers munkaszálak száma
+     */
+    public AuthService(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("Legalább egy munkaszál kell");
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "auth-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        //tétlen szálak leállnak, nem maradnak meg controllerenként
+        this.pool.allowCoreThreadTimeOut(true);
+        this.admission = new Semaphore(workers * ADMISSION_PER_WORKER);
+    }
+
+    /**
+     * Jelszó ellenőrzése a tárolt hash-sel a munkaszálakon.
+     * @param plainPassword jelszó
+     * @param hashedPassword tárolt bcrypt hash (null: ismeretlen felhasználó)
+     * @return true-val teljesül, ha egyezik; túlterheléskor RejectedExecutionException-nel
+     */
+    public CompletableFuture<Boolean> verify(String plainPassword, String hashedPassword) {
+        return submit(() -> {
+            if (hashedPassword == null) return false;
+            try {
+                return PasswordUtil.checkPassword(plainPassword, hashedPassword);
+            } catch (RuntimeException e) {
+                //sérült hash
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Jelszó hash-elése a munkaszálakon.
+     * @param plainPassword jelszó
+     * @return a bcrypt hash-sel teljesül; túlterheléskor RejectedExecutionException-nel
+     */
+    public CompletableFuture<String> hash(String plainPassword) {
+        return submit(() -> PasswordUtil.hashPassword(plainPassword));
+    }
+
+    /**
+     * Éppen befogadható kérések száma.
+     * @return szabad helyek száma
+     */
+    public int availableSlots() {
+        return admission.availablePermits();
+    }
+
+    /**
+     * Munkaszálak leállítása.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (!admission.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Túl sok egyidejű hitelesítési kérés"));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                //a helyet a teljesítés előtt adjuk vissza, a várakozó már újra kérhet
+                T value;
+                try {
+                    value = task.get();
+                } catch (RuntimeException e) {
+                    admission.release();
+                    result.completeExceptionally(e);
+                    return;
+                }
+                admission.release();
+                result.complete(value);
+            });
+        } catch (RejectedExecutionException e) {
+            admission.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package controller;
+
+import persistence.DataStore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Központi adattár változás értesítő témák szerint.
+ * Téma a beszélgetés (csoport UUID vagy privát beszélgetés azonosító) és a felhasználónév;
+ * a feliratkozó csak a saját témái eseményeit kapja, így változás nélkül nem dolgozik.
+ * A kézbesítés a közzétevő szálán történik: a feliratkozó nem blokkolhat, a felületnek
+ * az eseménykezelő szálra kell továbbadnia.
+ */
+public final class EventBus {
+
+    private final Map<Object, List<Consumer<? super StoreEvent>>> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Feliratkozás egy témára.
+     * @param topic beszélgetés UUID vagy felhasználónév
+     * @param listener eseménykezelő
+     * @return a leiratkozáshoz
+     */
+    public Subscription subscribe(Object topic, Consumer<? super StoreEvent> listener) {
+        topics.computeIfAbsent(topic, k -> new CopyOnWriteArrayList<>()).add(listener);
+        return () -> topics.computeIfPresent(topic, (k, list) -> {
+            list.remove(listener);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * Esemény közzététele az érintett témák feliratkozóinak.
+     * @param event esemény
+     */
+    public void publish(StoreEvent event) {
+        switch (event) {
+            case StoreEvent.MessageAdded e -> deliver(e.conversation(), event);
+            case StoreEvent.MessageDeleted e -> deliver(e.conversation(), event);
+            case StoreEvent.MemberRoleChanged e -> {
+                deliver(e.groupId(), event);
+                if (e.username() != null) deliver(e.username(), event);
+            }
+            case StoreEvent.FriendRequestReceived e -> deliver(e.to(), event);
+            case StoreEvent.ConversationRead e -> deliver(e.username(), event);
+            case StoreEvent.FriendshipChanged e -> {
+                deliver(e.a(), event);
+                deliver(e.b(), event);
+                //a privát ablak küldési joga is ezen múlik
+                deliver(DataStore.privateConversationId(e.a(), e.b()), event);
+            }
+            case StoreEvent.StoreReloaded e -> {
+                //minden feliratkozás megkapja
+                for (List<Consumer<? super StoreEvent>> list : topics.values()) deliver(list, event);
+            }
+        }
+    }
+
+    /**
+     * Feliratkozók száma egy témán.
+     * @param topic téma
+     * @return feliratkozók száma
+     */
+    public int subscriberCount(Object topic) {
+        List<Consumer<? super StoreEvent>> list = topics.get(topic);
+        return list == null ? 0 : list.size();
+    }
+
+    private void deliver(Object topic, StoreEvent event) {
+        List<Consumer<? super StoreEvent>> list = topics.get(topic);
+        if (list != null) deliver(list, event);
+    }
+
+    private static void deliver(List<Consumer<? super StoreEvent>> list, StoreEvent event) {
+        for (Consumer<? super StoreEvent> l : list) {
+            try {
+                l.accept(event);
+            } catch (RuntimeException e) {
+                //egy hibás feliratkozó nem akaszthatja meg a többit és a küldőt
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Feliratkozás, a lezárás leiratkozik.
+     */
+    @FunctionalInterface
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,129 @@
+package controller;
+
+import util.MpscRingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Üzenet befogadó sor egyetlen véglegesítő szállal.
+ * A küldők a már ellenőrzött műveletet a gyűrűpufferbe teszik; a véglegesítő szál kötegekben
+ * veszi ki őket, alkalmazza az adattáron, majd kötegenként egyetlen mentést kér.
+ * A küldő jövője a köteg mentése után teljesül; hiba (akár Error) esetén is, a szál pedig tovább fut,
+ * így egy elrontott köteg nem akaszthatja meg a későbbi küldőket.
+ */
+final class MessageCommitter {
+
+    /** Gyűrűpuffer mérete */
+    static final int CAPACITY = 4096;
+
+    /** Egy köteg maximális mérete */
+    static final int MAX_BATCH = 512;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final MpscRingBuffer<Pending> queue = new MpscRingBuffer<>(CAPACITY);
+    private final BooleanSupplier persist;
+    private final Thread worker;
+
+    /** A véglegesítő szál alszik (vagy elalvás előtt áll), a küldőnek fel kell ébresztenie */
+    private volatile boolean sleeping;
+
+    /**
+     * @param persist kötegenként egyszer hívott mentés, true ha sikeres
+     */
+    MessageCommitter(BooleanSupplier persist) {
+        this.persist = persist;
+        this.worker = new Thread(this::run, "message-committer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Művelet sorba állítása; tele puffer esetén a küldő vár (visszanyomás).
+     * @param apply az adattárat módosító művelet, true ha alkalmazható volt
+     * @return a köteg mentése után teljesülő jövő
+     */
+    CompletableFuture<Boolean> submit(BooleanSupplier apply) {
+        Pending p = new Pending(apply);
+        while (!queue.offer(p)) {
+            wake();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        wake();
+        return p.done;
+    }
+
+    private void wake() {
+        if (sleeping) LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            queue.drain(batch::add, MAX_BATCH);
+            if (batch.isEmpty()) {
+                idle();
+                continue;
+            }
+            try {
+                commit(batch);
+            } catch (Throwable t) {
+                //a köteg minden jövője teljesül, különben a küldők örökké várnának
+                for (Pending p : batch) p.done.completeExceptionally(t);
+            }
+            batch.clear();
+        }
+    }
+
+    //alvás, ha tényleg nincs munka; az ébresztést elmulasztani nem lehet, mert a jelző előbb íródik
+    private void idle() {
+        sleeping = true;
+        if (queue.isEmpty()) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        } else {
+            //foglalt, de még nem publikált rekesz
+            Thread.onSpinWait();
+        }
+        sleeping = false;
+    }
+
+    private void commit(List<Pending> batch) {
+        boolean[] applied = new boolean[batch.size()];
+        boolean any = false;
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                applied[i] = batch.get(i).apply.getAsBoolean();
+            } catch (Throwable t) {
+                batch.get(i).done.completeExceptionally(t);
+                continue;
+            }
+            any |= applied[i];
+        }
+        //egy mentés az egész kötegre; sikertelen mentésnél a küldők false-t kapnak
+        boolean saved = !any;
+        if (any) {
+            try {
+                saved = persist.getAsBoolean();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).done.complete(applied[i] && saved);
+        }
+    }
+
+    private static final class Pending {
+        final BooleanSupplier apply;
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+
+        Pending(BooleanSupplier apply) {
+            this.apply = apply;
+        }
+    }
+}
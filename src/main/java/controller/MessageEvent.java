@@ -0,0 +1,35 @@
+package controller;
+
+import model.Message;
+
+import java.util.UUID;
+
+/**
+ * Üzenet folyam eleme, lásd {@link AppController#groupMessageEvents(UUID)}.
+ * A {@link StoreEvent}-tel szemben a tartalmat is hozza, így a feliratkozónak nem kell
+ * az adattárból visszaolvasnia.
+ */
+public sealed interface MessageEvent {
+
+    /**
+     * Új üzenet.
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param seq az üzenet sorszáma a beszélgetésben (a kézbesítéskori állapot szerint)
+     * @param message az üzenet
+     */
+    record Added(UUID conversation, int seq, Message message) implements MessageEvent { }
+
+    /**
+     * Üzenet törlése.
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param messageId a törölt üzenet UUID
+     */
+    record Deleted(UUID conversation, UUID messageId) implements MessageEvent { }
+
+    /**
+     * A feliratkozó lemaradt: a puffere megtelt, a még ki nem kézbesített elemek elvesztek.
+     * Utána a folyam a frissebb eseményekkel folytatódik; a kihagyottak az adattárból olvashatók.
+     * @param dropped eldobott elemek száma
+     */
+    record FellBehind(long dropped) implements MessageEvent { }
+}
@@ -0,0 +1,38 @@
+package controller;
+
+import model.Message;
+
+import java.util.List;
+
+/**
+ * Egy beszélgetés üzeneteinek egy szelete (lapja).
+ * A lap a megváltozhatatlan üzenet változat nézete, így előállítása a lap méretétől sem függ.
+ *
+ * @param from az első üzenet sorszáma a beszélgetésben
+ * @param messages a lap üzenetei
+ * @param total a beszélgetés üzeneteinek száma a lekérdezéskor
+ */
+public record MessagePage(int from, List<Message> messages, int total) {
+
+    /**
+     * Lap kivágása egy üzenet változatból.
+     * @param log megváltozhatatlan üzenet változat
+     * @param from első sorszám; negatív érték a végétől számít (-50: az utolsó 50)
+     * @param to utolsó utáni sorszám (a végéhez igazítva)
+     * @return a lap
+     */
+    public static MessagePage of(List<Message> log, int from, int to) {
+        int size = log.size();
+        int end = Math.max(0, Math.min(to, size));
+        int start = from < 0 ? Math.max(0, end + from) : Math.min(from, end);
+        return new MessagePage(start, log.subList(start, end), size);
+    }
+
+    /**
+     * Az utolsó utáni üzenet sorszáma.
+     * @return from + a lap mérete
+     */
+    public int end() {
+        return from + messages.size();
+    }
+}
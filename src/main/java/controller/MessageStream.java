@@ -0,0 +1,275 @@
+package controller;
+
+import model.Message;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Üzenet folyam egy vagy több beszélgetésre, az {@link EventBus} jelzéseiből.
+ * <p>
+ * Feliratkozónként beszélgetésenkénti kurzor követi, meddig jutott; jelzéskor a napló
+ * (megváltozhatatlan változat) kurzor utáni üzenetei kerülnek a pufferbe. A küldő szálán
+ * csak ez a rövid pufferelés fut, a kézbesítés az executoron, a kért mennyiség szerint.
+ * Megtelt puffernél a régi elemek eldobódnak és {@link MessageEvent.FellBehind} jelzi a hézagot,
+ * így lassú feliratkozó soha nem tartja fel a küldőt.
+ */
+final class MessageStream implements Flow.Publisher<MessageEvent> {
+
+    private final EventBus bus;
+    private final Supplier<Map<UUID, Supplier<List<Message>>>> conversations;
+    private final Object membershipTopic;
+    private final Predicate<Message> filter;
+    private final int bufferSize;
+    private final Executor executor;
+
+    /**
+     * @param bus eseménybusz
+     * @param conversations beszélgetés azonosító → aktuális napló; tagság változáskor újra lekérdezve
+     * @param membershipTopic téma, amelynek eseményeire a beszélgetések köre frissül (null: állandó)
+     * @param filter csak a feltételnek megfelelő új üzenetek kerülnek a folyamba
+     * @param bufferSize feliratkozónkénti puffer mérete
+     * @param executor kézbesítő executor
+     */
+    MessageStream(EventBus bus, Supplier<Map<UUID, Supplier<List<Message>>>> conversations, Object membershipTopic,
+                  Predicate<Message> filter, int bufferSize, Executor executor) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+        this.bus = bus;
+        this.conversations = conversations;
+        this.membershipTopic = membershipTopic;
+        this.filter = filter;
+        this.bufferSize = bufferSize;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super MessageEvent> subscriber) {
+        Objects.requireNonNull(subscriber);
+        new StreamSubscription(subscriber).start();
+    }
+
+    //egy beszélgetésben az utolsó átadott üzenet utáni pozíció
+    private static final class Cursor {
+        final Supplier<List<Message>> log;
+        final EventBus.Subscription subscription;
+        int next;
+        UUID lastId;
+        Instant lastAt;
+
+        Cursor(Supplier<List<Message>> log, EventBus.Subscription subscription) {
+            this.log = log;
+            this.subscription = subscription;
+        }
+    }
+
+    private final class StreamSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super MessageEvent> subscriber;
+        /** Beszélgetés kurzorok, a jelzéseket kezelő szálak ezen sorosítanak */
+        private final Map<UUID, Cursor> cursors = new HashMap<>();
+        /** Ki nem kézbesített elemek; a zár alatt csak sorba tétel és kivétel történik */
+        private final ArrayDeque<MessageEvent> buffer = new ArrayDeque<>();
+        private long dropped;
+        private final AtomicLong requested = new AtomicLong();
+        //kézbesítési munka számláló: az első kör az onSubscribe hívása
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private EventBus.Subscription membership;
+        private volatile boolean cancelled;
+        /** Kézbesítendő hiba; a kézbesítő kör adja át, így a jelzések sorosak maradnak */
+        private volatile Throwable error;
+
+        StreamSubscription(Flow.Subscriber<? super MessageEvent> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            synchronized (cursors) {
+                //előbb feliratkozás, utána a kiinduló pozíciók: közben érkező jelzés a zárra vár
+                if (membershipTopic != null) membership = bus.subscribe(membershipTopic, this::onMembership);
+                sync();
+            }
+            executor.execute(() -> {
+                subscriber.onSubscribe(this);
+                drain(1);
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) return;
+            if (n <= 0) {
+                error = new IllegalArgumentException("Nem pozitív kérés: " + n);
+                cancel();
+                schedule();
+                return;
+            }
+            requested.getAndAccumulate(n, (r, add) -> r + add < 0 ? Long.MAX_VALUE : r + add);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            synchronized (cursors) {
+                if (membership != null) membership.close();
+                cursors.values().forEach(c -> c.subscription.close());
+                cursors.clear();
+            }
+            synchronized (buffer) {
+                buffer.clear();
+            }
+        }
+
+        //beszélgetés jelzés (a közzétevő, jellemzően a küldő szálán)
+        private void onConversation(UUID conversation, StoreEvent e) {
+            if (cancelled) return;
+            synchronized (cursors) {
+                switch (e) {
+                    //újratöltés után is a kurzortól folytatjuk
+                    case StoreEvent.MessageAdded m -> catchUp(conversation);
+                    case StoreEvent.StoreReloaded r -> catchUp(conversation);
+                    case StoreEvent.MessageDeleted d -> {
+                        if (cursors.containsKey(conversation)) offer(new MessageEvent.Deleted(conversation, d.messageId()));
+                    }
+                    default -> { }
+                }
+            }
+        }
+
+        //tagság vagy barátság változás: a beszélgetések köre frissül
+        private void onMembership(StoreEvent e) {
+            if (cancelled) return;
+            if (e instanceof StoreEvent.MessageAdded || e instanceof StoreEvent.MessageDeleted
+                    || e instanceof StoreEvent.ConversationRead) return;
+            synchronized (cursors) {
+                sync();
+            }
+        }
+
+        //az új beszélgetések a jelenlegi végükről indulnak, a megszűntekről leiratkozunk
+        private void sync() {
+            if (cancelled) return;
+            Map<UUID, Supplier<List<Message>>> wanted = conversations.get();
+            cursors.entrySet().removeIf(entry -> {
+                if (wanted.containsKey(entry.getKey())) return false;
+                entry.getValue().subscription.close();
+                return true;
+            });
+            wanted.forEach((id, log) -> {
+                if (cursors.containsKey(id)) return;
+                Cursor c = new Cursor(log, bus.subscribe(id, e -> onConversation(id, e)));
+                List<Message> current = log.get();
+                c.next = current.size();
+                if (!current.isEmpty()) remember(c, current.get(current.size() - 1));
+                cursors.put(id, c);
+            });
+        }
+
+        //a kurzor utáni üzenetek pufferbe tétele
+        private void catchUp(UUID conversation) {
+            Cursor c = cursors.get(conversation);
+            if (c == null) return;
+            List<Message> log = c.log.get();
+            int from = relocate(c, log);
+            for (int i = from; i < log.size(); i++) {
+                Message m = log.get(i);
+                if (filter.test(m)) offer(new MessageEvent.Added(conversation, i, m));
+            }
+            c.next = log.size();
+            if (!log.isEmpty()) remember(c, log.get(log.size() - 1));
+        }
+
+        private void remember(Cursor c, Message last) {
+            c.lastId = last.getId();
+            c.lastAt = last.getTimestamp();
+        }
+
+        //közbeni törlés eltolhatja a sorszámokat: az utoljára átadott üzenethez igazítunk
+        private int relocate(Cursor c, List<Message> log) {
+            int end = Math.min(c.next, log.size());
+            if (c.lastId == null) return end;
+            //törlés nélkül a helyén van
+            if (end > 0 && c.lastId.equals(log.get(end - 1).getId())) return end;
+            //a napló időrendben nő: bináris keresés az időbélyegre, az azonos idejűek között az azonosítóra
+            int low = 0;
+            int high = end;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (log.get(mid).getTimestamp().isAfter(c.lastAt)) high = mid;
+                else low = mid + 1;
+            }
+            for (int i = low - 1; i >= 0 && !log.get(i).getTimestamp().isBefore(c.lastAt); i--) {
+                if (c.lastId.equals(log.get(i).getId())) return i + 1;
+            }
+            //maga az utolsó átadott üzenet törlődött: az utána érkezettektől folytatjuk
+            return low;
+        }
+
+        //sorba tétel; megtelt puffernél a régi elemek helyére hézag jelzés kerül
+        private void offer(MessageEvent event) {
+            synchronized (buffer) {
+                if (buffer.size() >= bufferSize) {
+                    dropped += buffer.size();
+                    buffer.clear();
+                }
+                buffer.add(event);
+            }
+            schedule();
+        }
+
+        private MessageEvent poll() {
+            synchronized (buffer) {
+                if (dropped > 0) {
+                    MessageEvent gap = new MessageEvent.FellBehind(dropped);
+                    dropped = 0;
+                    return gap;
+                }
+                return buffer.poll();
+            }
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) executor.execute(() -> drain(1));
+        }
+
+        //kézbesítés a kért mennyiségig; egyszerre csak egy szál fut
+        //hiba után a számláló nem nullázódik, így több kör nem indul
+        private void drain(int missed) {
+            while (true) {
+                Throwable failure = error;
+                if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                }
+                long r = requested.get();
+                long sent = 0;
+                while (sent != r && !cancelled) {
+                    MessageEvent next = poll();
+                    if (next == null) break;
+                    try {
+                        subscriber.onNext(next);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    sent++;
+                }
+                if (sent > 0 && r != Long.MAX_VALUE) requested.addAndGet(-sent);
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package controller;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Felhasználónkénti zármentes token vödör (GCRA formában) az üzenetküldésekhez.
+ * Vödrönként egyetlen AtomicLong tárolja az elméleti következő érkezési időt; egy kérés
+ * akkor fér bele, ha ez legfeljebb a löketnyi tűréssel jár a mostani idő előtt, és ekkor
+ * CAS-sal egy kibocsátási intervallummal tolja előrébb.
+ * Csoportonként eltérő keret adható meg; ilyenkor a felhasználónak abban a csoportban külön vödre van.
+ */
+public class RateLimiter {
+
+    /** Küldési keret: tartós ütem és löketméret */
+    public record Limit(double perSecond, int burst) {
+        /**
+         * @param perSecond megengedett tartós ütem (üzenet/másodperc)
+         * @param burst egyszerre elküldhető üzenetek száma
+         */
+        public Limit {
+            if (perSecond <= 0 || burst < 1) throw new IllegalArgumentException("Érvénytelen keret");
+        }
+
+        long intervalNanos() {
+            return Math.max(1, (long) (1_000_000_000L / perSecond));
+        }
+    }
+
+    private final Limit defaultLimit;
+    private final Map<UUID, Limit> groupLimits = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    /**
+     * Korlátozó rendszeridővel.
+     * @param defaultLimit alapértelmezett keret
+     */
+    public RateLimiter(Limit defaultLimit) {
+        this(defaultLimit, System::nanoTime);
+    }
+
+    /**
+     * Korlátozó megadott órával (teszteléshez).
+     * @param defaultLimit alapértelmezett keret
+     * @param clock nanoszekundum óra
+     */
+    public RateLimiter(Limit defaultLimit, LongSupplier clock) {
+        this.defaultLimit = defaultLimit;
+        this.clock = clock;
+    }
+
+    /**
+     * Csoportra vonatkozó keret beállítása (null: vissza az alapértelmezettre).
+     * @param groupId csoport UUID
+     * @param limit keret vagy null
+     */
+    public void setGroupLimit(UUID groupId, Limit limit) {
+        if (limit == null) groupLimits.remove(groupId);
+        else groupLimits.put(groupId, limit);
+        //régi keret szerinti állapot ne vigyen át
+        String suffix = "#" + groupId;
+        buckets.keySet().removeIf(k -> k.endsWith(suffix));
+    }
+
+    /**
+     * Egy küldés engedélyezése és elszámolása.
+     * @param username küldő
+     * @param groupId csoport UUID, privát üzenetnél null
+     * @return true ha belefér a keretbe
+     */
+    public boolean tryAcquire(String username, UUID groupId) {
+        Limit override = groupId == null ? null : groupLimits.get(groupId);
+        Limit limit = override != null ? override : defaultLimit;
+        String key = override != null ? username + "#" + groupId : username;
+        long interval = limit.intervalNanos();
+        long tolerance = interval * (limit.burst() - 1);
+        long now = clock.getAsLong();
+        //új vödör tele indul
+        AtomicLong tat = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = tat.get();
+            long start = current - now > 0 ? current : now;
+            if (start - now > tolerance) return false;
+            if (tat.compareAndSet(current, start + interval)) return true;
+        }
+    }
+}
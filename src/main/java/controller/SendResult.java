@@ -0,0 +1,25 @@
+package controller;
+
+/**
+ * Üzenetküldés eredménye.
+ */
+public enum SendResult {
+    /** Az üzenet bekerült és mentésre került */
+    SENT,
+    /** Üres vagy túl hosszú üzenet */
+    INVALID,
+    /** Nincs jogosultság (nem barát, nem tag vagy nincs küldési jog) */
+    FORBIDDEN,
+    /** A küldő túllépte a küldési keretét, később próbálkozhat */
+    RATE_LIMITED,
+    /** Az üzenet nem került be vagy a mentés sikertelen */
+    FAILED;
+
+    /**
+     * Sikeres-e a küldés.
+     * @return true ha SENT
+     */
+    public boolean isSent() {
+        return this == SENT;
+    }
+}
@@ -0,0 +1,166 @@
+package controller;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Bejelentkezési munkamenetek véletlen tokenekkel.
+ * Sikeres jelszó ellenőrzés után egy token keletkezik lejárati idővel; a későbbi kérések
+ * a tokennel O(1) időben ellenőrizhetők, újabb bcrypt nélkül.
+ * A lejárt tokeneket időkerék takarítja: minden token a lejárati idejének megfelelő rekeszbe
+ * kerül, és a kerék a műveletek során lustán, rekeszenként halad előre. A rekeszek az első
+ * tokenükkel jönnek létre, így a finom felbontású, hosszú élettartamú kerék sem foglal előre memóriát.
+ */
+public class SessionManager {
+
+    /** Token hossza bájtban (256 bit) */
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final long tickNanos;
+    private final AtomicReferenceArray<Queue<String>> wheel;
+    private final LongSupplier clock;
+
+    /** A kereket egyszerre csak egy szál forgatja, a többiek nem várnak rá */
+    private final ReentrantLock advancing = new ReentrantLock();
+
+    /** Az utoljára feldolgozott rekesz sorszáma */
+    private volatile long processedTick;
+
+    /**
+     * Munkamenet kezelő rendszeridővel.
+     * @param ttl token élettartama
+     * @param tick az időkerék felbontása
+     */
+    public SessionManager(Duration ttl, Duration tick) {
+        this(ttl, tick, System::nanoTime);
+    }
+
+    /**
+     * Munkamenet kezelő megadott órával (teszteléshez).
+     * @param ttl token élettartama
+     * @param tick az időkerék felbontása
+     * @param clock nanoszekundum óra
+     */
+    public SessionManager(Duration ttl, Duration tick, LongSupplier clock) {
+        if (ttl.isNegative() || ttl.isZero() || tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Az élettartam és a felbontás pozitív kell legyen");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.tickNanos = tick.toNanos();
+        this.clock = clock;
+        //egy teljes fordulat lefedi az élettartamot, így egy rekeszbe csak egy környi token kerül
+        int slots = (int) Math.min(1 << 20, ttlNanos / tickNanos + 2);
+        this.wheel = new AtomicReferenceArray<>(slots);
+        this.processedTick = tickOf(clock.getAsLong());
+    }
+
+    /**
+     * Új munkamenet nyitása.
+     * @param username a hitelesített felhasználó
+     * @return új token
+     */
+    public String open(String username) {
+        advance();
+        byte[] raw = new byte[TOKEN_BYTES];
+        random.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        long expiresAt = clock.getAsLong() + ttlNanos;
+        sessions.put(token, new Session(username, expiresAt));
+        //a lejárat utáni első rekeszbe, hogy a takarítás ne előzze meg a lejáratot
+        bucket(slotOf(tickOf(expiresAt) + 1)).add(token);
+        return token;
+    }
+
+    /**
+     * Token ellenőrzése.
+     * @param token munkamenet token
+     * @return a felhasználónév, vagy null ha ismeretlen vagy lejárt
+     */
+    public String validate(String token) {
+        if (token == null) return null;
+        advance();
+        Session s = sessions.get(token);
+        if (s == null) return null;
+        //a kerék lemaradhat egy rekesznyit, a lejáratot közvetlenül is nézzük
+        if (clock.getAsLong() - s.expiresAt >= 0) {
+            sessions.remove(token, s);
+            return null;
+        }
+        return s.username;
+    }
+
+    /**
+     * Munkamenet lezárása.
+     * @param token munkamenet token
+     * @return true ha élő munkamenet volt
+     */
+    public boolean close(String token) {
+        return token != null && sessions.remove(token) != null;
+    }
+
+    /**
+     * Nyilvántartott (még nem takarított) munkamenetek száma.
+     * @return munkamenetek száma
+     */
+    public int size() {
+        advance();
+        return sessions.size();
+    }
+
+    //lusta előrehaladás: az eltelt rekeszek lejárt tokenjeinek törlése
+    private void advance() {
+        long now = clock.getAsLong();
+        long current = tickOf(now);
+        if (current <= processedTick || !advancing.tryLock()) return;
+        try {
+            long from = processedTick + 1;
+            //egy teljes fordulatnál többet nem kell bejárni
+            long to = Math.min(current, from + wheel.length() - 1);
+            for (long t = from; t <= to; t++) {
+                Queue<String> bucket = wheel.get(slotOf(t));
+                if (bucket == null) continue;
+                for (int n = bucket.size(); n > 0; n--) {
+                    String token = bucket.poll();
+                    if (token == null) break;
+                    Session s = sessions.get(token);
+                    if (s == null) continue;
+                    if (now - s.expiresAt >= 0) sessions.remove(token, s);
+                    //még élő token: egy körrel később újra sorra kerül
+                    else bucket.add(token);
+                }
+            }
+            processedTick = current;
+        } finally {
+            advancing.unlock();
+        }
+    }
+
+    //rekesz létrehozása az első tokennel
+    private Queue<String> bucket(int slot) {
+        Queue<String> q = wheel.get(slot);
+        if (q != null) return q;
+        wheel.compareAndSet(slot, null, new ConcurrentLinkedQueue<>());
+        return wheel.get(slot);
+    }
+
+    private long tickOf(long nanos) {
+        return Math.floorDiv(nanos, tickNanos);
+    }
+
+    private int slotOf(long tick) {
+        return (int) Math.floorMod(tick, (long) wheel.length());
+    }
+
+    private record Session(String username, long expiresAt) { }
+}
@@ -0,0 +1,59 @@
+package controller;
+
+import java.util.UUID;
+
+/**
+ * Adattár változás esemény, lásd {@link EventBus}.
+ * Az esemény csak jelzés: a feliratkozó a részleteket az adattárból olvassa ki.
+ */
+public sealed interface StoreEvent {
+
+    /**
+     * Új üzenet egy beszélgetésben.
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param seq az utolsó üzenet sorszáma a beszélgetésben, vagy -1 ha nem ismert
+     *            (más folyamat privát üzenete, csak a beszélgetés azonosítója érkezik)
+     */
+    record MessageAdded(UUID conversation, int seq) implements StoreEvent { }
+
+    /**
+     * Üzenet törlése egy beszélgetésből.
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param messageId a törölt üzenet UUID
+     */
+    record MessageDeleted(UUID conversation, UUID messageId) implements StoreEvent { }
+
+    /**
+     * Csoport tagság, szerep vagy jogosultság változás.
+     * @param groupId csoport UUID
+     * @param username az érintett tag, vagy null ha a csoport egészét érinti (szerepek, jogok)
+     */
+    record MemberRoleChanged(UUID groupId, String username) implements StoreEvent { }
+
+    /**
+     * Új barátkérés.
+     * @param to címzett
+     * @param from küldő
+     */
+    record FriendRequestReceived(String to, String from) implements StoreEvent { }
+
+    /**
+     * Barátság létrejött vagy megszűnt.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     */
+    record FriendshipChanged(String a, String b) implements StoreEvent { }
+
+    /**
+     * A felhasználó elolvasott egy beszélgetést (az olvasatlan jelzések frissítéséhez).
+     * @param username olvasó
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param messageId az utoljára látott üzenet UUID
+     */
+    record ConversationRead(String username, UUID conversation, UUID messageId) implements StoreEvent { }
+
+    /**
+     * Az adattár egésze újratöltődött (más folyamat mentése): bármi változhatott.
+     */
+    record StoreReloaded() implements StoreEvent { }
+}
@@ -0,0 +1,139 @@
+package controller;
+
+import persistence.DataStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Csoport adminisztrációs módosítások kötege, lásd {@link AppController#batch}.
+ * Az első sikertelen művelet után a többi kimarad, és a köteg végén minden visszavonódik.
+ */
+public final class Transaction {
+
+    private final DataStore store;
+    private boolean ok = true;
+    private String failure;
+
+    /** A sikeres műveletek eseményei, a véglegesítés után kerülnek közzétételre */
+    private final List<StoreEvent> events = new ArrayList<>();
+
+    Transaction(DataStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Tag hozzáadása.
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @param role szerep
+     * @return ez a köteg
+     */
+    public Transaction addGroupMember(UUID groupId, String username, String role) {
+        return apply("addGroupMember " + username, () -> store.addGroupMember(groupId, username, role),
+                new StoreEvent.MemberRoleChanged(groupId, username));
+    }
+
+    /**
+     * Több tag hozzáadása ugyanazzal a szereppel.
+     * @param groupId csoport UUID
+     * @param usernames felhasználónevek
+     * @param role szerep (a csoportban léteznie kell)
+     * @return ez a köteg
+     */
+    public Transaction addGroupMembers(UUID groupId, Collection<String> usernames, String role) {
+        apply("addGroupMembers", () -> store.addGroupMembers(groupId, usernames, role), null);
+        if (ok) for (String u : usernames) events.add(new StoreEvent.MemberRoleChanged(groupId, u));
+        return this;
+    }
+
+    /**
+     * Tag eltávolítása.
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @return ez a köteg
+     */
+    public Transaction removeGroupMember(UUID groupId, String username) {
+        return apply("removeGroupMember " + username, () -> store.removeGroupMember(groupId, username),
+                new StoreEvent.MemberRoleChanged(groupId, username));
+    }
+
+    /**
+     * Egyéni szerep hozzáadása.
+     * @param groupId csoport UUID
+     * @param role szerep neve
+     * @return ez a köteg
+     */
+    public Transaction addCustomRole(UUID groupId, String role) {
+        return apply("addCustomRole " + role, () -> store.addGroupRole(groupId, role),
+                new StoreEvent.MemberRoleChanged(groupId, null));
+    }
+
+    /**
+     * Tag szerepének módosítása.
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @param role új szerep
+     * @return ez a köteg
+     */
+    public Transaction setGroupMemberRole(UUID groupId, String username, String role) {
+        return apply("setGroupMemberRole " + username, () -> store.setGroupMemberRole(groupId, username, role),
+                new StoreEvent.MemberRoleChanged(groupId, username));
+    }
+
+    /**
+     * Szerep jogosultságainak beállítása.
+     * @param groupId csoport UUID
+     * @param role szerep neve
+     * @param perms jogosultságok
+     * @return ez a köteg
+     */
+    public Transaction setRolePermissions(UUID groupId, String role, Set<String> perms) {
+        return apply("setRolePermissions " + role, () -> store.setGroupRolePermissions(groupId, role, perms),
+                new StoreEvent.MemberRoleChanged(groupId, null));
+    }
+
+    /**
+     * A köteg megszakítása (pl. saját ellenőrzés alapján).
+     * @param reason ok
+     */
+    public void abort(String reason) {
+        if (ok) failure = reason;
+        ok = false;
+    }
+
+    /**
+     * Sikeres-e eddig a köteg.
+     * @return true ha minden művelet sikerült
+     */
+    public boolean isOk() {
+        return ok;
+    }
+
+    /**
+     * Az első sikertelen művelet leírása.
+     * @return leírás vagy null
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * A sikeres műveletek eseményei.
+     * @return események
+     */
+    List<StoreEvent> events() {
+        return events;
+    }
+
+    private Transaction apply(String what, BooleanSupplier op, StoreEvent event) {
+        if (!ok) return this;
+        if (!op.getAsBoolean()) abort(what);
+        else if (event != null) events.add(event);
+        return this;
+    }
+}
@@ -1,12 +1,17 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * Csoportos beszélgetést reprezentáló modell osztály.
  * Támogatja a szerepkör alapú jogosultságkezelést.
  * Alapértelmezett szerepek: Adminisztrátor, Résztvevő, Olvasó. 
+ * A szerepek és jogosultságok módosításkor lecserélt példányok, így zár nélkül olvashatók;
+ * a tagtábla saját zárral védett.
  */
 public class Group implements Serializable {
 
@@ -19,14 +24,17 @@ public class Group implements Serializable {
     /** Csoport neve */
     private String name;
     
-    /** Csoport tagok és szerepeik */
-    private Map<UUID, String> memberRoles = new HashMap<>();
+    /** Csoport tagok és szerepeik (tömör, rendezett tábla) */
+    private MemberTable members = new MemberTable();
+
+    /** Régi formátumú mentések tagtáblája, betöltéskor átkerül a members táblába */
+    private Map<UUID, String> memberRoles;
     
-    /* Elérhető szerepek a csoportban */
-    private Set<String> roles = new HashSet<>();
+    /* Elérhető szerepek a csoportban (módosításkor lecserélve) */
+    private volatile Set<String> roles = new HashSet<>();
     
-    /** Szerepekhez tartozó jogosultságok */
-    private Map<String, Set<String>> rolePermissions = new HashMap<>();
+    /** Szerepekhez tartozó jogosultságok (módosításkor lecserélve) */
+    private volatile Map<String, Set<String>> rolePermissions = new HashMap<>();
     
     /** Alapértelmezett szerep: Adminisztrátor - teljes jogosultság */
     private static final String ROLE_ADMIN = "Adminisztrátor";
@@ -57,6 +65,23 @@ public class Group implements Serializable {
         rolePermissions.put(ROLE_READER, new HashSet<>());
     }
 
+    //másoló konstruktor: a szerep halmazok csak cserélődnek, megoszthatók
+    private Group(Group source) {
+        this.id = source.id;
+        this.name = source.name;
+        this.members = source.members.copy();
+        this.roles = source.roles;
+        this.rolePermissions = source.rolePermissions;
+    }
+
+    /**
+     * Független másolat a csoportról (pl. mentési pillanatképhez).
+     * @return a csoport másolata azonos azonosítóval
+     */
+    public synchronized Group copy() {
+        return new Group(this);
+    }
+
     /** 
      * Visszaadja a csoport egyedi azonosítóját.
      *  @return a csoport UUID azonosítója
@@ -82,19 +107,53 @@ public class Group implements Serializable {
     }
 
     /**
-     * Visszaadja a csoport tagjainak szerepeit tartalmazó map-et.
-     * @return map, ahol a kulcs a felhasználó UUID-ja, az érték pedig a szerepnév
+     * Tagok bejárása azonosító szerinti sorrendben.
+     * @param action UUID, szerepnév párokat fogadó művelet
+     */
+    public void forEachMember(BiConsumer<UUID, String> action) {
+        members.forEach(action);
+    }
+
+    /**
+     * Visszaadja a tagok azonosítóit azonosító szerinti sorrendben.
+     * @return UUID-k listája
+     */
+    public List<UUID> getMemberIds() {
+        return members.getMemberIds();
+    }
+
+    /**
+     * Visszaadja a tagok számát.
+     * @return tagok száma
+     */
+    public int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * Ellenőrzi, hogy a felhasználó tagja-e a csoportnak.
+     * @param userId a felhasználó UUID azonosítója
+     * @return true ha tag
+     */
+    public boolean isMember(UUID userId) {
+        return members.contains(userId);
+    }
+
+    /**
+     * Visszaadja egy tag szerepét.
+     * @param userId a felhasználó UUID azonosítója
+     * @return szerepnév vagy null, ha nem tag
      */
-    public Map<UUID, String> getMemberRoles() {
-        return memberRoles;
+    public String getMemberRole(UUID userId) {
+        return members.getRole(userId);
     }
 
     /**
      * Visszaadja a csoportban elérhető összes szerepet.
-     * @return a szerepnevek halmaza
+     * @return a szerepnevek csak olvasható halmaza
      */
     public Set<String> getRoles() {
-        return roles;
+        return Collections.unmodifiableSet(roles);
     }
 
     /**
@@ -104,9 +163,39 @@ public class Group implements Serializable {
      * 
      * @param role az új szerepnév
      */
-    public void addRole(String role) {
-        roles.add(role);
-        rolePermissions.putIfAbsent(role, new HashSet<>()); 
+    public synchronized void addRole(String role) {
+        if (roles.contains(role)) return;
+        Map<String, Set<String>> perms = new HashMap<>(rolePermissions);
+        perms.putIfAbsent(role, new HashSet<>());
+        Set<String> next = new HashSet<>(roles);
+        next.add(role);
+        //előbb a jogosultságok, hogy a látható szerepnek mindig legyen bejegyzése
+        rolePermissions = perms;
+        roles = next;
+    }
+
+    /**
+     * Eltávolít egy egyedi szerepet a jogosultságaival együtt.
+     * Az alapértelmezett szerepek és a tagok által használt szerepek nem távolíthatók el.
+     * 
+     * @param role a szerepnév
+     * @return true ha eltávolította
+     */
+    public synchronized boolean removeRole(String role) {
+        if (!roles.contains(role) || ROLE_ADMIN.equals(role) || ROLE_PARTICIPANT.equals(role) || ROLE_READER.equals(role)) {
+            return false;
+        }
+        boolean[] used = new boolean[1];
+        members.forEach((id, r) -> used[0] |= r.equals(role));
+        if (used[0]) return false;
+        Set<String> next = new HashSet<>(roles);
+        next.remove(role);
+        Map<String, Set<String>> perms = new HashMap<>(rolePermissions);
+        perms.remove(role);
+        //előbb a szerep tűnik el, hogy a látható szerepnek mindig legyen bejegyzése
+        roles = next;
+        rolePermissions = perms;
+        return true;
     }
 
     /**
@@ -116,21 +205,23 @@ public class Group implements Serializable {
      * @param perms a jogosultságok halmaza 
      * @throws IllegalArgumentException ha a szerep nem létezik a csoportban
      */
-    public void setRolePermissions(String role, Set<String> perms) {
+    public synchronized void setRolePermissions(String role, Set<String> perms) {
         if (!roles.contains(role)) {
             throw new IllegalArgumentException("Ismeretlen szerep: " + role);
         }
-        rolePermissions.put(role, new HashSet<>(perms));
+        Map<String, Set<String>> next = new HashMap<>(rolePermissions);
+        next.put(role, new HashSet<>(perms));
+        rolePermissions = next;
     }
 
     /**
      * Visszaadja egy adott szerep jogosultságait.
      * 
      * @param role a szerepnév
-     * @return a jogosultságok halmaza 
+     * @return a jogosultságok csak olvasható nézete
      */
     public Set<String> getRolePermissions(String role) {
-        return new HashSet<>(rolePermissions.getOrDefault(role, Collections.emptySet()));
+        return Collections.unmodifiableSet(rolePermissions.getOrDefault(role, Collections.emptySet()));
     }
 
     /**
@@ -140,7 +231,30 @@ public class Group implements Serializable {
      * @param role a tag szerepe 
      */
     public void addMember(UUID userId, String role) {
-        memberRoles.put(userId, role);
+        members.put(userId, role);
+    }
+
+    /**
+     * Több tag felvétele ugyanazzal a szereppel egy lépésben (nagy csoportok feltöltéséhez).
+     * 
+     * @param userIds a felhasználók UUID azonosítói
+     * @param role a tagok szerepe
+     * @throws IllegalArgumentException ha a szerep nem létezik a csoportban
+     */
+    public void addMembers(Collection<UUID> userIds, String role) {
+        if (!roles.contains(role)) {
+            throw new IllegalArgumentException("Ismeretlen szerep: " + role);
+        }
+        members.putAll(userIds, role);
+    }
+
+    /**
+     * Több tag eltávolítása egy lépésben.
+     * 
+     * @param userIds az eltávolítandó felhasználók UUID azonosítói
+     */
+    public void removeMembers(Collection<UUID> userIds) {
+        members.removeAll(userIds);
     }
 
     /**
@@ -149,7 +263,7 @@ public class Group implements Serializable {
      * @param userId az eltávolítandó felhasználó UUID azonosítója
      */
     public void removeMember(UUID userId) {
-        memberRoles.remove(userId);
+        members.remove(userId);
     }
 
     /**
@@ -163,7 +277,7 @@ public class Group implements Serializable {
         if (!roles.contains(role)) {
             throw new IllegalArgumentException("Ismeretlen szerep: " + role);
         }
-        memberRoles.put(userId, role);
+        members.put(userId, role);
     }
 
     /**
@@ -173,7 +287,7 @@ public class Group implements Serializable {
      * @return true ha a felhasználó "Adminisztrátor" szerepkörrel rendelkezik, egyébként false
      */
     public boolean isAdmin(UUID userId) {
-        String role = memberRoles.get(userId);
+        String role = members.getRole(userId);
         return ROLE_ADMIN.equals(role);
     }
 
@@ -185,11 +299,23 @@ public class Group implements Serializable {
      * @return true ha a felhasználó rendelkezik a jogosultsággal, egyébként false
      */
     public boolean hasPermission(UUID userId, String permission) {
-        String role = memberRoles.get(userId);
+        String role = members.getRole(userId);
         if (role == null) return false;
         
         Set<String> perms = rolePermissions.getOrDefault(role, Collections.emptySet());
         
         return perms.contains(Permissions.ALL) || perms.contains(permission);
     }
+
+    //régi (HashMap alapú) tagtábla átalakítása betöltéskor
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (members == null) {
+            members = new MemberTable();
+        }
+        if (memberRoles != null) {
+            memberRoles.forEach(members::put);
+            memberRoles = null;
+        }
+    }
 }
@@ -0,0 +1,286 @@
+package model;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Tömör taglista nagy csoportokhoz.
+ * A tagok UUID-jai két rendezett primitív tömbben (felső és alsó 64 bit) tárolódnak,
+ * a szerep tagonként egyetlen bájtos index a táblában internált szerepnevekre.
+ * Tagság- és szereplekérdezés bináris kereséssel, bejárás azonosító szerinti sorrendben.
+ */
+public class MemberTable implements Serializable {
+
+    /** Verziószám a szerializációhoz */
+    private static final long serialVersionUID = 1L;
+
+    /** Egyszerre legfeljebb ennyi különböző szerepnév lehet használatban (egy bájtos index) */
+    private static final int MAX_ROLES = 256;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    /** UUID felső 64 bitje, rendezve */
+    private long[] msb = new long[INITIAL_CAPACITY];
+
+    /** UUID alsó 64 bitje, az msb tömbbel párhuzamosan */
+    private long[] lsb = new long[INITIAL_CAPACITY];
+
+    /** Tagonkénti szerep index a roleNames listába */
+    private byte[] roleIds = new byte[INITIAL_CAPACITY];
+
+    /** Tagok száma */
+    private int size;
+
+    /** Internált szerepnevek, az index a roleIds értéke; a már senkihez nem tartozók helye újrahasznosul */
+    private final List<String> roleNames = new ArrayList<>();
+
+    /**
+     * Visszaadja a tagok számát.
+     * @return tagok száma
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Ellenőrzi, hogy a felhasználó tag-e.
+     * @param userId felhasználó UUID
+     * @return true ha tag
+     */
+    public synchronized boolean contains(UUID userId) {
+        return userId != null && indexOf(userId) >= 0;
+    }
+
+    /**
+     * Visszaadja a tag szerepét.
+     * @param userId felhasználó UUID
+     * @return szerepnév vagy null, ha nem tag
+     */
+    public synchronized String getRole(UUID userId) {
+        if (userId == null) return null;
+        int i = indexOf(userId);
+        return i < 0 ? null : roleNames.get(roleIds[i] & 0xFF);
+    }
+
+    /**
+     * Tag felvétele vagy meglévő tag szerepének felülírása.
+     * @param userId felhasználó UUID
+     * @param role szerepnév
+     * @throws IllegalStateException ha túl sok különböző szerep lenne
+     */
+    public synchronized void put(UUID userId, String role) {
+        int i = indexOf(userId);
+        byte roleId = internRole(role, i);
+        if (i >= 0) {
+            roleIds[i] = roleId;
+            return;
+        }
+        int at = -i - 1;
+        ensureCapacity(size + 1);
+        //beszúrási hely felszabadítása
+        System.arraycopy(msb, at, msb, at + 1, size - at);
+        System.arraycopy(lsb, at, lsb, at + 1, size - at);
+        System.arraycopy(roleIds, at, roleIds, at + 1, size - at);
+        msb[at] = userId.getMostSignificantBits();
+        lsb[at] = userId.getLeastSignificantBits();
+        roleIds[at] = roleId;
+        size++;
+    }
+
+    /**
+     * Tag eltávolítása.
+     * @param userId felhasználó UUID
+     * @return true ha tag volt
+     */
+    public synchronized boolean remove(UUID userId) {
+        if (userId == null) return false;
+        int i = indexOf(userId);
+        if (i < 0) return false;
+        int tail = size - i - 1;
+        System.arraycopy(msb, i + 1, msb, i, tail);
+        System.arraycopy(lsb, i + 1, lsb, i, tail);
+        System.arraycopy(roleIds, i + 1, roleIds, i, tail);
+        size--;
+        return true;
+    }
+
+    /**
+     * Több tag felvétele ugyanazzal a szereppel egyetlen összefésüléssel (O(n + m log m)).
+     * A már tag felhasználók szerepe felülíródik.
+     * @param userIds felvendő felhasználók
+     * @param role szerepnév
+     */
+    public synchronized void putAll(Collection<UUID> userIds, String role) {
+        byte roleId = internRole(role, -1);
+        UUID[] incoming = userIds.toArray(new UUID[0]);
+        Arrays.sort(incoming, MemberTable::compareIds);
+        int cap = size + incoming.length;
+        long[] nMsb = new long[Math.max(INITIAL_CAPACITY, cap)];
+        long[] nLsb = new long[nMsb.length];
+        byte[] nRoles = new byte[nMsb.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < incoming.length) {
+            int c;
+            if (j >= incoming.length) c = -1;
+            else if (i >= size) c = 1;
+            else {
+                c = Long.compareUnsigned(msb[i], incoming[j].getMostSignificantBits());
+                if (c == 0) c = Long.compareUnsigned(lsb[i], incoming[j].getLeastSignificantBits());
+            }
+            if (c < 0) {
+                nMsb[n] = msb[i];
+                nLsb[n] = lsb[i];
+                nRoles[n++] = roleIds[i++];
+                continue;
+            }
+            //új vagy felülírt tag; a bemenet ismétlődéseit kihagyjuk
+            if (n == 0 || nMsb[n - 1] != incoming[j].getMostSignificantBits() || nLsb[n - 1] != incoming[j].getLeastSignificantBits()) {
+                nMsb[n] = incoming[j].getMostSignificantBits();
+                nLsb[n] = incoming[j].getLeastSignificantBits();
+                nRoles[n++] = roleId;
+            } else {
+                nRoles[n - 1] = roleId;
+            }
+            if (c == 0) i++;
+            j++;
+        }
+        msb = nMsb;
+        lsb = nLsb;
+        roleIds = nRoles;
+        size = n;
+    }
+
+    /**
+     * Több tag eltávolítása egyetlen tömörítő bejárással.
+     * @param userIds eltávolítandó felhasználók
+     * @return eltávolított tagok száma
+     */
+    public synchronized int removeAll(Collection<UUID> userIds) {
+        Set<UUID> drop = new HashSet<>(userIds);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (drop.contains(new UUID(msb[i], lsb[i]))) continue;
+            msb[n] = msb[i];
+            lsb[n] = lsb[i];
+            roleIds[n++] = roleIds[i];
+        }
+        int removed = size - n;
+        size = n;
+        return removed;
+    }
+
+    /**
+     * Tagok bejárása azonosító szerinti sorrendben.
+     * @param action UUID, szerepnév párokat fogadó művelet
+     */
+    public synchronized void forEach(BiConsumer<UUID, String> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(new UUID(msb[i], lsb[i]), roleNames.get(roleIds[i] & 0xFF));
+        }
+    }
+
+    /**
+     * Tag azonosítók azonosító szerinti sorrendben.
+     * @return UUID-k listája
+     */
+    public synchronized List<UUID> getMemberIds() {
+        List<UUID> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(new UUID(msb[i], lsb[i]));
+        }
+        return ids;
+    }
+
+    /**
+     * Független másolat a tábláról.
+     * @return másolat
+     */
+    public synchronized MemberTable copy() {
+        MemberTable t = new MemberTable();
+        int cap = Math.max(INITIAL_CAPACITY, size);
+        t.msb = Arrays.copyOf(msb, cap);
+        t.lsb = Arrays.copyOf(lsb, cap);
+        t.roleIds = Arrays.copyOf(roleIds, cap);
+        t.roleNames.addAll(roleNames);
+        t.size = size;
+        return t;
+    }
+
+    private static int compareIds(UUID a, UUID b) {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    //bináris keresés; találat esetén index, különben -(beszúrási hely)-1
+    private int indexOf(UUID userId) {
+        long hi = userId.getMostSignificantBits();
+        long lo = userId.getLeastSignificantBits();
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = Long.compareUnsigned(msb[mid], hi);
+            if (c == 0) c = Long.compareUnsigned(lsb[mid], lo);
+            if (c < 0) low = mid + 1;
+            else if (c > 0) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    //szerepnév internálása, a meglévő index újrahasznosításával; replacing: a szerepét most elveszítő tag indexe, vagy negatív
+    private byte internRole(String role, int replacing) {
+        int idx = roleNames.indexOf(role);
+        if (idx >= 0) return (byte) idx;
+        if (roleNames.size() < MAX_ROLES) {
+            roleNames.add(role);
+            return (byte) (roleNames.size() - 1);
+        }
+        //betelt: egy már senkihez nem tartozó szerep helye kapja
+        idx = unusedRole(replacing);
+        if (idx < 0) throw new IllegalStateException("Túl sok szerep a csoportban");
+        roleNames.set(idx, role);
+        return (byte) idx;
+    }
+
+    //egyetlen taghoz sem tartozó szerep index (a lecserélendő tagot nem számolva), vagy -1
+    private int unusedRole(int replacing) {
+        boolean[] used = new boolean[roleNames.size()];
+        for (int i = 0; i < size; i++) {
+            if (i != replacing) used[roleIds[i] & 0xFF] = true;
+        }
+        for (int r = 0; r < used.length; r++) {
+            if (!used[r]) return r;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= msb.length) return;
+        int cap = Math.max(needed, msb.length * 2);
+        msb = Arrays.copyOf(msb, cap);
+        lsb = Arrays.copyOf(lsb, cap);
+        roleIds = Arrays.copyOf(roleIds, cap);
+    }
+
+    //mentés előtt a tömbök levágása a tényleges méretre
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (msb.length != size) {
+            msb = Arrays.copyOf(msb, size);
+            lsb = Arrays.copyOf(lsb, size);
+            roleIds = Arrays.copyOf(roleIds, size);
+        }
+        out.defaultWriteObject();
+    }
+}
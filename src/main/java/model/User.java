@@ -60,4 +60,17 @@ public class User implements Serializable {
     public String getPasswordHash() {
         return passwordHash;
     }
+
+    /**
+     * Új példány ugyanazzal az azonosítóval és névvel, de más jelszó hash-sel
+     * (pl. erősebb költséggel újrahash-elt jelszóhoz).
+     * 
+     * @param newPasswordHash az új bcrypt hash
+     * @return a módosított felhasználó
+     */
+    public User withPasswordHash(String newPasswordHash) {
+        User u = new User(username, newPasswordHash);
+        u.id = id;
+        return u;
+    }
 }
@@ -0,0 +1,137 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Felhasználónkénti "legutóbbi beszélgetések" index.
+ * A privát beszélgetések résztvevőnként, utolsó aktivitás szerint rendezve tárolódnak (legfrissebb
+ * elöl); a csoportoknak csoportonként egyetlen bejegyzésük van, így egy üzenet tagszámtól
+ * függetlenül legfeljebb két rendezett bejegyzést mozdít, O(log n) lépésben. A felhasználó
+ * csoportjai lekérdezéskor fésülődnek be a privát listába.
+ * Nem mentjük: az üzenet naplók utolsó időbélyegéből bármikor újraépíthető.
+ */
+final class ActivityIndex {
+
+    private final Map<String, UserActivity> users = new ConcurrentHashMap<>();
+
+    /** Csoportonként az utolsó aktivitás */
+    private final Map<UUID, Long> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Privát beszélgetés aktivitásának rögzítése; régebbi időpont nem írja felül az újabbat.
+     * @param username résztvevő
+     * @param conversation beszélgetés azonosító
+     * @param at aktivitás ideje (epoch ms)
+     */
+    void touch(String username, UUID conversation, long at) {
+        if (username == null) return;
+        users.computeIfAbsent(username, k -> new UserActivity()).touch(conversation, at);
+    }
+
+    /**
+     * Csoport aktivitásának rögzítése; régebbi időpont nem írja felül az újabbat.
+     * @param groupId csoport UUID
+     * @param at aktivitás ideje (epoch ms)
+     */
+    void touchGroup(UUID groupId, long at) {
+        groups.merge(groupId, at, Math::max);
+    }
+
+    /**
+     * Csoport bejegyzés törlése (a csoport megszűnésekor).
+     * @param groupId csoport UUID
+     */
+    void forgetGroup(UUID groupId) {
+        groups.remove(groupId);
+    }
+
+    /**
+     * A felhasználó beszélgetései aktivitás szerint, legfrissebb elöl.
+     * @param username felhasználó
+     * @param memberOf a felhasználó csoportjai
+     * @param limit legfeljebb ennyi
+     * @return beszélgetés azonosítók
+     */
+    List<UUID> recent(String username, Collection<UUID> memberOf, int limit) {
+        List<Entry> mine = new ArrayList<>(memberOf.size());
+        for (UUID g : memberOf) {
+            Long at = groups.get(g);
+            if (at != null) mine.add(new Entry(at, g));
+        }
+        Collections.sort(mine);
+        UserActivity u = users.get(username);
+        Iterator<Entry> privates = u == null ? Collections.emptyIterator() : u.order.iterator();
+        Iterator<Entry> grouped = mine.iterator();
+        //két rendezett sorozat összefésülése a limitig
+        List<UUID> out = new ArrayList<>();
+        Entry p = privates.hasNext() ? privates.next() : null;
+        Entry g = grouped.hasNext() ? grouped.next() : null;
+        while (out.size() < limit && (p != null || g != null)) {
+            if (g == null || p != null && p.compareTo(g) <= 0) {
+                out.add(p.conversation);
+                p = privates.hasNext() ? privates.next() : null;
+            } else {
+                out.add(g.conversation);
+                g = grouped.hasNext() ? grouped.next() : null;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Egy csoport utolsó aktivitása.
+     * @param groupId csoport UUID
+     * @return epoch ms, vagy 0 ha nincs
+     */
+    long groupActivity(UUID groupId) {
+        Long at = groups.get(groupId);
+        return at == null ? 0 : at;
+    }
+
+    /**
+     * Egy privát beszélgetés utolsó aktivitása a felhasználónál.
+     * @param username felhasználó
+     * @param conversation beszélgetés azonosító
+     * @return epoch ms, vagy 0 ha nincs
+     */
+    long lastActivity(String username, UUID conversation) {
+        UserActivity u = users.get(username);
+        if (u == null) return 0;
+        Long at = u.at.get(conversation);
+        return at == null ? 0 : at;
+    }
+
+    /** Egy felhasználó bejegyzései; az írók a példányon sorosítanak, az olvasók zár nélkül */
+    private static final class UserActivity {
+        final Map<UUID, Long> at = new ConcurrentHashMap<>();
+        final NavigableSet<Entry> order = new ConcurrentSkipListSet<>();
+
+        synchronized void touch(UUID conversation, long time) {
+            Long prev = at.get(conversation);
+            if (prev != null) {
+                if (prev >= time) return;
+                order.remove(new Entry(prev, conversation));
+            }
+            order.add(new Entry(time, conversation));
+            at.put(conversation, time);
+        }
+    }
+
+    /** Rendezési kulcs: idő csökkenő, azonos időnél azonosító */
+    private record Entry(long at, UUID conversation) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry o) {
+            int c = Long.compare(o.at, at);
+            return c != 0 ? c : conversation.compareTo(o.conversation);
+        }
+    }
+}
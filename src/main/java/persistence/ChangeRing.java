@@ -0,0 +1,224 @@
+package persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Memóriába leképezett, folyamatok között megosztott változás értesítő gyűrű.
+ * Az írók "X beszélgetés változott, N sorszámmal" eseményeket tesznek bele; a többi folyamat
+ * egy olcsó volatile olvasással látja, hogy van-e új esemény, így fájlfigyelés helyett
+ * azonnal újratölthet. A gyűrű csak jelez, az adat továbbra is az adatfájlban van.
+ *
+ * Elrendezés: fejléc (varázsszám, kapacitás, 64. bájton a farok számláló), majd 32 bájtos
+ * rekeszek: sorszám + 1 (publikáláskor írva), beszélgetés UUID, küldő azonosító.
+ * A farkot az írók atomi összeadással léptetik; a rekesz írása alatt a sorszám negatív, így az olvasó
+ * a két sorszám olvasás közötti felülírást észreveszi.
+ */
+public final class ChangeRing {
+
+    /** Alapértelmezett rekeszszám */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int MAGIC = 0x43524E47;
+    private static final int TAIL_OFFSET = 64;
+    private static final int SLOTS_OFFSET = 128;
+    private static final int SLOT_SIZE = 32;
+    /** Ennyi ideig félkész rekesz után az írót elhaltnak tekintjük */
+    private static final long STALE_SLOT_NANOS = 500_000_000L;
+
+    /** 8 bájtos, igazított mezők atomi elérése a leképezett pufferen */
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+    private final int mask;
+
+    /** Ennek a példánynak az azonosítója, a saját események kiszűréséhez */
+    private final long origin;
+
+    /** Következő olvasandó sorszám (egy olvasó szál használja) */
+    private long cursor;
+
+    /** A félkész rekesz, amelyre az olvasó vár, és mióta */
+    private long stuckAt = -1;
+    private long stuckSince;
+
+    private ChangeRing(MappedByteBuffer buffer, int capacity, long origin) {
+        this.buffer = buffer;
+        this.mask = capacity - 1;
+        this.origin = origin;
+        this.cursor = head();
+    }
+
+    /**
+     * Gyűrű megnyitása vagy létrehozása. Meglévő fájlnál a fájlban tárolt kapacitás érvényes.
+     * @param file gyűrű fájl
+     * @param capacity rekeszszám új fájlhoz (kettő hatványa)
+     * @return megnyitott gyűrű, az olvasási pozíció a jelenlegi végén
+     * @throws IOException ha a fájl nem nyitható meg vagy sérült
+     */
+    public static ChangeRing open(File file, int capacity) throws IOException {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("A kapacitás kettő hatványa kell legyen: " + capacity);
+        //a leképezés a csatorna lezárása után is érvényes marad
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int cap;
+            //a fejlécet egyszerre csak egy folyamat készíti el
+            FileLock lock = ch.lock();
+            try {
+                MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_WRITE, 0, SLOTS_OFFSET);
+                header.order(ByteOrder.nativeOrder());
+                if (header.getInt(0) == MAGIC) {
+                    cap = header.getInt(4);
+                    if (cap < 2 || Integer.bitCount(cap) != 1) throw new IOException("Sérült értesítő fájl: " + file);
+                } else {
+                    cap = capacity;
+                    //a fájl kibővítése a teljes méretre (nullákkal, azaz üres rekeszekkel)
+                    ch.map(FileChannel.MapMode.READ_WRITE, 0, SLOTS_OFFSET + (long) cap * SLOT_SIZE);
+                    header.putInt(4, cap);
+                    header.putLong(TAIL_OFFSET, 0L);
+                    //a varázsszám utoljára, a többi folyamat csak kész fejlécet lát
+                    header.putInt(0, MAGIC);
+                    header.force();
+                }
+            } finally {
+                lock.release();
+            }
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, SLOTS_OFFSET + (long) cap * SLOT_SIZE);
+            return new ChangeRing(buf, cap, UUID.randomUUID().getMostSignificantBits());
+        }
+    }
+
+    /**
+     * Változás közzététele.
+     * @param conversation a változott beszélgetés, null ha bármi változhatott
+     * @return az esemény sorszáma
+     */
+    public long publish(UUID conversation) {
+        long pos = (long) LONG.getAndAdd(buffer, TAIL_OFFSET, 1L);
+        int slot = SLOTS_OFFSET + (int) (pos & mask) * SLOT_SIZE;
+        //írás alatt jelölve, hogy a lassú olvasó ne fogadja el a félkész rekeszt
+        LONG.setVolatile(buffer, slot, -(pos + 1));
+        LONG.set(buffer, slot + 8, conversation == null ? 0L : conversation.getMostSignificantBits());
+        LONG.set(buffer, slot + 16, conversation == null ? 0L : conversation.getLeastSignificantBits());
+        LONG.set(buffer, slot + 24, origin);
+        LONG.setRelease(buffer, slot, pos + 1);
+        return pos;
+    }
+
+    /**
+     * A következő kiosztandó sorszám; egyetlen volatile olvasás, tétlen ciklusban is olcsó.
+     * @return farok számláló
+     */
+    public long head() {
+        return (long) LONG.getVolatile(buffer, TAIL_OFFSET);
+    }
+
+    /**
+     * Van-e még nem olvasott esemény.
+     * @return true ha a farok túlhaladta az olvasási pozíciót
+     */
+    public boolean hasNew() {
+        return head() != cursor;
+    }
+
+    /**
+     * Van-e más példánytól származó, még nem olvasott esemény; az olvasási pozíciót nem mozdítja.
+     * Félkész vagy felülírt rekesznél igazat ad (a következő poll ilyenkor is kézbesíthet).
+     * @return true ha a következő poll eseményt kézbesíthet
+     */
+    public boolean hasForeign() {
+        long tail = head();
+        if (tail - cursor > mask + 1L) return true;
+        for (long pos = cursor; pos < tail; pos++) {
+            int slot = SLOTS_OFFSET + (int) (pos & mask) * SLOT_SIZE;
+            long seq = (long) LONG.getAcquire(buffer, slot);
+            if (seq != pos + 1) return true;
+            long from = (long) LONG.get(buffer, slot + 24);
+            VarHandle.acquireFence();
+            if ((long) LONG.getVolatile(buffer, slot) != seq || from != origin) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Új, más példánytól származó események feldolgozása.
+     * Ha az olvasó lemaradt és a rekeszeket már felülírták, egyetlen null beszélgetésű
+     * eseményt kap (bármi változhatott), és a pozíció a végre ugrik. Az időkorlátnál tovább
+     * félkész rekeszt (elhalt író) null eseményként átlép.
+     * @param sink esemény fogadó
+     * @return kézbesített események száma
+     */
+    public int poll(Consumer<Change> sink) {
+        long tail = head();
+        int delivered = 0;
+        if (tail - cursor > mask + 1L) {
+            cursor = tail;
+            sink.accept(new Change(tail - 1, null));
+            return 1;
+        }
+        while (cursor < tail) {
+            int slot = SLOTS_OFFSET + (int) (cursor & mask) * SLOT_SIZE;
+            long seq = (long) LONG.getAcquire(buffer, slot);
+            long published = Math.abs(seq);
+            if (published < cursor + 1 || seq == -(cursor + 1)) {
+                //lefoglalt, de még nem publikált rekesz: a következő hívás folytatja
+                if (!stale(cursor)) break;
+                //az író elhalt: a tartalom ismeretlen, bármi változhatott
+                sink.accept(new Change(cursor, null));
+                delivered++;
+                cursor++;
+                continue;
+            }
+            long msb = (long) LONG.get(buffer, slot + 8);
+            long lsb = (long) LONG.get(buffer, slot + 16);
+            long from = (long) LONG.get(buffer, slot + 24);
+            VarHandle.acquireFence();
+            if (seq != cursor + 1 || (long) LONG.getVolatile(buffer, slot) != seq) {
+                //közben felülírták: lemaradtunk
+                cursor = head();
+                sink.accept(new Change(cursor - 1, null));
+                return delivered + 1;
+            }
+            if (from != origin) {
+                sink.accept(new Change(cursor, msb == 0 && lsb == 0 ? null : new UUID(msb, lsb)));
+                delivered++;
+            }
+            cursor++;
+        }
+        return delivered;
+    }
+
+    //ugyanarra a rekeszre az időkorlátnál tovább várunk-e
+    private boolean stale(long pos) {
+        long now = System.nanoTime();
+        if (stuckAt != pos) {
+            stuckAt = pos;
+            stuckSince = now;
+            return false;
+        }
+        return now - stuckSince > STALE_SLOT_NANOS;
+    }
+
+    /**
+     * Rekeszek száma.
+     * @return kapacitás
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Egy változás esemény.
+     * @param seq sorszám
+     * @param conversation a változott beszélgetés, null ha bármi változhatott
+     */
+    public record Change(long seq, UUID conversation) { }
+}
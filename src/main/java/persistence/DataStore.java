@@ -4,25 +4,94 @@ import model.Group;
 import model.Message;
 import model.User;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Adattár felhasználók, barátok, csoportok és üzenetek tárolására.
+ * A lekérdezések másolat helyett csak olvasható nézeteket adnak vissza;
+ * minden módosítás növeli a verziószámot, így a hívók olcsón észlelhetik a változást.
+ * <p>
+ * Szálbiztos: a felhasználó- és csoporttáblák írói egy író-olvasó zár írási oldalán
+ * sorakoznak, az olvasók zár nélkül dolgoznak (konkurens map-ek, írás közben lecserélt
+ * megváltozhatatlan halmazok). Az üzenetek beszélgetésenként sávozott zárral íródnak,
+ * így különböző beszélgetések küldései párhuzamosan futnak.
+ * <p>
+ * Többváltozatú olvasás: egy beszélgetés üzenetei {@link MessageLog} változatok, az írók
+ * új változatot publikálnak, az olvasók a kapott változatot zár és másolás nélkül tarthatják meg.
+ * A {@link #snapshot()} rövid táblazár alatt rögzített, önálló másolatot ad (pl. mentéshez).
  */
 public class DataStore implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final Map<String, User> usersByName = new HashMap<>();
-    private final Map<UUID, User> usersById = new HashMap<>();
-    private final Map<String, Set<String>> friends = new HashMap<>();
-    private final Map<String, Set<String>> incomingFriendRequests = new HashMap<>();
-    private final Map<String, Set<String>> outgoingFriendRequests = new HashMap<>();
-    private final Map<UUID, Group> groups = new HashMap<>();
-    private final Map<String, List<Message>> privateMessages = new HashMap<>();
-    private final Map<UUID, List<Message>> groupMessages = new HashMap<>();
+    /** Üzenet zárak (sávok) száma, kettő hatványa */
+    private static final int STRIPES = 64;
 
+    private Map<String, User> usersByName = new ConcurrentHashMap<>();
+    private Map<UUID, User> usersById = new ConcurrentHashMap<>();
+    private FriendGraph friendGraph = new FriendGraph();
+    /** Felhasználónként megváltozhatatlan halmazok, módosításkor lecserélve */
+    private Map<String, Set<String>> incomingFriendRequests = new ConcurrentHashMap<>();
+    private Map<String, Set<String>> outgoingFriendRequests = new ConcurrentHashMap<>();
+    private Map<UUID, Group> groups = new ConcurrentHashMap<>();
+    /** Beszélgetésenkénti üzenet változatok (MessageLog), az írók a sávzárral sorosítva cserélik */
+    private Map<String, List<Message>> privateMessages = new ConcurrentHashMap<>();
+    private Map<UUID, List<Message>> groupMessages = new ConcurrentHashMap<>();
+
+    /**
+     * Olvasottsági jelek: felhasználó → beszélgetés → utoljára látott üzenet.
+     * A belső map-ek csak előre léphetnek; a tábla számlálót növelik, de nem naplózódnak.
+     */
+    private Map<String, Map<UUID, ReadMark>> lastRead = new ConcurrentHashMap<>();
+
+    /** Régi formátumú mentések barátlistája, betöltéskor átkerül a friendGraph-ba */
+    private Map<String, Set<String>> friends;
+
+    /** Módosítás számláló, minden sikeres változtatás növeli */
+    private final AtomicLong version = new AtomicLong();
+
+    /** Táblák (felhasználók, barátok, csoportok) írózára; olvasó oldalát a mentés használja */
+    private transient ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+
+    /** Beszélgetés kulcs hash szerint sávozott üzenet zárak */
+    private transient ReentrantLock[] stripes = newStripes();
+
+    /** Fordított index: felhasználó UUID → csoportjai, megváltozhatatlan halmazokkal (betöltéskor újraépül) */
+    private transient Map<UUID, Set<UUID>> groupsByMember = new ConcurrentHashMap<>();
+
+    /** Csoport UUID → név, a getAllGroups nézet forrása (betöltéskor újraépül) */
+    private transient Map<UUID, String> groupNames = new ConcurrentHashMap<>();
+
+    /** Privát beszélgetés azonosító → kulcs, a részleges újratöltéshez; lustán töltődik */
+    private transient Map<UUID, String> privateKeys = new ConcurrentHashMap<>();
+
+    /** Rendezett felhasználónév index a kereséshez (betöltéskor újraépül) */
+    private transient UsernameIndex usernameIndex = new UsernameIndex();
+
+    /** Futó tranzakció visszavonási naplója (csak az írózárat tartó szál használja) */
+    private transient List<Runnable> undoLog;
+
+    /** Táblák módosítás számlálója (a shardolt mentés piszkos követéséhez) */
+    private transient AtomicLong tableVersion = new AtomicLong();
+
+    /** Replikációs napló (csak az író folyamatban, különben null) */
+    private transient volatile ReplicationLog journal;
+
+    /** Legutóbbi beszélgetések indexe, első lekérdezéskor épül (addig null) */
+    private transient volatile ActivityIndex activity;
+    private transient volatile ActivityIndex activityReady;
     
     /**
      * Új felhasználó regisztrálása.
@@ -31,19 +100,41 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean registerUser(String username, String passwordHash) {
-        if (username == null || username.isBlank() || usersByName.containsKey(username)) {
-            return false;
-        }
-        
-        User u = new User(username, passwordHash);
-        usersByName.put(username, u);
-        usersById.put(u.getId(), u);
-        
-        friends.put(username, new HashSet<>());
-        incomingFriendRequests.put(username, new HashSet<>());
-        outgoingFriendRequests.put(username, new HashSet<>());
-        
-        return true;
+        if (username == null || username.isBlank()) return false;
+        return writeTables(() -> {
+            if (isUser(username)) return false;
+            
+            User u = new User(username, passwordHash);
+            usersById.put(u.getId(), u);
+            usernameIndex.add(username);
+            friendGraph.intern(username);
+            incomingFriendRequests.put(username, Collections.emptySet());
+            outgoingFriendRequests.put(username, Collections.emptySet());
+            //utoljára publikáljuk, így aki látja a nevet, a többit is látja
+            usersByName.put(username, u);
+            
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Jelszó hash cseréje, ha közben nem változott (pl. újrahash-elés bejelentkezéskor).
+     * @param username felhasználónév
+     * @param expectedHash a csere alapjául szolgáló régi hash
+     * @param newHash új hash
+     * @return true ha sikeres
+     */
+    public boolean updatePasswordHash(String username, String expectedHash, String newHash) {
+        return writeTables(() -> {
+            User u = user(username);
+            if (u == null || !Objects.equals(u.getPasswordHash(), expectedHash)) return false;
+            User updated = u.withPasswordHash(newHash);
+            usersById.put(updated.getId(), updated);
+            usersByName.put(username, updated);
+            version.incrementAndGet();
+            return true;
+        });
     }
 
     /**
@@ -52,7 +143,16 @@ public class DataStore implements Serializable {
      * @return User vagy null
      */
     public User getUserByName(String username) {
-        return usersByName.get(username);
+        return user(username);
+    }
+
+    /**
+     * Az adattár aktuális verziószáma.
+     * Ha két lekérdezés között nem változott (ugyanazon a példányon), akkor az adatok sem.
+     * @return módosítás számláló
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     /**
@@ -61,7 +161,7 @@ public class DataStore implements Serializable {
      * @return Group vagy null
      */
     public Group getGroup(UUID groupId) {
-        return groups.get(groupId);
+        return group(groupId);
     }
 
     /**
@@ -71,33 +171,36 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean sendFriendRequest(String from, String to) {
-        if (!usersByName.containsKey(from) || !usersByName.containsKey(to)) return false;
-        if (areFriends(from, to)) return false;
-        Set<String> incoming = incomingFriendRequests.computeIfAbsent(to, k -> new HashSet<>());
-        Set<String> outgoing = outgoingFriendRequests.computeIfAbsent(from, k -> new HashSet<>());
-        
-        if (incoming.contains(from) || outgoing.contains(to)) return false;
-        incoming.add(from);
-        outgoing.add(to);
-        return true;
+        return writeTables(() -> {
+            if (!isUser(from) || !isUser(to)) return false;
+            if (areFriends(from, to)) return false;
+            Set<String> incoming = requestsOf(incomingFriendRequests, to);
+            Set<String> outgoing = requestsOf(outgoingFriendRequests, from);
+            
+            if (incoming.contains(from) || outgoing.contains(to)) return false;
+            incomingFriendRequests.put(to, with(incoming, from));
+            outgoingFriendRequests.put(from, with(outgoing, to));
+            version.incrementAndGet();
+            return true;
+        });
     }
 
     /**
      * Bejövő barátkérelmek lekérdezése.
      * @param username felhasználónév
-     * @return felhasználónevek halmaza
+     * @return felhasználónevek megváltozhatatlan pillanatképe
      */
     public Set<String> getIncomingFriendRequests(String username) {
-        return new HashSet<>(incomingFriendRequests.getOrDefault(username, Collections.emptySet()));
+        return requestsOf(incomingFriendRequests, username);
     }
 
     /**
      * Kimenő barátkérelmek lekérdezése.
      * @param username felhasználónév
-     * @return felhasználónevek halmaza
+     * @return felhasználónevek megváltozhatatlan pillanatképe
      */
     public Set<String> getOutgoingFriendRequests(String username) {
-        return new HashSet<>(outgoingFriendRequests.getOrDefault(username, Collections.emptySet()));
+        return requestsOf(outgoingFriendRequests, username);
     }
 
     /**
@@ -107,17 +210,18 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean acceptFriendRequest(String username, String from) {
-        if (!usersByName.containsKey(username) || !usersByName.containsKey(from)) return false;
-        Set<String> incoming = incomingFriendRequests.get(username);
-        if (incoming == null) return false;
-        if (!incoming.remove(from)) return false;
-        //barát hozzáadás
-        friends.get(username).add(from);
-        friends.get(from).add(username);
-        // kimenő kérelem eltávolítása
-        Set<String> outgoing = outgoingFriendRequests.get(from);
-        if (outgoing != null) outgoing.remove(username);
-        return true;
+        return writeTables(() -> {
+            if (!isUser(username) || !isUser(from)) return false;
+            Set<String> incoming = incomingFriendRequests.get(username);
+            if (incoming == null || !incoming.contains(from)) return false;
+            incomingFriendRequests.put(username, without(incoming, from));
+            //barát hozzáadás
+            friendGraph.add(username, from);
+            // kimenő kérelem eltávolítása
+            outgoingFriendRequests.computeIfPresent(from, (k, out) -> without(out, username));
+            version.incrementAndGet();
+            return true;
+        });
     }
 
     /**
@@ -127,13 +231,16 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean rejectFriendRequest(String username, String from) {
-        if (!usersByName.containsKey(username) || !usersByName.containsKey(from)) return false;
-        Set<String> incoming = incomingFriendRequests.get(username);
-        if (incoming == null) return false;
-        boolean removed = incoming.remove(from);
-        Set<String> outgoing = outgoingFriendRequests.get(from);
-        if (outgoing != null) outgoing.remove(username);
-        return removed;
+        return writeTables(() -> {
+            if (!isUser(username) || !isUser(from)) return false;
+            Set<String> incoming = incomingFriendRequests.get(username);
+            if (incoming == null) return false;
+            boolean removed = incoming.contains(from);
+            incomingFriendRequests.put(username, without(incoming, from));
+            outgoingFriendRequests.computeIfPresent(from, (k, out) -> without(out, username));
+            version.incrementAndGet();
+            return removed;
+        });
     }
 
     /**
@@ -143,14 +250,18 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean cancelOutgoingFriendRequest(String from, String to) {
-        if (!usersByName.containsKey(from) || !usersByName.containsKey(to)) return false;
-        Set<String> outgoing = outgoingFriendRequests.get(from);
-        Set<String> incoming = incomingFriendRequests.get(to);
-        boolean removedOut = false;
-        boolean removedIn = false;
-        if (outgoing != null) removedOut = outgoing.remove(to);
-        if (incoming != null) removedIn = incoming.remove(from);
-        return removedOut || removedIn;
+        return writeTables(() -> {
+            if (!isUser(from) || !isUser(to)) return false;
+            Set<String> outgoing = requestsOf(outgoingFriendRequests, from);
+            Set<String> incoming = requestsOf(incomingFriendRequests, to);
+            boolean removedOut = outgoing.contains(to);
+            boolean removedIn = incoming.contains(from);
+            if (!removedOut && !removedIn) return false;
+            outgoingFriendRequests.put(from, without(outgoing, to));
+            incomingFriendRequests.put(to, without(incoming, from));
+            version.incrementAndGet();
+            return true;
+        });
     }
     
     /**
@@ -160,10 +271,12 @@ public class DataStore implements Serializable {
      * @return true ha sikeres
      */
     public boolean removeFriend(String a, String b) {
-        if (!usersByName.containsKey(a) || !usersByName.containsKey(b)) return false;
-        boolean ra = friends.get(a).remove(b);
-        boolean rb = friends.get(b).remove(a);
-        return ra || rb;
+        return writeTables(() -> {
+            if (!isUser(a) || !isUser(b)) return false;
+            boolean removed = friendGraph.remove(a, b);
+            if (removed) version.incrementAndGet();
+            return removed;
+        });
     }
     
     /**
@@ -173,8 +286,49 @@ public class DataStore implements Serializable {
      * @return true ha barátok
      */
     public boolean areFriends(String a, String b) {
-        if (!usersByName.containsKey(a) || !usersByName.containsKey(b)) return false;
-        return friends.get(a).contains(b);
+        if (!isUser(a) || !isUser(b)) return false;
+        return friendGraph.areFriends(a, b);
+    }
+
+    /**
+     * Két felhasználó közös barátai.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return közös barátok halmaza
+     */
+    public Set<String> getMutualFriends(String a, String b) {
+        return friendGraph.mutualFriends(a, b);
+    }
+
+    /**
+     * Barát-ajánlások (barátok barátai) a közös barátok száma szerint rendezve.
+     * A már barátok és a függő kérések résztvevői kimaradnak.
+     * @param username felhasználónév
+     * @param limit maximális találatszám
+     * @return ajánlott felhasználónevek
+     */
+    public List<String> suggestFriends(String username, int limit) {
+        Set<String> incoming = requestsOf(incomingFriendRequests, username);
+        Set<String> outgoing = requestsOf(outgoingFriendRequests, username);
+        return friendGraph.suggestions(username, limit, id -> {
+            String name = friendGraph.nameOf(id);
+            return incoming.contains(name) || outgoing.contains(name);
+        });
+    }
+
+    /**
+     * A felhasználó azon barátai, akik tagjai a csoportnak.
+     * @param username felhasználónév
+     * @param groupId csoport UUID
+     * @return barátok listája
+     */
+    public List<String> getFriendsInGroup(String username, UUID groupId) {
+        Group g = group(groupId);
+        if (g == null) return Collections.emptyList();
+        return friendGraph.friendsMatching(username, name -> {
+            User u = user(name);
+            return u != null && g.isMember(u.getId());
+        });
     }
 
     /**
@@ -184,15 +338,302 @@ public class DataStore implements Serializable {
      * @return csoport UUID
      */
     public UUID createGroup(String name, String creatorUsername) {
-        Group g = new Group(name);
-        groups.put(g.getId(), g);
-        
-        User creator = usersByName.get(creatorUsername);
-        if (creator != null) {
-            g.addMember(creator.getId(), "Adminisztrátor");
+        return writeTables(() -> {
+            Group g = new Group(name);
+            User creator = user(creatorUsername);
+            if (creator != null) {
+                g.addMember(creator.getId(), "Adminisztrátor");
+                indexMembership(creator.getId(), g.getId());
+            }
+            groupNames.put(g.getId(), name);
+            groups.put(g.getId(), g);
+            
+            version.incrementAndGet();
+            return g.getId();
+        });
+    }
+
+    /**
+     * Tag hozzáadása csoporthoz (vagy szerepének felülírása).
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @param role szerep
+     * @return true ha sikeres
+     */
+    public boolean addGroupMember(UUID groupId, String username, String role) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            User u = user(username);
+            if (g == null || u == null) return false;
+            recordMemberUndo(g, u.getId());
+            g.addMember(u.getId(), role);
+            indexMembership(u.getId(), groupId);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Több tag felvétele ugyanazzal a szereppel egy lépésben.
+     * Mindent vagy semmit: ismeretlen felhasználó vagy szerep esetén senki sem kerül be.
+     * @param groupId csoport UUID
+     * @param usernames felhasználónevek
+     * @param role szerep (a csoportban léteznie kell)
+     * @return true ha sikeres
+     */
+    public boolean addGroupMembers(UUID groupId, Collection<String> usernames, String role) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            if (g == null || !g.getRoles().contains(role)) return false;
+            List<UUID> ids = new ArrayList<>(usernames.size());
+            for (String name : usernames) {
+                User u = user(name);
+                if (u == null) return false;
+                ids.add(u.getId());
+            }
+            if (undoLog != null) {
+                List<UUID> added = new ArrayList<>();
+                Map<UUID, String> previous = new HashMap<>();
+                for (UUID id : ids) {
+                    String prior = g.getMemberRole(id);
+                    if (prior == null) added.add(id);
+                    else previous.putIfAbsent(id, prior);
+                }
+                undoLog.add(() -> {
+                    g.removeMembers(added);
+                    for (UUID id : added) unindexMembership(id, groupId);
+                    previous.forEach(g::addMember);
+                });
+            }
+            g.addMembers(ids, role);
+            for (UUID id : ids) indexMembership(id, groupId);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Tag eltávolítása csoportból.
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @return true ha a csoport és a felhasználó létezik
+     */
+    public boolean removeGroupMember(UUID groupId, String username) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            User u = user(username);
+            if (g == null || u == null) return false;
+            recordMemberUndo(g, u.getId());
+            g.removeMember(u.getId());
+            unindexMembership(u.getId(), groupId);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Tag szerepének módosítása.
+     * @param groupId csoport UUID
+     * @param username felhasználónév
+     * @param role új szerep (a csoportban léteznie kell)
+     * @return true ha sikeres
+     */
+    public boolean setGroupMemberRole(UUID groupId, String username, String role) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            User u = user(username);
+            if (g == null || u == null || !g.getRoles().contains(role)) return false;
+            recordMemberUndo(g, u.getId());
+            g.setMemberRole(u.getId(), role);
+            indexMembership(u.getId(), groupId);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Egyéni szerep hozzáadása csoporthoz.
+     * @param groupId csoport UUID
+     * @param role szerep neve
+     * @return true ha a csoport létezik
+     */
+    public boolean addGroupRole(UUID groupId, String role) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            if (g == null) return false;
+            if (undoLog != null && !g.getRoles().contains(role)) undoLog.add(() -> g.removeRole(role));
+            g.addRole(role);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * Szerep jogosultságainak beállítása.
+     * @param groupId csoport UUID
+     * @param role szerep neve (a csoportban léteznie kell)
+     * @param perms jogosultságok
+     * @return true ha sikeres
+     */
+    public boolean setGroupRolePermissions(UUID groupId, String role, Set<String> perms) {
+        return writeTables(() -> {
+            Group g = group(groupId);
+            if (g == null || !g.getRoles().contains(role)) return false;
+            if (undoLog != null) {
+                Set<String> previous = new HashSet<>(g.getRolePermissions(role));
+                undoLog.add(() -> g.setRolePermissions(role, previous));
+            }
+            g.setRolePermissions(role, perms);
+            version.incrementAndGet();
+            return true;
+        });
+    }
+
+    /**
+     * A felhasználó csoportjainak lekérdezése a fordított indexből.
+     * @param username felhasználónév
+     * @return csoport UUID-k megváltozhatatlan pillanatképe
+     */
+    public Set<UUID> getGroupsOf(String username) {
+        User u = user(username);
+        if (u == null) return Collections.emptySet();
+        return groupsByMember.getOrDefault(u.getId(), Collections.emptySet());
+    }
+
+    //a konkurens map-ek null kulcsra kivételt dobnak; a lekérdezések null-ra "nincs" választ adnak
+    private User user(String username) {
+        return username == null ? null : usersByName.get(username);
+    }
+
+    private boolean isUser(String username) {
+        return username != null && usersByName.containsKey(username);
+    }
+
+    private Group group(UUID groupId) {
+        return groupId == null ? null : groups.get(groupId);
+    }
+
+    private static Set<String> requestsOf(Map<String, Set<String>> requests, String username) {
+        return username == null ? Collections.emptySet() : requests.getOrDefault(username, Collections.emptySet());
+    }
+
+    private void indexMembership(UUID userId, UUID groupId) {
+        groupsByMember.compute(userId, (k, mine) -> mine == null ? Set.of(groupId) : with(mine, groupId));
+    }
+
+    private void unindexMembership(UUID userId, UUID groupId) {
+        groupsByMember.computeIfPresent(userId, (k, mine) -> {
+            Set<UUID> rest = without(mine, groupId);
+            return rest.isEmpty() ? null : rest;
+        });
+    }
+
+    /**
+     * Több módosítás egy tranzakcióban: a törzs az írózár alatt fut, és ha false-szal tér vissza
+     * vagy kivételt dob, a csoport módosításai (tagok, szerepek, jogosultságok) visszavonódnak.
+     * Zár nélküli olvasók a tranzakció közben láthatnak részállapotot; a mentés és a
+     * {@link #snapshot()} csak lezárt tranzakciót lát.
+     * @param body módosítások, true ha véglegesíthető
+     * @return true ha a tranzakció véglegesült
+     */
+    public boolean inTransaction(Predicate<DataStore> body) {
+        return writeTables(() -> {
+            if (undoLog != null) {
+                //beágyazott tranzakció: a külsőhöz tartozik
+                return body.test(this);
+            }
+            List<Runnable> undo = new ArrayList<>();
+            undoLog = undo;
+            boolean ok = false;
+            try {
+                ok = body.test(this);
+            } finally {
+                undoLog = null;
+                if (!ok && !undo.isEmpty()) {
+                    for (int i = undo.size() - 1; i >= 0; i--) undo.get(i).run();
+                    version.incrementAndGet();
+                }
+            }
+            return ok;
+        });
+    }
+
+    //tag előző állapotának naplózása tranzakcióban
+    private void recordMemberUndo(Group g, UUID userId) {
+        if (undoLog == null) return;
+        String prior = g.getMemberRole(userId);
+        UUID groupId = g.getId();
+        undoLog.add(() -> {
+            if (prior == null) {
+                g.removeMember(userId);
+                unindexMembership(userId, groupId);
+            } else {
+                g.addMember(userId, prior);
+                indexMembership(userId, groupId);
+            }
+        });
+    }
+
+    //író művelet a táblák írózárja alatt (újrahívható); a külső hívás a zár elengedése után jelez a naplóba
+    private <T> T writeTables(Supplier<T> op) {
+        tableLock.writeLock().lock();
+        boolean outermost = tableLock.getWriteHoldCount() == 1;
+        long before = version.get();
+        try {
+            return op.get();
+        } finally {
+            tableLock.writeLock().unlock();
+            if (outermost && version.get() != before) {
+                tableVersion.incrementAndGet();
+                ReplicationLog j = journal;
+                if (j != null) j.append(new ReplicationLog.TablesChanged(), () -> { });
+            }
         }
-        
-        return g.getId();
+    }
+
+    //üzenet módosítás publikálása, naplózással együtt, ha van napló (a hívó tartja a sávzárat)
+    private void journaled(ReplicationLog.Mutation m, Runnable apply) {
+        ReplicationLog j = journal;
+        if (j == null) apply.run();
+        else j.append(m, apply);
+    }
+
+    /**
+     * Replikációs napló bekapcsolása: innentől minden módosítás bekerül.
+     * @param journal a napló (null: kikapcsolás)
+     */
+    public void setJournal(ReplicationLog journal) {
+        this.journal = journal;
+    }
+
+    private ReentrantLock stripeFor(Object conversationKey) {
+        int h = conversationKey.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) locks[i] = new ReentrantLock();
+        return locks;
+    }
+
+    private static MessageLog log(List<Message> messages) {
+        return messages == null ? MessageLog.EMPTY : (MessageLog) messages;
+    }
+
+    //megváltozhatatlan halmaz egy elemmel bővítve
+    private static <T> Set<T> with(Set<T> set, T item) {
+        Set<T> copy = new HashSet<>(set);
+        copy.add(item);
+        return Collections.unmodifiableSet(copy);
+    }
+
+    //megváltozhatatlan halmaz egy elem nélkül
+    private static <T> Set<T> without(Set<T> set, T item) {
+        if (!set.contains(item)) return set;
+        Set<T> copy = new HashSet<>(set);
+        copy.remove(item);
+        return Collections.unmodifiableSet(copy);
     }
 
     private String privateKey(String a, String b) {
@@ -200,6 +641,17 @@ public class DataStore implements Serializable {
         Collections.sort(l);
         return String.join("#", l);
     }
+
+    /**
+     * Privát beszélgetés állandó azonosítója (mindkét irányból ugyanaz).
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return névből képzett UUID
+     */
+    public static UUID privateConversationId(String a, String b) {
+        String key = a.compareTo(b) <= 0 ? a + "#" + b : b + "#" + a;
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
     
     /**
      * Privát üzenet küldése.
@@ -211,48 +663,79 @@ public class DataStore implements Serializable {
     public void sendPrivateMessage(UUID senderId, String username1, String username2, String content) {
         String key = privateKey(username1, username2);
         Message m = new Message(senderId, null, content);
-        privateMessages.computeIfAbsent(key, k -> new ArrayList<>()).add(m);
+        ReentrantLock lock = stripeFor(key);
+        lock.lock();
+        try {
+            MessageLog next = log(privateMessages.get(key)).append(m);
+            journaled(new ReplicationLog.PrivateMessage(key, m), () -> privateMessages.put(key, next));
+        } finally {
+            lock.unlock();
+        }
+        touchPrivate(key, m);
+        version.incrementAndGet();
     }
     
     /**
      * Privát üzenetek lekérdezése.
      * @param a első felhasználó
      * @param b második felhasználó
-     * @return üzenetek listája
+     * @return üzenetek megváltozhatatlan változata (később sem módosul)
      */
     public List<Message> getPrivateMessages(String a, String b) {
-        String key = privateKey(a, b);
-        return privateMessages.getOrDefault(key, Collections.emptyList());
+        if (a == null || b == null) return MessageLog.EMPTY;
+        return log(privateMessages.get(privateKey(a, b)));
     }
     /**
      * Csoport üzenet küldése.
      * @param senderId küldő UUID
      * @param groupId csoport UUID
      * @param content tartalom
+     * @return true ha a csoport létezik és az üzenet bekerült
      */
-    public void sendGroupMessage(UUID senderId, UUID groupId, String content) {
+    public boolean sendGroupMessage(UUID senderId, UUID groupId, String content) {
         Message m = new Message(senderId, groupId, content);
-        groupMessages.computeIfAbsent(groupId, k -> new ArrayList<>()).add(m);
+        ReentrantLock lock = stripeFor(groupId);
+        lock.lock();
+        try {
+            //a csoport törlése ugyanezt a zárat fogja, így törölt csoportba nem kerülhet üzenet
+            if (!groups.containsKey(groupId)) return false;
+            MessageLog next = log(groupMessages.get(groupId)).append(m);
+            journaled(new ReplicationLog.GroupMessage(groupId, m), () -> groupMessages.put(groupId, next));
+        } finally {
+            lock.unlock();
+        }
+        touchGroup(groupId, m);
+        version.incrementAndGet();
+        return true;
     }
     
     /**
      * Csoport üzenetek lekérdezése.
      * @param groupId csoport UUID
-     * @return üzenetek listája
+     * @return üzenetek megváltozhatatlan változata (később sem módosul)
      */
     public List<Message> getGroupMessages(UUID groupId) {
-        return groupMessages.getOrDefault(groupId, Collections.emptyList());
+        return log(groupId == null ? null : groupMessages.get(groupId));
     }
     
     /**
      * Csoport üzenet törlése.
      * @param groupId csoport UUID
      * @param messageId üzenet UUID
+     * @return true ha az üzenet létezett és törlődött
      */
-    public void deleteGroupMessage(UUID groupId, UUID messageId) {
-        List<Message> list = groupMessages.get(groupId);
-        if (list != null) {
-            list.removeIf(msg -> Objects.equals(msg.getId(), messageId));
+    public boolean deleteGroupMessage(UUID groupId, UUID messageId) {
+        ReentrantLock lock = stripeFor(groupId);
+        lock.lock();
+        try {
+            MessageLog current = log(groupMessages.get(groupId));
+            MessageLog next = current.without(msg -> Objects.equals(msg.getId(), messageId));
+            if (next == current) return false;
+            journaled(new ReplicationLog.GroupMessageDeleted(groupId, messageId), () -> groupMessages.put(groupId, next));
+            version.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -261,29 +744,43 @@ public class DataStore implements Serializable {
      * @param groupId csoport UUID
      */
     public void deleteGroup(UUID groupId) {
-        groups.remove(groupId);
-        groupMessages.remove(groupId);
+        writeTables(() -> {
+            Group g;
+            ReentrantLock lock = stripeFor(groupId);
+            lock.lock();
+            try {
+                g = groups.remove(groupId);
+                groupMessages.remove(groupId);
+            } finally {
+                lock.unlock();
+            }
+            if (g == null) return null;
+            groupNames.remove(groupId);
+            for (UUID memberId : g.getMemberIds()) {
+                unindexMembership(memberId, groupId);
+            }
+            ActivityIndex a = activity;
+            if (a != null) a.forgetGroup(groupId);
+            version.incrementAndGet();
+            return null;
+        });
     }
 
     /**
      * Összes csoport lekérdezése.
-     * @return map UUID → név
+     * @return UUID → név csak olvasható nézet
      */
-    public Map<java.util.UUID, String> getAllGroups() {
-        Map<java.util.UUID, String> m = new HashMap<>();
-        for (Map.Entry<java.util.UUID, Group> e : groups.entrySet()) {
-            m.put(e.getKey(), e.getValue().getName());
-        }
-        return m;
+    public Map<UUID, String> getAllGroups() {
+        return Collections.unmodifiableMap(groupNames);
     }
     
     /**
      * Felhasználó barátainak lekérdezése.
      * @param username felhasználónév
-     * @return barátok halmaza
+     * @return barátok csak olvasható nézete
      */
-    public java.util.Set<String> getFriends(String username) {
-        return new java.util.HashSet<>(friends.getOrDefault(username, java.util.Collections.emptySet()));
+    public Set<String> getFriends(String username) {
+        return friendGraph.friendsOf(username);
     }
     
     /**
@@ -292,15 +789,452 @@ public class DataStore implements Serializable {
      * @return felhasználónév vagy null
      */
     public String getUsernameById(UUID id) {
-        User u = usersById.get(id);
+        User u = id == null ? null : usersById.get(id);
         return u == null ? null : u.getUsername();
     }
     
+    /**
+     * Felhasználónevek keresése prefix, majd részszöveg alapján (kis-nagybetű független).
+     * @param query keresett szöveg
+     * @param limit maximális találatszám
+     * @param exclude kihagyandó nevek feltétele (null: nincs szűrés)
+     * @return legfeljebb limit találat
+     */
+    public List<String> searchUsernames(String query, int limit, Predicate<String> exclude) {
+        return usernameIndex.search(query, limit, exclude);
+    }
+
     /**
      * Összes felhasználónév lekérdezése.
-     * @return felhasználónevek halmaza
+     * @return felhasználónevek csak olvasható nézete
+     */
+    public Set<String> getAllUsernames() {
+        return Collections.unmodifiableSet(usersByName.keySet());
+    }
+
+    /**
+     * Olvasottság rögzítése; csak előre léphet.
+     * @param username olvasó
+     * @param conversation csoport UUID vagy privát beszélgetés azonosító
+     * @param seq az utoljára látott üzenet sorszáma
+     * @param lastSeen az utoljára látott üzenet
+     * @return true ha a jel előre lépett
+     */
+    public boolean markRead(String username, UUID conversation, int seq, Message lastSeen) {
+        if (seq < 0 || lastSeen == null || conversation == null || !isUser(username)) return false;
+        ReadMark mark = new ReadMark(lastSeen.getId(), seq, lastSeen.getTimestamp());
+        boolean[] moved = {false};
+        lastRead.computeIfAbsent(username, k -> new ConcurrentHashMap<>()).compute(conversation, (k, old) -> {
+            moved[0] = mark.isAfter(old);
+            return moved[0] ? mark : old;
+        });
+        if (!moved[0]) return false;
+        tableVersion.incrementAndGet();
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Utoljára látott üzenet.
+     * @param username olvasó
+     * @param conversation beszélgetés azonosító
+     * @return az üzenet UUID, vagy null ha még semmit nem látott
+     */
+    public UUID getLastRead(String username, UUID conversation) {
+        ReadMark mark = readMark(username, conversation);
+        return mark == null ? null : mark.messageId();
+    }
+
+    /**
+     * Egy másik példány (pl. a lecserélt, még nem mentett) olvasottsági jeleinek átvétele;
+     * beszélgetésenként az előrébb tartó jel marad.
+     * @param other a régi adattár
+     */
+    public void mergeReadMarks(DataStore other) {
+        other.lastRead.forEach((user, marks) -> {
+            if (!isUser(user)) return;
+            Map<UUID, ReadMark> mine = lastRead.computeIfAbsent(user, k -> new ConcurrentHashMap<>());
+            marks.forEach((conversation, mark) -> mine.merge(conversation, mark, (a, b) -> b.isAfter(a) ? b : a));
+        });
+    }
+
+    private ReadMark readMark(String username, UUID conversation) {
+        Map<UUID, ReadMark> mine = username == null ? null : lastRead.get(username);
+        return mine == null || conversation == null ? null : mine.get(conversation);
+    }
+
+    /**
+     * Olvasatlan privát üzenetek száma.
+     * @param username olvasó
+     * @param friend a másik fél
+     * @return olvasatlanok száma
+     */
+    public int getPrivateUnread(String username, String friend) {
+        return unread(username, privateConversationId(username, friend), getPrivateMessages(username, friend));
+    }
+
+    /**
+     * Olvasatlan csoport üzenetek száma.
+     * @param username olvasó
+     * @param groupId csoport UUID
+     * @return olvasatlanok száma
      */
-    public java.util.Set<String> getAllUsernames() {
-        return new java.util.HashSet<>(usersByName.keySet());
+    public int getGroupUnread(String username, UUID groupId) {
+        return unread(username, groupId, getGroupMessages(groupId));
+    }
+
+    //törlés a jelet csak balra tolhatja: a sorszámtól visszafelé keresünk, amíg régebbi üzenethez nem érünk
+    private int unread(String username, UUID conversation, List<Message> log) {
+        ReadMark mark = readMark(username, conversation);
+        if (mark == null) return log.size();
+        int i = Math.min(mark.seq(), log.size() - 1);
+        while (i >= 0 && !mark.messageId().equals(log.get(i).getId())
+                && log.get(i).getTimestamp().isAfter(mark.at())) i--;
+        return log.size() - 1 - i;
+    }
+
+    /**
+     * A felhasználó beszélgetései utolsó aktivitás szerint, legfrissebb elöl.
+     * Üzenet nélküli beszélgetés nem szerepel.
+     * @param username felhasználónév
+     * @param limit legfeljebb ennyi
+     * @return csoport UUID-k és privát beszélgetés azonosítók
+     */
+    public List<UUID> getRecentConversations(String username, int limit) {
+        return activity().recent(username, getGroupsOf(username), limit);
+    }
+
+    /**
+     * Egy beszélgetés utolsó aktivitása a felhasználónál.
+     * @param username felhasználónév
+     * @param conversation beszélgetés azonosító
+     * @return epoch ms, vagy 0 ha nincs üzenet
+     */
+    public long getLastActivity(String username, UUID conversation) {
+        if (getGroupsOf(username).contains(conversation)) return activity().groupActivity(conversation);
+        return activity().lastActivity(username, conversation);
+    }
+
+    //az index az első lekérdezéskor épül; az írók már a feltöltés alatt is beleírnak,
+    //ütközés nem lehet, mert a bejegyzés mindig a nagyobb időpontot tartja meg
+    private ActivityIndex activity() {
+        ActivityIndex a = activityReady;
+        return a != null ? a : buildActivity();
+    }
+
+    private synchronized ActivityIndex buildActivity() {
+        if (activityReady != null) return activityReady;
+        ActivityIndex a = new ActivityIndex();
+        activity = a;
+        privateMessages.forEach((key, log) -> {
+            long at = lastTimestamp(log);
+            if (at == 0) return;
+            UUID id = conversationIdOfKey(key);
+            for (String user : participants(key)) a.touch(user, id, at);
+        });
+        groupMessages.forEach((groupId, log) -> {
+            long at = lastTimestamp(log);
+            if (at > 0 && groups.containsKey(groupId)) a.touchGroup(groupId, at);
+        });
+        activityReady = a;
+        return a;
+    }
+
+    private void touchPrivate(String key, Message m) {
+        ActivityIndex a = activity;
+        if (a == null) return;
+        UUID id = conversationIdOfKey(key);
+        long at = timestampOf(m);
+        for (String user : participants(key)) a.touch(user, id, at);
+    }
+
+    //csoportonként egy bejegyzés: a tagok a lekérdezéskor, a tagságuk alapján kapják meg
+    private void touchGroup(UUID groupId, Message m) {
+        ActivityIndex a = activity;
+        if (a != null) a.touchGroup(groupId, timestampOf(m));
+    }
+
+    //privát kulcs ("a#b") résztvevői; a név is tartalmazhat #-et, ezért a létező nevekre bontunk
+    private List<String> participants(String key) {
+        for (int i = key.indexOf('#'); i >= 0; i = key.indexOf('#', i + 1)) {
+            String a = key.substring(0, i);
+            String b = key.substring(i + 1);
+            if (isUser(a) && isUser(b)) return List.of(a, b);
+        }
+        return List.of();
+    }
+
+    //a privateConversationId is ugyanebből a rendezett kulcsból képez
+    private static UUID conversationIdOfKey(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long lastTimestamp(List<Message> log) {
+        return log == null || log.isEmpty() ? 0 : timestampOf(log.get(log.size() - 1));
+    }
+
+    private static long timestampOf(Message m) {
+        return m.getTimestamp() == null ? 0 : m.getTimestamp().toEpochMilli();
+    }
+
+    /**
+     * Önálló, konzisztens másolat az adattárról.
+     * A táblákat rövid olvasózár alatt rögzíti; az üzenet változatokat és a megváltozhatatlan
+     * halmazokat nem másolja, csak a módosítható csoportokat és a barát gráf vázát.
+     * Mentés és hosszú olvasások ezen dolgozhatnak az írók feltartása nélkül.
+     * @return pillanatkép
+     */
+    public DataStore snapshot() {
+        DataStore copy = tablesSnapshot();
+        //az üzenet változatok önmagukban konzisztensek, zár nélkül átvehetők
+        copy.privateMessages.putAll(privateMessages);
+        copy.groupMessages.putAll(groupMessages);
+        return copy;
+    }
+
+    /**
+     * Csak a táblák (felhasználók, barátok, csoportok) önálló másolata, üzenetek nélkül.
+     * @return új adattár üres üzenet map-ekkel
+     */
+    public DataStore tablesSnapshot() {
+        DataStore copy = new DataStore();
+        tableLock.readLock().lock();
+        try {
+            copy.usersByName.putAll(usersByName);
+            copy.usersById.putAll(usersById);
+            copy.friendGraph = friendGraph.copy();
+            copy.incomingFriendRequests.putAll(incomingFriendRequests);
+            copy.outgoingFriendRequests.putAll(outgoingFriendRequests);
+            groups.forEach((id, g) -> copy.groups.put(id, g.copy()));
+            copy.groupsByMember.putAll(groupsByMember);
+            copy.groupNames.putAll(groupNames);
+            //a belső map-ek közösek maradnak: csak előre lépnek, a mentés bármelyik állapotot elfogadja
+            copy.lastRead.putAll(lastRead);
+            copy.version.set(version.get());
+        } finally {
+            tableLock.readLock().unlock();
+        }
+        for (String username : copy.usersByName.keySet()) {
+            copy.usernameIndex.add(username);
+        }
+        return copy;
+    }
+
+    /**
+     * Pillanatkép replika indításához: az üzenetek pontosan a visszaadott napló pozícióig
+     * tartalmazzák a módosításokat, a táblák legalább addig (a későbbi tábla jelzések
+     * úgyis friss táblákat hoznak).
+     * @return pillanatkép és a napló pozíció, ahonnan a replika folytatja
+     * @throws IllegalStateException ha nincs bekapcsolva a napló
+     */
+    public ReplicationLog.Positioned<DataStore> replicationSnapshot() {
+        ReplicationLog j = journal;
+        if (j == null) throw new IllegalStateException("Nincs replikációs napló");
+        ReplicationLog.Positioned<DataStore> messages = j.capture(() -> {
+            DataStore m = new DataStore();
+            m.privateMessages.putAll(privateMessages);
+            m.groupMessages.putAll(groupMessages);
+            return m;
+        });
+        DataStore copy = tablesSnapshot();
+        copy.adoptMessagesFrom(messages.value());
+        return new ReplicationLog.Positioned<>(messages.position(), copy);
+    }
+
+    /**
+     * Üzenetek átvétele egy másik adattárból (replikán, új táblák érkezésekor);
+     * a már nem létező csoportok üzenetei kimaradnak.
+     * @param source az eddigi adattár
+     */
+    public void adoptMessagesFrom(DataStore source) {
+        privateMessages.putAll(source.privateMessages);
+        source.groupMessages.forEach((id, log) -> {
+            if (groups.containsKey(id)) groupMessages.put(id, log);
+        });
+    }
+
+    //táblák módosítás számlálója; a tényleges változásnál többször is nőhet, kevesebbszer soha
+    long getTableVersion() {
+        return tableVersion.get();
+    }
+
+    //minden beszélgetés aktuális változata; kulcs: csoport UUID vagy privát beszélgetés kulcs
+    void forEachConversation(BiConsumer<Object, List<Message>> action) {
+        privateMessages.forEach(action::accept);
+        groupMessages.forEach(action::accept);
+    }
+
+    //betöltött shard üzeneteinek átvétele; a nem létező csoportoké kimarad
+    void restoreMessages(Map<String, List<Message>> privateLogs, Map<UUID, List<Message>> groupLogs) {
+        privateLogs.forEach((k, v) -> privateMessages.put(k, MessageLog.of(v)));
+        groupLogs.forEach((id, v) -> {
+            if (groups.containsKey(id)) groupMessages.put(id, MessageLog.of(v));
+        });
+    }
+
+    //beszélgetés tárolási kulcsa: csoportnál maga az UUID, privátnál az "a#b" kulcs; null ha nem ismert
+    Object conversationKey(UUID conversation) {
+        if (conversation == null) return null;
+        if (groups.containsKey(conversation)) return conversation;
+        String key = privateKeys.get(conversation);
+        if (key != null) return key;
+        for (String k : privateMessages.keySet()) privateKeys.putIfAbsent(conversationIdOfKey(k), k);
+        return privateKeys.get(conversation);
+    }
+
+    /**
+     * Egyes beszélgetések naplóinak cseréje a mentésből olvasottra (részleges újratöltés).
+     * A hívó gondoskodik róla, hogy közben ne fusson helyi módosítás.
+     * @param logs beszélgetés kulcs → napló, lásd {@link Storage#loadConversations}
+     */
+    public void restoreConversations(Map<Object, List<Message>> logs) {
+        logs.forEach((key, log) -> {
+            MessageLog next = MessageLog.of(log);
+            ReentrantLock lock = stripeFor(key);
+            lock.lock();
+            try {
+                if (key instanceof UUID groupId) {
+                    if (!groups.containsKey(groupId)) return;
+                    groupMessages.put(groupId, next);
+                } else {
+                    privateMessages.put((String) key, next);
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (next.isEmpty()) return;
+            if (key instanceof UUID groupId) touchGroup(groupId, next.get(next.size() - 1));
+            else touchPrivate((String) key, next.get(next.size() - 1));
+        });
+        version.incrementAndGet();
+    }
+
+    /**
+     * Naplóbejegyzés alkalmazása replikán. A csoport létezését nem ellenőrzi, mert a
+     * táblák késhetnek az üzenetekhez képest; a törölt csoport üzenetei a következő
+     * tábla frissítéskor tűnnek el.
+     * @param m bejegyzés
+     */
+    public void apply(ReplicationLog.Mutation m) {
+        switch (m) {
+            case ReplicationLog.GroupMessage g -> {
+                ReentrantLock lock = stripeFor(g.groupId());
+                lock.lock();
+                try {
+                    groupMessages.put(g.groupId(), log(groupMessages.get(g.groupId())).append(g.message()));
+                } finally {
+                    lock.unlock();
+                }
+                touchGroup(g.groupId(), g.message());
+            }
+            case ReplicationLog.PrivateMessage p -> {
+                ReentrantLock lock = stripeFor(p.key());
+                lock.lock();
+                try {
+                    privateMessages.put(p.key(), log(privateMessages.get(p.key())).append(p.message()));
+                } finally {
+                    lock.unlock();
+                }
+                touchPrivate(p.key(), p.message());
+            }
+            case ReplicationLog.GroupMessageDeleted d -> {
+                ReentrantLock lock = stripeFor(d.groupId());
+                lock.lock();
+                try {
+                    MessageLog current = log(groupMessages.get(d.groupId()));
+                    MessageLog next = current.without(msg -> Objects.equals(msg.getId(), d.messageId()));
+                    if (next != current) groupMessages.put(d.groupId(), next);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            case ReplicationLog.TablesChanged t -> {
+                //a táblák külön, egészben érkeznek
+                return;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    //táblák olvasózár alatt; az üzenet változatok megváltozhatatlanok, sávzár nem kell
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        tableLock.readLock().lock();
+        try {
+            out.defaultWriteObject();
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    //betöltés után a konkurens map-ek, zárak és a nem mentett indexek újraépítése
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        tableLock = new ReentrantReadWriteLock();
+        tableVersion = new AtomicLong();
+        stripes = newStripes();
+        usersByName = new ConcurrentHashMap<>(usersByName);
+        usersById = new ConcurrentHashMap<>(usersById);
+        groups = new ConcurrentHashMap<>(groups);
+        privateMessages = messageLogs(privateMessages);
+        groupMessages = messageLogs(groupMessages);
+        incomingFriendRequests = immutableValues(incomingFriendRequests);
+        outgoingFriendRequests = immutableValues(outgoingFriendRequests);
+        migrateFriends();
+        lastRead = readMarks(lastRead);
+        groupsByMember = new ConcurrentHashMap<>();
+        groupNames = new ConcurrentHashMap<>();
+        privateKeys = new ConcurrentHashMap<>();
+        usernameIndex = new UsernameIndex();
+        for (String username : usersByName.keySet()) {
+            usernameIndex.add(username);
+        }
+        for (Group g : groups.values()) {
+            groupNames.put(g.getId(), g.getName());
+            for (UUID memberId : g.getMemberIds()) {
+                indexMembership(memberId, g.getId());
+            }
+        }
+    }
+
+    //régi mentések ArrayList értékei helyett MessageLog változatok
+    private static <K> Map<K, List<Message>> messageLogs(Map<K, List<Message>> source) {
+        Map<K, List<Message>> m = new ConcurrentHashMap<>();
+        source.forEach((k, v) -> m.put(k, MessageLog.of(v)));
+        return m;
+    }
+
+    //régi mentésekben nincs olvasottsági jel
+    //a régi, sorszámos jelek elvesznek: törlés után nem lehet tudni, melyik üzenetre mutattak
+    private static Map<String, Map<UUID, ReadMark>> readMarks(Map<String, ? extends Map<UUID, ?>> source) {
+        Map<String, Map<UUID, ReadMark>> m = new ConcurrentHashMap<>();
+        if (source == null) return m;
+        source.forEach((user, marks) -> {
+            Map<UUID, ReadMark> mine = new ConcurrentHashMap<>();
+            marks.forEach((conversation, mark) -> {
+                if (mark instanceof ReadMark r) mine.put(conversation, r);
+            });
+            m.put(user, mine);
+        });
+        return m;
+    }
+
+    private static Map<String, Set<String>> immutableValues(Map<String, Set<String>> source) {
+        Map<String, Set<String>> m = new ConcurrentHashMap<>();
+        source.forEach((k, v) -> m.put(k, Collections.unmodifiableSet(new HashSet<>(v))));
+        return m;
+    }
+
+    //régi (névhalmaz alapú) barátlista átalakítása bitmap gráffá
+    private void migrateFriends() {
+        if (friendGraph == null) {
+            friendGraph = new FriendGraph();
+            for (String username : usersByName.keySet()) {
+                friendGraph.intern(username);
+            }
+        }
+        if (friends != null) {
+            friends.forEach((a, set) -> set.forEach(b -> friendGraph.add(a, b)));
+            friends = null;
+        }
     }
 }
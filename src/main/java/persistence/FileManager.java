@@ -1,6 +1,9 @@
 package persistence;
 
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Fájlkezelő osztály DataStore szerializációhoz.
@@ -11,20 +14,43 @@ public class FileManager {
 
     /**
      * DataStore mentése fájlba.
+     * A mentés az adattár pillanatképén fut, így a küldések és módosítások közben sem állnak meg.
      * @param store mentendő adattár
      * @param file célfájl
      * @return true ha sikeres
      */
     public static boolean save(DataStore store, File file) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(store);
+        return writeAtomically(store.snapshot(), file);
+    }
+
+    //ideiglenes fájlba írunk és átnevezünk, így egy párhuzamos betöltés sosem lát félkész fájlt
+    static boolean writeAtomically(Serializable object, File file) {
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            oos.writeObject(object);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return false;
+        }
+        try {
+            replace(tmp, file);
             return true;
         } catch (IOException e) {
             e.printStackTrace();
+            tmp.delete();
             return false;
         }
     }
 
+    private static void replace(File tmp, File file) throws IOException {
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * DataStore betöltése fájlból.
      * @param file forrásfájl
@@ -33,11 +59,17 @@ public class FileManager {
     public static DataStore load(File file) {
         if (!file.exists()) return null;
         
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            return (DataStore) ois.readObject();
-        } catch (IOException | ClassNotFoundException e) {
+        try {
+            return (DataStore) read(file);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    static Object read(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return ois.readObject();
+        }
+    }
 }
@@ -0,0 +1,278 @@
+package persistence;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Barát gráf tömörített bitmapekkel.
+ * A felhasználóneveket egész azonosítóra internálja (regisztrációs sorrend),
+ * minden felhasználó barátai egy {@link IdBitmap}-ben tárolódnak, így a közös barátok
+ * és a barát-ajánlások halmazműveletekkel számolhatók.
+ * <p>
+ * Egy író, sok olvasó: az írókat a hívó sorosítja (DataStore táblazár), az olvasók zár nélkül
+ * dolgoznak. A bitmapeket írás előtt lemásoljuk és a másolatot publikáljuk, így egy olvasó
+ * mindig egy lezárt bitmapet lát.
+ */
+public class FriendGraph implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Azonosító → felhasználónév (az első count elem érvényes) */
+    private volatile String[] names = new String[16];
+
+    /** Internált nevek száma, publikálja a names-be írt elemeket */
+    private volatile int count;
+
+    /** Azonosító → barátok bitmapje (null: még nincs barát), írás után nem módosul */
+    private volatile AtomicReferenceArray<IdBitmap> friends = new AtomicReferenceArray<>(16);
+
+    /** Felhasználónév → azonosító (nem mentjük, betöltéskor újraépül) */
+    private transient Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * Felhasználónév internálása; már ismert névnél a meglévő azonosítót adja.
+     * @param username felhasználónév
+     * @return egész azonosító
+     */
+    public int intern(String username) {
+        Integer id = ids.get(username);
+        if (id != null) return id;
+        int next = count;
+        if (next == names.length) {
+            names = Arrays.copyOf(names, next * 2);
+            AtomicReferenceArray<IdBitmap> grown = new AtomicReferenceArray<>(next * 2);
+            for (int i = 0; i < next; i++) grown.set(i, friends.get(i));
+            friends = grown;
+        }
+        names[next] = username;
+        count = next + 1;
+        ids.put(username, next);
+        return next;
+    }
+
+    /**
+     * Barátság felvétele (kétirányú).
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return true ha új kapcsolat jött létre
+     */
+    public boolean add(String a, String b) {
+        int ia = idOf(a);
+        int ib = idOf(b);
+        if (ia < 0 || ib < 0 || ia == ib) return false;
+        if (bitmapOrEmpty(ia).contains(ib)) return false;
+        publish(ia, ib, true);
+        publish(ib, ia, true);
+        return true;
+    }
+
+    /**
+     * Barátság megszüntetése (kétirányú).
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return true ha volt ilyen kapcsolat
+     */
+    public boolean remove(String a, String b) {
+        int ia = idOf(a);
+        int ib = idOf(b);
+        if (ia < 0 || ib < 0) return false;
+        boolean ra = bitmapOrEmpty(ia).contains(ib);
+        boolean rb = bitmapOrEmpty(ib).contains(ia);
+        if (ra) publish(ia, ib, false);
+        if (rb) publish(ib, ia, false);
+        return ra || rb;
+    }
+
+    /**
+     * Barátság ellenőrzése.
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return true ha barátok
+     */
+    public boolean areFriends(String a, String b) {
+        int ia = idOf(a);
+        int ib = idOf(b);
+        if (ia < 0 || ib < 0) return false;
+        return bitmapOrEmpty(ia).contains(ib);
+    }
+
+    /**
+     * Felhasználó barátainak csak olvasható, élő nézete.
+     * @param username felhasználónév
+     * @return barátok halmaza
+     */
+    public Set<String> friendsOf(String username) {
+        int id = idOf(username);
+        if (id < 0) return Collections.emptySet();
+        return new NameView(() -> bitmapOrEmpty(id));
+    }
+
+    /**
+     * Közös barátok (metszet).
+     * @param a első felhasználó
+     * @param b második felhasználó
+     * @return közös barátok halmaza
+     */
+    public Set<String> mutualFriends(String a, String b) {
+        IdBitmap fa = friendsBitmap(a);
+        IdBitmap fb = friendsBitmap(b);
+        IdBitmap both = IdBitmap.and(fa, fb);
+        return new NameView(() -> both);
+    }
+
+    /**
+     * Barát-ajánlások: barátok barátai, akik még nem barátok, a közös barátok száma szerint csökkenő sorrendben.
+     * @param username felhasználónév
+     * @param limit maximális találatszám
+     * @param exclude további kizárt azonosítók feltétele (pl. függő kérések), lehet null
+     * @return ajánlott felhasználónevek
+     */
+    public List<String> suggestions(String username, int limit, IntPredicate exclude) {
+        int self = idOf(username);
+        if (self < 0 || limit <= 0) return Collections.emptyList();
+        IdBitmap mine = friendsBitmap(username);
+        //jelöltenkénti közös barát számláló
+        Map<Integer, Integer> counts = new HashMap<>();
+        mine.forEach(f -> {
+            IdBitmap candidates = IdBitmap.andNot(bitmapOrEmpty(f), mine);
+            candidates.forEach(c -> {
+                if (c != self && (exclude == null || !exclude.test(c))) counts.merge(c, 1, Integer::sum);
+            });
+        });
+        List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(counts.entrySet());
+        ranked.sort((x, y) -> {
+            int c = Integer.compare(y.getValue(), x.getValue());
+            return c != 0 ? c : nameOf(x.getKey()).compareTo(nameOf(y.getKey()));
+        });
+        List<String> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (Map.Entry<Integer, Integer> e : ranked) {
+            if (result.size() >= limit) break;
+            result.add(nameOf(e.getKey()));
+        }
+        return result;
+    }
+
+    /**
+     * A felhasználó azon barátai, akikre a feltétel teljesül (pl. egy csoport tagjai).
+     * @param username felhasználónév
+     * @param filter felhasználónév alapú feltétel
+     * @return szűrt barátok listája azonosító sorrendben
+     */
+    public List<String> friendsMatching(String username, Predicate<String> filter) {
+        List<String> result = new ArrayList<>();
+        friendsBitmap(username).forEach(f -> {
+            String name = nameOf(f);
+            if (filter.test(name)) result.add(name);
+        });
+        return result;
+    }
+
+    /**
+     * Felhasználó azonosítója.
+     * @param username felhasználónév
+     * @return azonosító vagy -1, ha nem ismert
+     */
+    public int idOf(String username) {
+        if (username == null) return -1;
+        Integer id = ids.get(username);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Felhasználónév azonosító alapján.
+     * @param id azonosító
+     * @return felhasználónév
+     */
+    public String nameOf(int id) {
+        if (id < 0 || id >= count) throw new IndexOutOfBoundsException(id);
+        return names[id];
+    }
+
+    /**
+     * Független másolat; a bitmapek írás után nem módosulnak, ezért megosztottak.
+     * @return gráf másolat
+     */
+    public FriendGraph copy() {
+        FriendGraph g = new FriendGraph();
+        int n = count;
+        AtomicReferenceArray<IdBitmap> src = friends;
+        g.names = Arrays.copyOf(names, Math.max(16, n));
+        AtomicReferenceArray<IdBitmap> dst = new AtomicReferenceArray<>(g.names.length);
+        for (int i = 0; i < n; i++) {
+            dst.set(i, src.get(i));
+            g.ids.put(g.names[i], i);
+        }
+        g.friends = dst;
+        g.count = n;
+        return g;
+    }
+
+    private IdBitmap friendsBitmap(String username) {
+        int id = idOf(username);
+        return id < 0 ? new IdBitmap() : bitmapOrEmpty(id);
+    }
+
+    private IdBitmap bitmapOrEmpty(int id) {
+        IdBitmap b = friends.get(id);
+        return b == null ? new IdBitmap() : b;
+    }
+
+    //másolás írás előtt: a régi bitmapet olvasók még használhatják
+    private void publish(int id, int friend, boolean add) {
+        IdBitmap b = friends.get(id);
+        IdBitmap next = b == null ? new IdBitmap() : b.copy();
+        if (add) next.add(friend);
+        else next.remove(friend);
+        friends.set(id, next.isEmpty() ? null : next);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ids = new ConcurrentHashMap<>();
+        for (int i = 0; i < count; i++) {
+            ids.put(names[i], i);
+        }
+    }
+
+    /**
+     * Azonosító bitmap nevekre leképezett, csak olvasható halmaz nézete.
+     */
+    private final class NameView extends AbstractSet<String> {
+        private final Supplier<IdBitmap> source;
+
+        NameView(Supplier<IdBitmap> source) {
+            this.source = source;
+        }
+
+        private IdBitmap bitmap() {
+            IdBitmap b = source.get();
+            return b == null ? new IdBitmap() : b;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String s && bitmap().contains(idOf(s));
+        }
+
+        @Override
+        public int size() {
+            return bitmap().cardinality();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            PrimitiveIterator.OfInt it = bitmap().iterator();
+            return new Iterator<>() {
+                @Override public boolean hasNext() { return it.hasNext(); }
+                @Override public String next() { return nameOf(it.nextInt()); }
+            };
+        }
+    }
+}
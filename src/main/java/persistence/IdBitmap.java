@@ -0,0 +1,445 @@
+package persistence;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Tömörített bitmap nemnegatív egész azonosítókhoz (Roaring jellegű).
+ * Az azonosítók felső 16 bitje választja ki a tárolót; ritka tárolóban rendezett
+ * char tömb, sűrűben (4096 elem felett) 65536 bites bitmap tárolja az alsó 16 bitet.
+ * Halmazműveletek (metszet, különbség, unió) tárolónként futnak.
+ */
+public class IdBitmap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Efölött a tároló bitmapre vált */
+    private static final int ARRAY_MAX = 4096;
+
+    /** Bitmap tároló mérete long szavakban (65536 bit) */
+    private static final int WORDS = 1024;
+
+    /** Tárolók kulcsai (felső 16 bit), rendezve */
+    private char[] keys = new char[0];
+
+    /** Tárolók: char[] (ritka) vagy long[] (sűrű) */
+    private Object[] containers = new Object[0];
+
+    /** Tárolónkénti elemszám */
+    private int[] cards = new int[0];
+
+    /** Tárolók száma */
+    private int size;
+
+    /**
+     * Azonosító hozzáadása.
+     * @param id nemnegatív azonosító
+     * @return true ha új elem volt
+     */
+    public boolean add(int id) {
+        char hi = (char) (id >>> 16);
+        char lo = (char) id;
+        int ci = findContainer(hi);
+        if (ci < 0) {
+            ci = -ci - 1;
+            insertContainer(ci, hi, new char[] { lo }, 1);
+            return true;
+        }
+        Object c = containers[ci];
+        if (c instanceof long[] words) {
+            long bit = 1L << lo;
+            if ((words[lo >>> 6] & bit) != 0) return false;
+            words[lo >>> 6] |= bit;
+            cards[ci]++;
+            return true;
+        }
+        char[] values = (char[]) c;
+        int card = cards[ci];
+        int pos = Arrays.binarySearch(values, 0, card, lo);
+        if (pos >= 0) return false;
+        pos = -pos - 1;
+        if (card >= ARRAY_MAX) {
+            long[] words = toWords(values, card);
+            words[lo >>> 6] |= 1L << lo;
+            containers[ci] = words;
+        } else {
+            if (card == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, card * 2)));
+                containers[ci] = values;
+            }
+            System.arraycopy(values, pos, values, pos + 1, card - pos);
+            values[pos] = lo;
+        }
+        cards[ci] = card + 1;
+        return true;
+    }
+
+    /**
+     * Azonosító eltávolítása.
+     * @param id azonosító
+     * @return true ha benne volt
+     */
+    public boolean remove(int id) {
+        int ci = findContainer((char) (id >>> 16));
+        if (ci < 0) return false;
+        char lo = (char) id;
+        Object c = containers[ci];
+        int card = cards[ci];
+        if (c instanceof long[] words) {
+            long bit = 1L << lo;
+            if ((words[lo >>> 6] & bit) == 0) return false;
+            words[lo >>> 6] &= ~bit;
+            card--;
+            if (card <= ARRAY_MAX) containers[ci] = toValues(words, card);
+        } else {
+            char[] values = (char[]) c;
+            int pos = Arrays.binarySearch(values, 0, card, lo);
+            if (pos < 0) return false;
+            System.arraycopy(values, pos + 1, values, pos, card - pos - 1);
+            card--;
+        }
+        if (card == 0) {
+            removeContainer(ci);
+        } else {
+            cards[ci] = card;
+        }
+        return true;
+    }
+
+    /**
+     * Tartalmazás ellenőrzése.
+     * @param id azonosító
+     * @return true ha benne van
+     */
+    public boolean contains(int id) {
+        if (id < 0) return false;
+        int ci = findContainer((char) (id >>> 16));
+        if (ci < 0) return false;
+        char lo = (char) id;
+        Object c = containers[ci];
+        if (c instanceof long[] words) {
+            return (words[lo >>> 6] & (1L << lo)) != 0;
+        }
+        return Arrays.binarySearch((char[]) c, 0, cards[ci], lo) >= 0;
+    }
+
+    /**
+     * Elemszám.
+     * @return az azonosítók száma
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) total += cards[i];
+        return total;
+    }
+
+    /**
+     * Üres-e a halmaz.
+     * @return true ha nincs eleme
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Elemek bejárása növekvő sorrendben.
+     * @param action azonosítót fogadó művelet
+     */
+    public void forEach(IntConsumer action) {
+        PrimitiveIterator.OfInt it = iterator();
+        while (it.hasNext()) action.accept(it.nextInt());
+    }
+
+    /**
+     * Növekvő sorrendű bejáró.
+     * @return primitív int iterátor
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int ci = 0;
+            private int pos = 0;
+            private int next = advance();
+
+            //következő elem keresése a (ci, pos) ponttól; -1 ha nincs több
+            private int advance() {
+                while (ci < size) {
+                    int base = keys[ci] << 16;
+                    Object c = containers[ci];
+                    if (c instanceof long[] words) {
+                        while (pos < 65536) {
+                            long w = words[pos >>> 6] >>> (pos & 63);
+                            if (w != 0) {
+                                pos += Long.numberOfTrailingZeros(w);
+                                return base | pos++;
+                            }
+                            pos = (pos | 63) + 1;
+                        }
+                    } else if (pos < cards[ci]) {
+                        return base | ((char[]) c)[pos++];
+                    }
+                    ci++;
+                    pos = 0;
+                }
+                return -1;
+            }
+
+            @Override public boolean hasNext() { return next >= 0; }
+
+            @Override public int nextInt() {
+                if (next < 0) throw new NoSuchElementException();
+                int r = next;
+                next = advance();
+                return r;
+            }
+        };
+    }
+
+    /**
+     * Mély másolat.
+     * @return új, független bitmap ugyanazokkal az elemekkel
+     */
+    public IdBitmap copy() {
+        IdBitmap r = new IdBitmap();
+        r.keys = Arrays.copyOf(keys, size);
+        r.cards = Arrays.copyOf(cards, size);
+        r.containers = new Object[size];
+        for (int i = 0; i < size; i++) {
+            Object c = containers[i];
+            r.containers[i] = c instanceof long[] w ? w.clone() : Arrays.copyOf((char[]) c, cards[i]);
+        }
+        r.size = size;
+        return r;
+    }
+
+    /**
+     * Metszet.
+     * @param a első halmaz
+     * @param b második halmaz
+     * @return új bitmap: a ∩ b
+     */
+    public static IdBitmap and(IdBitmap a, IdBitmap b) {
+        IdBitmap r = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) i++;
+            else if (a.keys[i] > b.keys[j]) j++;
+            else {
+                r.append(a.keys[i], andContainers(a.containers[i], a.cards[i], b.containers[j], b.cards[j]));
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Különbség.
+     * @param a kisebbítendő halmaz
+     * @param b kivonandó halmaz
+     * @return új bitmap: a \ b
+     */
+    public static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+        IdBitmap r = new IdBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) j++;
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                r.append(a.keys[i], andNotContainers(a.containers[i], a.cards[i], b.containers[j], b.cards[j]));
+            } else {
+                r.append(a.keys[i], copyContainer(a.containers[i], a.cards[i]));
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Unió.
+     * @param a első halmaz
+     * @param b második halmaz
+     * @return új bitmap: a ∪ b
+     */
+    public static IdBitmap or(IdBitmap a, IdBitmap b) {
+        IdBitmap r = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                r.append(a.keys[i], copyContainer(a.containers[i], a.cards[i]));
+                i++;
+            } else if (i >= a.size || b.keys[j] < a.keys[i]) {
+                r.append(b.keys[j], copyContainer(b.containers[j], b.cards[j]));
+                j++;
+            } else {
+                r.append(a.keys[i], orContainers(a.containers[i], a.cards[i], b.containers[j], b.cards[j]));
+                i++;
+                j++;
+            }
+        }
+        return r;
+    }
+
+    private static Object andContainers(Object x, int cx, Object y, int cy) {
+        if (x instanceof char[] xs && y instanceof char[] ys) {
+            char[] out = new char[Math.min(cx, cy)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cx && j < cy) {
+                if (xs[i] < ys[j]) i++;
+                else if (xs[i] > ys[j]) j++;
+                else {
+                    out[n++] = xs[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+        if (x instanceof long[] && y instanceof char[]) {
+            return andContainers(y, cy, x, cx);
+        }
+        if (x instanceof char[] xs) {
+            return filter(xs, cx, (long[]) y, true);
+        }
+        long[] w = ((long[]) x).clone();
+        long[] v = (long[]) y;
+        for (int k = 0; k < WORDS; k++) w[k] &= v[k];
+        return w;
+    }
+
+    private static Object andNotContainers(Object x, int cx, Object y, int cy) {
+        if (x instanceof char[] xs) {
+            if (y instanceof long[] v) return filter(xs, cx, v, false);
+            char[] ys = (char[]) y;
+            char[] out = new char[cx];
+            int n = 0;
+            int j = 0;
+            for (int i = 0; i < cx; i++) {
+                while (j < cy && ys[j] < xs[i]) j++;
+                if (j < cy && ys[j] == xs[i]) continue;
+                out[n++] = xs[i];
+            }
+            return Arrays.copyOf(out, n);
+        }
+        long[] w = ((long[]) x).clone();
+        if (y instanceof char[] ys) {
+            for (int j = 0; j < cy; j++) w[ys[j] >>> 6] &= ~(1L << ys[j]);
+        } else {
+            long[] v = (long[]) y;
+            for (int k = 0; k < WORDS; k++) w[k] &= ~v[k];
+        }
+        return w;
+    }
+
+    private static Object orContainers(Object x, int cx, Object y, int cy) {
+        if (x instanceof char[] xs && y instanceof char[] ys) {
+            char[] out = new char[cx + cy];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cx || j < cy) {
+                if (j >= cy || (i < cx && xs[i] < ys[j])) out[n++] = xs[i++];
+                else if (i >= cx || ys[j] < xs[i]) out[n++] = ys[j++];
+                else {
+                    out[n++] = xs[i++];
+                    j++;
+                }
+            }
+            return n <= ARRAY_MAX ? Arrays.copyOf(out, n) : toWords(out, n);
+        }
+        long[] w = x instanceof long[] xw ? xw.clone() : toWords((char[]) x, cx);
+        if (y instanceof char[] ys) {
+            for (int j = 0; j < cy; j++) w[ys[j] >>> 6] |= 1L << ys[j];
+        } else {
+            long[] v = (long[]) y;
+            for (int k = 0; k < WORDS; k++) w[k] |= v[k];
+        }
+        return w;
+    }
+
+    //ritka tároló szűrése bitmap alapján (keep: benne lévők vagy a hiányzók maradnak)
+    private static char[] filter(char[] values, int card, long[] words, boolean keep) {
+        char[] out = new char[card];
+        int n = 0;
+        for (int i = 0; i < card; i++) {
+            char v = values[i];
+            boolean in = (words[v >>> 6] & (1L << v)) != 0;
+            if (in == keep) out[n++] = v;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static Object copyContainer(Object c, int card) {
+        return c instanceof long[] w ? w.clone() : Arrays.copyOf((char[]) c, card);
+    }
+
+    //művelet eredményének hozzáfűzése (kulcsok növekvő sorrendben érkeznek), tömörítéssel
+    private void append(char key, Object c) {
+        int card;
+        if (c instanceof char[] values) {
+            card = values.length;
+        } else {
+            long[] words = (long[]) c;
+            card = 0;
+            for (long w : words) card += Long.bitCount(w);
+            if (card <= ARRAY_MAX) c = toValues(words, card);
+        }
+        if (card == 0) return;
+        insertContainer(size, key, c, card);
+    }
+
+    private static long[] toWords(char[] values, int card) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < card; i++) {
+            char v = values[i];
+            words[v >>> 6] |= 1L << v;
+        }
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int card) {
+        char[] values = new char[card];
+        int n = 0;
+        for (int k = 0; k < WORDS; k++) {
+            long w = words[k];
+            while (w != 0) {
+                values[n++] = (char) ((k << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        return values;
+    }
+
+    private int findContainer(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int at, char key, Object container, int card) {
+        if (size == keys.length) {
+            int cap = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, cap);
+            containers = Arrays.copyOf(containers, cap);
+            cards = Arrays.copyOf(cards, cap);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        System.arraycopy(cards, at, cards, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        cards[at] = card;
+        size++;
+    }
+
+    private void removeContainer(int at) {
+        int tail = size - at - 1;
+        System.arraycopy(keys, at + 1, keys, at, tail);
+        System.arraycopy(containers, at + 1, containers, at, tail);
+        System.arraycopy(cards, at + 1, cards, at, tail);
+        size--;
+        containers[size] = null;
+    }
+}
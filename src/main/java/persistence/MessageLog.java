@@ -0,0 +1,124 @@
+package persistence;
+
+import model.Message;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Egy beszélgetés üzeneteinek megváltozhatatlan változata (pillanatkép).
+ * Hozzáfűzéskor új változat keletkezik, amely a régivel közös tömböt használ, ha a régi
+ * volt a legfrissebb: a már publikált változatok csak a saját hosszukig olvasnak, így
+ * az új elem írása nem látszik bennük. Olvasni zár nélkül, másolás nélkül lehet.
+ */
+public final class MessageLog extends AbstractList<Message> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Üres napló, minden beszélgetés ebből indul */
+    public static final MessageLog EMPTY = new MessageLog(new Backing(new Message[0]), 0);
+
+    private transient Backing backing;
+    private transient int length;
+
+    private MessageLog(Backing backing, int length) {
+        this.backing = backing;
+        this.length = length;
+    }
+
+    /**
+     * Napló létrehozása meglévő üzenetekből (pl. régi mentés listájából).
+     * @param messages üzenetek sorrendben
+     * @return új napló
+     */
+    public static MessageLog of(Collection<Message> messages) {
+        if (messages instanceof MessageLog log) return log;
+        Message[] items = messages.toArray(new Message[0]);
+        return items.length == 0 ? EMPTY : new MessageLog(new Backing(items), items.length);
+    }
+
+    /**
+     * Új változat az üzenettel bővítve. A hívónak sorosítania kell az azonos
+     * beszélgetésre vonatkozó írásokat (DataStore sávzár).
+     * @param m új üzenet
+     * @return új napló
+     */
+    MessageLog append(Message m) {
+        Backing b = backing;
+        //csak a legfrissebb változat bővítheti helyben a közös tömböt
+        if (b.used == length && length < b.items.length) {
+            b.items[length] = m;
+            b.used = length + 1;
+            return new MessageLog(b, length + 1);
+        }
+        Message[] items = Arrays.copyOf(b.items, Math.max(8, length + (length >> 1) + 1));
+        items[length] = m;
+        Backing grown = new Backing(items);
+        grown.used = length + 1;
+        return new MessageLog(grown, length + 1);
+    }
+
+    /**
+     * Új változat a feltételnek megfelelő üzenetek nélkül.
+     * @param filter törlendő üzenetek feltétele
+     * @return új napló, vagy ez a példány, ha nincs törlendő
+     */
+    MessageLog without(Predicate<Message> filter) {
+        Message[] kept = new Message[length];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            Message m = backing.items[i];
+            if (!filter.test(m)) kept[n++] = m;
+        }
+        if (n == length) return this;
+        return n == 0 ? EMPTY : new MessageLog(new Backing(Arrays.copyOf(kept, n)), n);
+    }
+
+    @Override
+    public Message get(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        return backing.items[index];
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    //csak a saját hosszig mentünk, a közös tömb többi része nem tartozik ehhez a változathoz
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) out.writeObject(backing.items[i]);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        if (n < 0) throw new InvalidObjectException("Negatív hossz: " + n);
+        Message[] items = new Message[n];
+        for (int i = 0; i < n; i++) items[i] = (Message) in.readObject();
+        backing = new Backing(items);
+        backing.used = n;
+        length = n;
+    }
+
+    /** Változatok közös tömbje; used: a legfrissebb változat hossza (csak író olvassa) */
+    private static final class Backing {
+        final Message[] items;
+        int used;
+
+        Backing(Message[] items) {
+            this.items = items;
+            this.used = items.length;
+        }
+    }
+}
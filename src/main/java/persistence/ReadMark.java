@@ -0,0 +1,22 @@
+package persistence;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Olvasottsági jel: az utoljára látott üzenet azonosítója és időbélyege.
+ * A sorszám csak kiindulási pont a kereséshez, mert törlés után balra tolódhat.
+ * @param messageId az utoljára látott üzenet UUID
+ * @param seq az üzenet sorszáma a jelöléskor
+ * @param at az üzenet időbélyege
+ */
+record ReadMark(UUID messageId, int seq, Instant at) implements Serializable {
+
+    //előrébb tart-e a másik jelnél
+    boolean isAfter(ReadMark other) {
+        if (other == null) return true;
+        int c = at.compareTo(other.at);
+        return c > 0 || c == 0 && seq > other.seq;
+    }
+}
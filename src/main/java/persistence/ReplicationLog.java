@@ -0,0 +1,214 @@
+package persistence;
+
+import model.Message;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Az író adattár módosítási naplója a replikák számára, korlátos memóriában.
+ * Az üzenet műveletek egyenként, sorszámmal kerülnek bele; a táblák (felhasználók, barátok,
+ * csoportok) változásáról csak jelzés kerül be, a replika ilyenkor a táblák aktuális
+ * állapotát kapja meg. A napló a legutóbbi {@code capacity} bejegyzést tartja meg; ennél
+ * jobban lemaradt replika pillanatképből indul újra.
+ */
+public final class ReplicationLog {
+
+    /** Alapértelmezett megtartott bejegyzésszám */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<Mutation> ring;
+    /** Rekeszenként a benne levő bejegyzés sorszáma (-1: üres vagy írás alatt) */
+    private final AtomicLongArray slotSeq;
+    private final int mask;
+
+    /** Következő kiosztandó sorszám */
+    private final AtomicLong next = new AtomicLong();
+
+    /** Az első még nem publikált sorszám: alatta minden bejegyzés olvasható */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Érvénytelenítés után az ennél régebbi bejegyzések nem olvashatók */
+    private volatile long floor;
+
+    /**
+     * Az írók közösen, a pillanatkép kizárólagosan fogja: az írók egymást nem várják,
+     * de pillanatkép alatt nincs félig naplózott módosítás.
+     */
+    private final ReentrantReadWriteLock captureLock = new ReentrantReadWriteLock();
+
+    /** A {@link #await} várakozók száma; nélkülük az író nem nyúl a monitorhoz */
+    private volatile int waiters;
+
+    /**
+     * @param capacity megtartott bejegyzések száma (felfelé kettő hatványára kerekítve)
+     */
+    public ReplicationLog(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("Túl kicsi kapacitás: " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.slotSeq = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) slotSeq.set(i, -1);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Módosítás alkalmazása és naplózása. Globális zár nélkül: a sorszám atomi számlálóból
+     * jön, a különböző beszélgetések írói párhuzamosan haladnak; egy beszélgetésen belül a
+     * hívó sávzárja adja a sorrendet. A pillanatkép ({@link #capture}) ettől még mindig
+     * pontosan egy napló pozícióhoz tartozó állapotot lát.
+     * @param m a bejegyzés
+     * @param apply az adattáron végzett módosítás
+     */
+    void append(Mutation m, Runnable apply) {
+        captureLock.readLock().lock();
+        try {
+            apply.run();
+            long seq = next.getAndIncrement();
+            //a rekesz előző lakóját nem írhatjuk felül, amíg az nem publikált (csak kóros lemaradásnál vár)
+            while (seq - head.get() >= ring.length()) Thread.onSpinWait();
+            int slot = (int) (seq & mask);
+            slotSeq.set(slot, -1);
+            ring.set(slot, m);
+            slotSeq.set(slot, seq);
+            advanceHead();
+        } finally {
+            captureLock.readLock().unlock();
+        }
+    }
+
+    //a fej előreléptetése a folytonosan publikált bejegyzéseken; bármelyik író elvégezheti
+    private void advanceHead() {
+        boolean moved = false;
+        long h;
+        while (slotSeq.get((int) ((h = head.get()) & mask)) == h) {
+            if (head.compareAndSet(h, h + 1)) moved = true;
+        }
+        if (moved && waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Művelet futtatása úgy, hogy közben nem kerül új bejegyzés a naplóba.
+     * @param op a futtatandó művelet (pl. üzenet map-ek másolása)
+     * @param <T> eredmény típusa
+     * @return a napló pozíciója és a művelet eredménye
+     */
+    <T> Positioned<T> capture(Supplier<T> op) {
+        captureLock.writeLock().lock();
+        try {
+            //minden folyamatban levő író végzett, így a fej pontos
+            return new Positioned<>(head.get(), op.get());
+        } finally {
+            captureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A következő kiosztandó sorszám.
+     * @return napló vége
+     */
+    public long head() {
+        return head.get();
+    }
+
+    /**
+     * Bejegyzések olvasása a megadott sorszámtól.
+     * @param from első kért sorszám
+     * @param max legfeljebb ennyi bejegyzés
+     * @param out ide kerülnek a bejegyzések
+     * @return false ha a kért pozíció már nincs meg (pillanatkép kell)
+     */
+    public boolean read(long from, int max, List<Mutation> out) {
+        long h = head.get();
+        if (from < oldest(h) || from > h) return false;
+        long end = Math.min(h, from + max);
+        for (long p = from; p < end; p++) {
+            int slot = (int) (p & mask);
+            Mutation m = ring.get(slot);
+            //közben felülírt rekesz: a replika túl messze van
+            if (slotSeq.get(slot) != p) return false;
+            out.add(m);
+        }
+        return true;
+    }
+
+    private long oldest(long h) {
+        return Math.max(floor, h - ring.length());
+    }
+
+    /**
+     * Várakozás, amíg a napló túl nem halad a megadott pozíción.
+     * @param from várt pozíció
+     * @param timeoutMillis legfeljebb ennyi ideig
+     * @return a napló vége
+     * @throws InterruptedException ha a várakozó szálat megszakítják
+     */
+    public synchronized long await(long from, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long left = timeoutMillis;
+        waiters++;
+        try {
+            while (head.get() <= from && left > 0) {
+                wait(left);
+                left = deadline - System.currentTimeMillis();
+            }
+        } finally {
+            waiters--;
+        }
+        return head.get();
+    }
+
+    /**
+     * A napló érvénytelenítése (pl. az adattár fájlból újratöltődött): minden replika pillanatképből indul.
+     */
+    public synchronized void invalidate() {
+        floor = head.get();
+        notifyAll();
+    }
+
+    /**
+     * Érték a napló pozíciójával együtt.
+     * @param position napló pozíció (az értékben az ennél kisebb bejegyzések mind benne vannak)
+     * @param value érték
+     * @param <T> érték típusa
+     */
+    public record Positioned<T>(long position, T value) { }
+
+    /** Egy naplóbejegyzés */
+    public sealed interface Mutation extends Serializable
+            permits GroupMessage, PrivateMessage, GroupMessageDeleted, TablesChanged { }
+
+    /**
+     * Csoport üzenet hozzáfűzése.
+     * @param groupId csoport UUID
+     * @param message az üzenet (azonosítóval és időbélyeggel együtt)
+     */
+    public record GroupMessage(UUID groupId, Message message) implements Mutation { }
+
+    /**
+     * Privát üzenet hozzáfűzése.
+     * @param key beszélgetés kulcs
+     * @param message az üzenet
+     */
+    public record PrivateMessage(String key, Message message) implements Mutation { }
+
+    /**
+     * Csoport üzenet törlése.
+     * @param groupId csoport UUID
+     * @param messageId üzenet UUID
+     */
+    public record GroupMessageDeleted(UUID groupId, UUID messageId) implements Mutation { }
+
+    /** A táblák változtak, a replikának az aktuális táblák kellenek */
+    public record TablesChanged() implements Mutation { }
+}
@@ -0,0 +1,297 @@
+package persistence;
+
+import model.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shardolt tároló: a táblák (felhasználók, barátok, csoportok) egy kis meta fájlba kerülnek,
+ * az üzenetek beszélgetés kulcs hash szerint N független shard fájlba.
+ * Mentéskor csak a változott shardok íródnak újra (a beszélgetések megváltozhatatlan
+ * változatait azonosság szerint hasonlítjuk az utoljára mentettekkel), párhuzamosan,
+ * shardonként külön íróval; a végén a manifest jelzi a befejezett mentést.
+ * Egy sérült shard betöltéskor kimarad, a többi beszélgetés ettől érintetlen; a fájlja
+ * ".corrupt" végződéssel félrekerül a kézi helyreállításhoz, a mentés pedig a shardot
+ * a memóriában lévő beszélgetésekkel újra írja.
+ */
+public class ShardedStorage implements Storage {
+
+    private static final String META = "meta.dat";
+    private static final String MANIFEST = "manifest.dat";
+
+    private final File base;
+    private final File dir;
+    private final int shardCount;
+    private final Object[] shardLocks;
+    private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Az utoljára mentett (vagy betöltött) adattár; másik példánynál minden piszkos */
+    private DataStore savedStore;
+    private long savedTableVersion = -1;
+
+    /** Shardonként az utoljára mentett beszélgetés változatok */
+    private final List<Map<Object, List<Message>>> savedLogs = new ArrayList<>();
+
+    private final AtomicLong shardWrites = new AtomicLong();
+
+    /**
+     * @param base az alap adatfájl; a shardok a mellette lévő ".shards" könyvtárba kerülnek
+     * @param shardCount shardok száma
+     */
+    public ShardedStorage(File base, int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("Legalább egy shard kell");
+        this.base = base;
+        this.dir = new File(base.getAbsoluteFile().getParentFile(), base.getName() + ".shards");
+        this.shardCount = shardCount;
+        this.shardLocks = new Object[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardLocks[i] = new Object();
+            savedLogs.add(null);
+        }
+    }
+
+    /**
+     * Melyik shardba tartozik egy beszélgetés.
+     * @param conversationKey csoport UUID vagy privát beszélgetés kulcs
+     * @param shards shardok száma
+     * @return shard sorszám
+     */
+    public static int shardOf(Object conversationKey, int shards) {
+        int h = conversationKey.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    /**
+     * Eddig kiírt shard fájlok száma (a piszkos követés ellenőrzéséhez).
+     * @return shard írások száma
+     */
+    public long getShardWrites() {
+        return shardWrites.get();
+    }
+
+    /**
+     * Egy shard fájlja.
+     * @param shard shard sorszám
+     * @return fájl
+     */
+    public File shardFile(int shard) {
+        return new File(dir, String.format("shard-%03d.dat", shard));
+    }
+
+    @Override
+    public synchronized DataStore load() {
+        File manifestFile = new File(dir, MANIFEST);
+        if (!manifestFile.exists()) {
+            //régi, egyfájlos mentés: az első mentés már shardolva írja
+            DataStore legacy = FileManager.load(base);
+            forgetSaved();
+            return legacy;
+        }
+        Manifest manifest;
+        DataStore store;
+        try {
+            manifest = (Manifest) FileManager.read(manifestFile);
+            store = (DataStore) FileManager.read(new File(dir, META));
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            e.printStackTrace();
+            return null;
+        }
+        List<CompletableFuture<Shard>> pending = new ArrayList<>();
+        for (int i = 0; i < manifest.shards(); i++) {
+            File f = shardFile(i);
+            pending.add(CompletableFuture.supplyAsync(() -> readShard(f), writers));
+        }
+        boolean sameLayout = manifest.shards() == shardCount;
+        forgetSaved();
+        for (int i = 0; i < pending.size(); i++) {
+            Shard shard = pending.get(i).join();
+            if (shard == null) continue;
+            store.restoreMessages(shard.privateLogs, shard.groupLogs);
+            if (sameLayout) savedLogs.set(i, shard.keys());
+        }
+        savedStore = store;
+        savedTableVersion = store.getTableVersion();
+        return store;
+    }
+
+    //csak az érintett shardok olvasása; ismeretlen beszélgetésnél vagy eltérő felosztásnál teljes betöltés kell
+    @Override
+    public synchronized Map<Object, List<Message>> loadConversations(DataStore store, Set<UUID> conversations) {
+        Map<Integer, List<Object>> byShard = new HashMap<>();
+        for (UUID c : conversations) {
+            Object key = store.conversationKey(c);
+            if (key == null) return null;
+            byShard.computeIfAbsent(shardOf(key, shardCount), k -> new ArrayList<>()).add(key);
+        }
+        try {
+            Manifest manifest = (Manifest) FileManager.read(new File(dir, MANIFEST));
+            if (manifest.shards() != shardCount) return null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return null;
+        }
+        Map<Object, List<Message>> logs = new HashMap<>();
+        for (Map.Entry<Integer, List<Object>> e : byShard.entrySet()) {
+            Shard shard = readShard(shardFile(e.getKey()));
+            if (shard == null) return null;
+            for (Object key : e.getValue()) {
+                List<Message> log = key instanceof UUID id ? shard.groupLogs.get(id) : shard.privateLogs.get(key);
+                if (log == null) return null;
+                logs.put(key, log);
+            }
+        }
+        return logs;
+    }
+
+    //sérült shard: csak ez marad ki, a fájl félrekerül, hogy a következő mentés ne írja felül
+    private static Shard readShard(File f) {
+        if (!f.exists()) return new Shard();
+        try {
+            return (Shard) FileManager.read(f);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            e.printStackTrace();
+            quarantine(f);
+            return null;
+        }
+    }
+
+    private static void quarantine(File f) {
+        File target = quarantineFile(f);
+        //korábbi, még rendezetlen példány mellé
+        if (target.exists()) target = new File(f.getPath() + "." + System.currentTimeMillis() + ".corrupt");
+        try {
+            Files.move(f.toPath(), target.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static File quarantineFile(File shard) {
+        return new File(shard.getPath() + ".corrupt");
+    }
+
+    /**
+     * Van-e félretett sérült fájlja a shardnak (kézi helyreállításra vár).
+     * @param shard shard sorszám
+     * @return true ha a ".corrupt" fájl létezik
+     */
+    public boolean isQuarantined(int shard) {
+        return quarantineFile(shardFile(shard)).exists();
+    }
+
+    @Override
+    public synchronized boolean save(DataStore store) {
+        dir.mkdirs();
+        boolean fresh = store != savedStore;
+        long tableVersion = store.getTableVersion();
+        List<Shard> current = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) current.add(new Shard());
+        store.forEachConversation((key, log) -> current.get(shardOf(key, shardCount)).put(key, log));
+
+        List<CompletableFuture<Boolean>> writes = new ArrayList<>();
+        if (fresh || tableVersion != savedTableVersion) {
+            DataStore tables = store.tablesSnapshot();
+            writes.add(CompletableFuture.supplyAsync(() -> FileManager.writeAtomically(tables, new File(dir, META)), writers));
+        }
+        List<Integer> written = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            Shard shard = current.get(i);
+            if (!fresh && shard.sameAs(savedLogs.get(i))) continue;
+            final int idx = i;
+            written.add(i);
+            writes.add(CompletableFuture.supplyAsync(() -> {
+                //shardonként egy író
+                synchronized (shardLocks[idx]) {
+                    shardWrites.incrementAndGet();
+                    return FileManager.writeAtomically(shard, shardFile(idx));
+                }
+            }, writers));
+        }
+        boolean ok = true;
+        for (CompletableFuture<Boolean> w : writes) ok &= w.join();
+        if (!ok) {
+            //ismeretlen, mi került ki: a következő mentés mindent újraír
+            forgetSaved();
+            return false;
+        }
+        for (int i : written) savedLogs.set(i, current.get(i).keys());
+        savedStore = store;
+        savedTableVersion = tableVersion;
+        //a manifest utoljára: jelzi a befejezett mentést, ennek az ideje a módosítási idő
+        if (!FileManager.writeAtomically(new Manifest(shardCount, store.getVersion()), new File(dir, MANIFEST))) return false;
+        for (int i = shardCount; shardFile(i).exists(); i++) shardFile(i).delete();
+        return true;
+    }
+
+    private void forgetSaved() {
+        savedStore = null;
+        savedTableVersion = -1;
+        for (int i = 0; i < shardCount; i++) savedLogs.set(i, null);
+    }
+
+    @Override
+    public boolean exists() {
+        return new File(dir, MANIFEST).exists() || base.exists();
+    }
+
+    @Override
+    public long lastModified() {
+        File manifest = new File(dir, MANIFEST);
+        return manifest.exists() ? manifest.lastModified() : base.lastModified();
+    }
+
+    @Override
+    public File location() {
+        return base;
+    }
+
+    /**
+     * A befejezett mentés jelzője.
+     * @param shards shardok száma
+     * @param version az adattár verziója mentéskor
+     */
+    record Manifest(int shards, long version) implements Serializable { }
+
+    /** Egy shard tartalma: beszélgetésenként a megváltozhatatlan üzenet változat */
+    static final class Shard implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final HashMap<String, List<Message>> privateLogs = new HashMap<>();
+        final HashMap<UUID, List<Message>> groupLogs = new HashMap<>();
+
+        void put(Object key, List<Message> log) {
+            if (key instanceof UUID id) groupLogs.put(id, log);
+            else privateLogs.put((String) key, log);
+        }
+
+        //azonosság szerinti összevetés: változatlan beszélgetésnek ugyanaz a változata
+        boolean sameAs(Map<Object, List<Message>> saved) {
+            if (saved == null || saved.size() != privateLogs.size() + groupLogs.size()) return false;
+            for (Map.Entry<String, List<Message>> e : privateLogs.entrySet()) {
+                if (saved.get(e.getKey()) != e.getValue()) return false;
+            }
+            for (Map.Entry<UUID, List<Message>> e : groupLogs.entrySet()) {
+                if (saved.get(e.getKey()) != e.getValue()) return false;
+            }
+            return true;
+        }
+
+        Map<Object, List<Message>> keys() {
+            Map<Object, List<Message>> m = new HashMap<>(privateLogs);
+            m.putAll(groupLogs);
+            return m;
+        }
+    }
+}
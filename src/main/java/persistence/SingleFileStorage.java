@@ -0,0 +1,43 @@
+package persistence;
+
+import java.io.File;
+
+/**
+ * Az egész adattár egyetlen fájlban (az eredeti formátum).
+ */
+public class SingleFileStorage implements Storage {
+
+    private final File file;
+
+    /**
+     * @param file adatfájl
+     */
+    public SingleFileStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public DataStore load() {
+        return FileManager.load(file);
+    }
+
+    @Override
+    public boolean save(DataStore store) {
+        return FileManager.save(store, file);
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    @Override
+    public long lastModified() {
+        return file.lastModified();
+    }
+
+    @Override
+    public File location() {
+        return file;
+    }
+}
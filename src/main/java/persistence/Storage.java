@@ -0,0 +1,71 @@
+package persistence;
+
+import model.Message;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Az adattár tartós tárolója: egyetlen fájl vagy beszélgetések szerint szétosztott shard fájlok.
+ */
+public interface Storage {
+
+    /**
+     * Rendszertulajdonság: a shardok száma; 0 vagy hiányzó esetén egyetlen fájl.
+     */
+    String SHARDS_PROPERTY = "offlinechat.storage.shards";
+
+    /**
+     * Adattár betöltése.
+     * @return betöltött adattár, vagy null ha nincs mentés (vagy olvashatatlan)
+     */
+    DataStore load();
+
+    /**
+     * Adattár mentése.
+     * @param store mentendő adattár
+     * @return true ha sikeres
+     */
+    boolean save(DataStore store);
+
+    /**
+     * Csak a megadott beszélgetések naplóinak beolvasása a mentésből (részleges újratöltés).
+     * @param store az aktuális adattár, a beszélgetés kulcsok feloldásához
+     * @param conversations csoport UUID-k vagy privát beszélgetés azonosítók
+     * @return beszélgetés kulcs → napló, vagy null ha ez nem lehetséges és teljes betöltés kell
+     */
+    default Map<Object, List<Message>> loadConversations(DataStore store, Set<UUID> conversations) {
+        return null;
+    }
+
+    /**
+     * Van-e már mentés.
+     * @return true ha létezik
+     */
+    boolean exists();
+
+    /**
+     * Az utolsó befejezett mentés ideje (újratöltés észleléséhez).
+     * @return módosítási idő ezredmásodpercben, 0 ha nincs mentés
+     */
+    long lastModified();
+
+    /**
+     * A tároló alapfájlja; a kiegészítő fájlok (pl. értesítő) ennek a nevéből képződnek.
+     * @return alapfájl
+     */
+    File location();
+
+    /**
+     * Tároló megnyitása a megadott módban.
+     * @param dataFile alapfájl
+     * @param shards shardok száma, 0: egyetlen fájl
+     * @return tároló
+     */
+    static Storage open(File dataFile, int shards) {
+        return shards > 0 ? new ShardedStorage(dataFile, shards) : new SingleFileStorage(dataFile);
+    }
+}
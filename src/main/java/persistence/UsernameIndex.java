@@ -0,0 +1,116 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Rendezett felhasználónév index kis-nagybetű független prefix és részszöveg kereséshez.
+ * A prefix találatok rendezett tartományként érhetők el (O(log n + k)).
+ * Részszövegre n-gram listákból keres (a nevek legfeljebb 3 hosszú részszövegei → nevek):
+ * legfeljebb 3 karakteres keresésnél a lista maga a találat, hosszabbnál a legritkább
+ * n-gram jelöltjeit ellenőrzi, így nem pásztázza végig az összes nevet.
+ */
+public class UsernameIndex {
+
+    /** Kulcs: kisbetűs alak + elválasztó + eredeti név (így a kisbetűs prefix tartomány pontos) */
+    private static final char SEPARATOR = '\u0000';
+
+    /** Az indexelt részszövegek legnagyobb hossza */
+    private static final int GRAM = 3;
+
+    private final NavigableMap<String, String> names = new ConcurrentSkipListMap<>();
+
+    /** n-gram → az azt tartalmazó nevek kulcsai, rendezve */
+    private final Map<String, Postings> grams = new ConcurrentHashMap<>();
+
+    /**
+     * Felhasználónév felvétele az indexbe.
+     * @param username felhasználónév
+     */
+    public void add(String username) {
+        String lower = normalize(username);
+        String key = lower + SEPARATOR + username;
+        if (names.put(key, username) != null) return;
+        for (int i = 0; i < lower.length(); i++) {
+            for (int n = 1; n <= GRAM && i + n <= lower.length(); n++) {
+                grams.computeIfAbsent(lower.substring(i, i + n), g -> new Postings()).add(key);
+            }
+        }
+    }
+
+    /**
+     * Az indexben lévő nevek száma.
+     * @return nevek száma
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Keresés: először a prefixre illeszkedő nevek, majd a részszövegként tartalmazók, legfeljebb limit darab.
+     * @param query keresett szöveg (üres: az első limit név)
+     * @param limit maximális találatszám
+     * @param exclude kihagyandó nevek feltétele (null: nincs szűrés)
+     * @return találatok rendezett sorrendben
+     */
+    public List<String> search(String query, int limit, Predicate<String> exclude) {
+        List<String> result = new ArrayList<>(Math.min(limit, 64));
+        if (limit <= 0) return result;
+        String q = query == null ? "" : normalize(query.trim());
+
+        //prefix tartomány: [q, q + U+FFFF)
+        Map<String, String> prefixed = q.isEmpty() ? names : names.subMap(q, true, q + Character.MAX_VALUE, false);
+        for (String name : prefixed.values()) {
+            if (exclude != null && exclude.test(name)) continue;
+            result.add(name);
+            if (result.size() >= limit) return result;
+        }
+        if (q.isEmpty()) return result;
+
+        //részszöveg találatok a keresés legritkább n-gramjának jelöltjeiből
+        int n = Math.min(GRAM, q.length());
+        Postings rarest = null;
+        for (int i = 0; i + n <= q.length(); i++) {
+            Postings p = grams.get(q.substring(i, i + n));
+            if (p == null) return result;
+            if (rarest == null || p.size.get() < rarest.size.get()) rarest = p;
+        }
+        for (String key : rarest.keys) {
+            //a prefixesek már szerepelnek
+            if (key.startsWith(q)) continue;
+            if (q.length() > GRAM) {
+                int at = key.indexOf(q, 1);
+                //csak a kisbetűs névrészben számít találatnak
+                if (at < 0 || at + q.length() > key.indexOf(SEPARATOR)) continue;
+            }
+            String name = names.get(key);
+            if (exclude != null && exclude.test(name)) continue;
+            result.add(name);
+            if (result.size() >= limit) break;
+        }
+        return result;
+    }
+
+    //egy n-gram rendezett kulcslistája, a mérettel (a halmaz size() hívása lineáris)
+    private static final class Postings {
+        final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        void add(String key) {
+            if (keys.add(key)) size.incrementAndGet();
+        }
+    }
+
+    private static String normalize(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,192 @@
+package server;
+
+import controller.SendResult;
+import server.Protocol.FrameReader;
+import server.Protocol.FrameWriter;
+import server.Protocol.ProtocolException;
+import server.Protocol.RemoteMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Egyszerű, blokkoló kliens a {@link ChatServer}-hez.
+ * Egy kérés - egy válasz; a metódusok szinkronizáltak, így egy példány szálak között is megosztható.
+ */
+public class ChatClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer lengthBuf = ByteBuffer.allocate(Integer.BYTES);
+    private int nextId;
+
+    /**
+     * Kapcsolódás a szerverhez.
+     * @param host gép neve
+     * @param port port
+     * @throws IOException ha a kapcsolat nem jön létre
+     */
+    public ChatClient(String host, int port) throws IOException {
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        this.channel.socket().setTcpNoDelay(true);
+    }
+
+    /**
+     * Bejelentkezés.
+     * @param username felhasználónév
+     * @param password jelszó
+     * @return munkamenet token, vagy null ha sikertelen
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized String login(String username, String password) throws IOException {
+        FrameReader r = call(request(Protocol.LOGIN).putString(username).putString(password));
+        return r.op() == Protocol.OK ? string(r) : null;
+    }
+
+    /**
+     * Munkamenet folytatása tokennel (újracsatlakozáskor, jelszó nélkül).
+     * @param token korábbi token
+     * @return felhasználónév, vagy null ha a token érvénytelen
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized String resume(String token) throws IOException {
+        FrameReader r = call(request(Protocol.RESUME).putString(token));
+        return r.op() == Protocol.OK ? string(r) : null;
+    }
+
+    /**
+     * Kijelentkezés (a kapcsolat nyitva marad).
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized void logout() throws IOException {
+        call(request(Protocol.LOGOUT));
+    }
+
+    /**
+     * Kapcsolat ellenőrzése.
+     * @return true ha a szerver válaszolt
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized boolean ping() throws IOException {
+        return call(request(Protocol.PING)).op() == Protocol.OK;
+    }
+
+    /**
+     * Csoport üzenet küldése.
+     * @param groupId csoport UUID
+     * @param content tartalom
+     * @return küldés eredménye
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized SendResult sendGroupMessage(UUID groupId, String content) throws IOException {
+        return sendResult(call(request(Protocol.SEND_GROUP).putUuid(groupId).putString(content)));
+    }
+
+    /**
+     * Privát üzenet küldése.
+     * @param to címzett
+     * @param content tartalom
+     * @return küldés eredménye
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized SendResult sendPrivateMessage(String to, String content) throws IOException {
+        return sendResult(call(request(Protocol.SEND_PRIVATE).putString(to).putString(content)));
+    }
+
+    /**
+     * Csoport üzenetei a megadott indextől (legfeljebb egy oldal).
+     * @param groupId csoport UUID
+     * @param from kezdő index
+     * @return üzenetek, vagy null ha nincs jogosultság
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized List<RemoteMessage> fetchGroupMessages(UUID groupId, int from) throws IOException {
+        return messages(call(request(Protocol.FETCH_GROUP).putUuid(groupId).putInt(from)));
+    }
+
+    /**
+     * Privát üzenetek a megadott indextől (legfeljebb egy oldal).
+     * @param other partner felhasználóneve
+     * @param from kezdő index
+     * @return üzenetek, vagy null ha nincs bejelentkezve
+     * @throws IOException kapcsolati hiba esetén
+     */
+    public synchronized List<RemoteMessage> fetchPrivateMessages(String other, int from) throws IOException {
+        return messages(call(request(Protocol.FETCH_PRIVATE).putString(other).putInt(from)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private FrameWriter request(byte op) {
+        return new FrameWriter(++nextId, op);
+    }
+
+    private FrameReader call(FrameWriter request) throws IOException {
+        ByteBuffer buf = request.toBuffer();
+        while (buf.hasRemaining()) channel.write(buf);
+        lengthBuf.clear();
+        readFully(lengthBuf);
+        int length = lengthBuf.flip().getInt();
+        if (length < Protocol.HEADER || length > Protocol.MAX_FRAME) throw new IOException("Hibás kerethossz: " + length);
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        readFully(frame);
+        try {
+            FrameReader r = new FrameReader(frame.flip());
+            if (r.requestId() != nextId) throw new IOException("Váratlan válasz: " + r.requestId());
+            return r;
+        } catch (ProtocolException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void readFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) throw new IOException("A szerver bontotta a kapcsolatot");
+        }
+    }
+
+    private static String string(FrameReader r) throws IOException {
+        try {
+            return r.getString();
+        } catch (ProtocolException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static SendResult sendResult(FrameReader r) throws IOException {
+        if (r.op() != Protocol.SEND_RESULT) return SendResult.FAILED;
+        try {
+            int ordinal = r.getByte();
+            SendResult[] values = SendResult.values();
+            return ordinal >= 0 && ordinal < values.length ? values[ordinal] : SendResult.FAILED;
+        } catch (ProtocolException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static List<RemoteMessage> messages(FrameReader r) throws IOException {
+        if (r.op() != Protocol.MESSAGES) return null;
+        try {
+            int n = r.getInt();
+            List<RemoteMessage> result = new ArrayList<>(Math.max(0, n));
+            for (int i = 0; i < n; i++) {
+                UUID id = r.getUuid();
+                String sender = r.getString();
+                Instant at = Instant.ofEpochMilli(r.getLong());
+                result.add(new RemoteMessage(id, sender, at, r.getString()));
+            }
+            return result;
+        } catch (ProtocolException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package server;
+
+import controller.AppController;
+import controller.SendResult;
+import model.Message;
+import model.User;
+import persistence.DataStore;
+import server.Protocol.FrameReader;
+import server.Protocol.FrameWriter;
+import server.Protocol.ProtocolException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fej nélküli csevegő szerver: egyetlen szál, egyetlen Selector szolgálja ki az összes kapcsolatot.
+ * A szerver birtokolja az egyetlen AppController példányt, így a kliensek a fájl helyett
+ * TCP-n, a {@link Protocol} kereteivel érik el az adattárat. A lassú műveletek (bcrypt,
+ * mentés) a controller jövőin futnak, az eseményhurok sosem vár rájuk: a kész válasz a
+ * kapcsolat kimenő sorába kerül, és a hurok a következő körben kiírja.
+ */
+public class ChatServer implements Closeable {
+
+    /** Ekkora fel nem küldött válasz felett a kapcsolatról nem olvasunk tovább (visszanyomás) */
+    static final int OUTBOUND_HIGH_WATER = 4 << 20;
+
+    private final AppController controller;
+    private final InetSocketAddress bindAddress;
+
+    private Selector selector;
+    private ServerSocketChannel acceptor;
+    private Thread loop;
+
+    /** Kapcsolatok, amelyeknek új kimenő válasza van; a hurok dolgozza fel */
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean running;
+
+    /**
+     * Szerver létrehozása (még nem figyel).
+     * @param controller az adattárat birtokló controller
+     * @param bindAddress cím; 0-s port esetén szabad portot kap
+     */
+    public ChatServer(AppController controller, InetSocketAddress bindAddress) {
+        this.controller = controller;
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * Figyelés indítása saját eseményhurok szálon.
+     * @throws IOException ha a port nem nyitható meg
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(bindAddress);
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        loop = new Thread(this::run, "chat-server");
+        loop.start();
+    }
+
+    /**
+     * A ténylegesen használt port.
+     * @return port, vagy -1 ha nem fut
+     */
+    public int getPort() {
+        ServerSocketChannel a = acceptor;
+        return a == null ? -1 : a.socket().getLocalPort();
+    }
+
+    /**
+     * Nyitott kapcsolatok száma.
+     * @return kapcsolatok száma
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Eddig feldolgozott kérések száma.
+     * @return kérések száma
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Leállítás: a hurok kilép, minden kapcsolat lezárul.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Várakozás a hurok leállására (a szerver fő szála ezzel blokkol).
+     * @throws InterruptedException ha a várakozó szálat megszakítják
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread t = loop;
+        if (t != null) t.join();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Connection c;
+                while ((c = ready.poll()) != null) c.updateInterest();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection conn = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) conn.read();
+                        if (key.isValid() && key.isWritable()) conn.write();
+                    } catch (IOException | ProtocolException e) {
+                        //kliens hiba: csak ezt a kapcsolatot zárjuk
+                        conn.close();
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Szerver hurok hiba: " + e.getMessage());
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = acceptor.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Connection conn = new Connection(ch);
+            conn.key = ch.register(selector, SelectionKey.OP_READ, conn);
+            connections.incrementAndGet();
+        }
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection conn) conn.close();
+        }
+        try {
+            acceptor.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Szerver leállítási hiba: " + e.getMessage());
+        }
+    }
+
+    //kérés feldolgozása; a választ azonnal vagy a jövő teljesülésekor küldjük
+    private void dispatch(Connection conn, FrameReader in) throws ProtocolException {
+        requests.incrementAndGet();
+        int id = in.requestId();
+        switch (in.op()) {
+            case Protocol.LOGIN -> {
+                String username = in.getString();
+                String password = in.getString();
+                conn.reply(controller.loginAsync(username, password).handle((token, err) -> {
+                    if (err != null) return error(id, "A szerver túlterhelt, próbáld újra");
+                    if (token == null) return error(id, "Hibás felhasználónév vagy jelszó");
+                    conn.login(username, token);
+                    return ok(id, token);
+                }));
+            }
+            case Protocol.RESUME -> {
+                String token = in.getString();
+                String username = controller.resumeSession(token);
+                if (username == null) {
+                    conn.send(error(id, "Lejárt vagy ismeretlen munkamenet"));
+                } else {
+                    conn.login(username, token);
+                    conn.send(ok(id, username));
+                }
+            }
+            case Protocol.LOGOUT -> {
+                conn.logout();
+                conn.send(ok(id, null));
+            }
+            case Protocol.PING -> conn.send(ok(id, null));
+            case Protocol.SEND_GROUP -> {
+                UUID groupId = in.getUuid();
+                String content = in.getString();
+                String user = conn.username;
+                conn.reply(user == null ? CompletableFuture.completedFuture(sendResult(id, SendResult.FORBIDDEN))
+                        : controller.sendGroupMessageAsync(groupId, user, content).handle((r, err) -> sendResult(id, r, err)));
+            }
+            case Protocol.SEND_PRIVATE -> {
+                String to = in.getString();
+                String content = in.getString();
+                String user = conn.username;
+                conn.reply(user == null ? CompletableFuture.completedFuture(sendResult(id, SendResult.FORBIDDEN))
+                        : controller.sendPrivateMessageAsync(user, to, content).handle((r, err) -> sendResult(id, r, err)));
+            }
+            case Protocol.FETCH_GROUP -> {
+                UUID groupId = in.getUuid();
+                int from = in.getInt();
+                conn.send(fetchGroup(id, conn.username, groupId, from));
+            }
+            case Protocol.FETCH_PRIVATE -> {
+                String other = in.getString();
+                int from = in.getInt();
+                conn.send(fetchPrivate(id, conn.username, other, from));
+            }
+            default -> conn.send(error(id, "Ismeretlen művelet: " + in.op()));
+        }
+    }
+
+    //olvasás zár nélkül: az üzenetnaplók megváltozhatatlan pillanatképek
+    private ByteBuffer fetchGroup(int id, String username, UUID groupId, int from) {
+        if (username == null) return error(id, "Nincs bejelentkezve");
+        DataStore store = controller.getDataStore();
+        User user = store.getUserByName(username);
+        var group = store.getGroup(groupId);
+        if (user == null || group == null || !group.isMember(user.getId())) return error(id, "Nincs jogosultság");
+        return messages(id, store, store.getGroupMessages(groupId), from);
+    }
+
+    private ByteBuffer fetchPrivate(int id, String username, String other, int from) {
+        if (username == null) return error(id, "Nincs bejelentkezve");
+        DataStore store = controller.getDataStore();
+        return messages(id, store, store.getPrivateMessages(username, other), from);
+    }
+
+    private static ByteBuffer messages(int id, DataStore store, List<Message> log, int from) {
+        int start = Math.max(0, Math.min(from, log.size()));
+        int end = Math.min(log.size(), start + Protocol.MAX_PAGE);
+        FrameWriter w = new FrameWriter(id, Protocol.MESSAGES).putInt(end - start);
+        for (int i = start; i < end; i++) {
+            Message m = log.get(i);
+            w.putUuid(m.getId())
+                    .putString(store.getUsernameById(m.getSenderId()))
+                    .putLong(m.getTimestamp().toEpochMilli())
+                    .putString(m.getContent());
+            //a keret határát nem léphetjük túl, a kliens a következő oldalt kéri
+            if (w.size() > Protocol.MAX_FRAME / 2) {
+                ByteBuffer buf = w.toBuffer();
+                buf.putInt(Integer.BYTES + Protocol.HEADER, i - start + 1);
+                return buf;
+            }
+        }
+        return w.toBuffer();
+    }
+
+    private static ByteBuffer ok(int id, String value) {
+        return new FrameWriter(id, Protocol.OK).putString(value).toBuffer();
+    }
+
+    private static ByteBuffer error(int id, String message) {
+        return new FrameWriter(id, Protocol.ERROR).putString(message).toBuffer();
+    }
+
+    private static ByteBuffer sendResult(int id, SendResult r) {
+        return new FrameWriter(id, Protocol.SEND_RESULT).putByte((byte) r.ordinal()).toBuffer();
+    }
+
+    private static ByteBuffer sendResult(int id, SendResult r, Throwable err) {
+        if (err == null) return sendResult(id, r);
+        Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+        return error(id, "Küldési hiba: " + cause.getMessage());
+    }
+
+    /**
+     * Egy kliens kapcsolat állapota: részleges bemenet és kimenő sor.
+     * A bemenetet csak a hurok szál kezeli, a kimenő sort bármely szál bővítheti.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(8192);
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private final AtomicLong outBytes = new AtomicLong();
+        private volatile boolean closed;
+
+        /** A kapcsolaton bejelentkezett felhasználó (null: vendég) */
+        volatile String username;
+        private volatile String token;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void login(String username, String token) {
+            this.username = username;
+            this.token = token;
+        }
+
+        void logout() {
+            String t = token;
+            if (t != null) controller.logout(t);
+            username = null;
+            token = null;
+        }
+
+        //bemenet olvasása és a teljes keretek feldolgozása
+        void read() throws IOException, ProtocolException {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < Protocol.HEADER || length > Protocol.MAX_FRAME) throw new ProtocolException("Hibás kerethossz: " + length);
+                if (in.remaining() < Integer.BYTES + length) {
+                    //a puffer bővítése, ha a keret nem férne el
+                    if (in.capacity() < Integer.BYTES + length) {
+                        ByteBuffer grown = ByteBuffer.allocate(Integer.BYTES + length);
+                        grown.put(in);
+                        in = grown;
+                        return;
+                    }
+                    break;
+                }
+                in.position(in.position() + Integer.BYTES);
+                ByteBuffer frame = in.slice(in.position(), length);
+                in.position(in.position() + length);
+                dispatch(this, new FrameReader(frame));
+            }
+            in.compact();
+        }
+
+        //kimenő sor kiírása, amíg a csatorna fogad
+        void write() throws IOException {
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                int written = channel.write(head);
+                outBytes.addAndGet(-written);
+                if (head.hasRemaining()) break;
+                out.poll();
+            }
+            updateInterest();
+        }
+
+        //csak a hurok szálon: írási és olvasási érdeklődés a sor állapota szerint
+        void updateInterest() {
+            if (closed || !key.isValid()) return;
+            int ops = out.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+            if (outBytes.get() < OUTBOUND_HIGH_WATER) ops |= SelectionKey.OP_READ;
+            key.interestOps(ops);
+        }
+
+        void send(ByteBuffer frame) {
+            if (closed) return;
+            outBytes.addAndGet(frame.remaining());
+            out.add(frame);
+            if (Thread.currentThread() == loop) {
+                updateInterest();
+            } else {
+                ready.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void reply(CompletableFuture<ByteBuffer> response) {
+            response.thenAccept(this::send);
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            connections.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //már zárt
+            }
+        }
+    }
+}
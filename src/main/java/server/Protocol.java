@@ -0,0 +1,272 @@
+package server;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A szerver és a kliensek közötti keretezett bináris protokoll.
+ * Keret: hossz (int, a további bájtok száma) | kérés azonosító (int) | művelet (byte) | adat.
+ * A válasz a kérés azonosítóját hordozza, így a szerver sorrendtől függetlenül válaszolhat.
+ * Szöveg: hossz (int) + UTF-8 bájtok; UUID: két long; időpont: epoch ezredmásodperc (long).
+ */
+public final class Protocol {
+
+    /** Egy keret maximális hossza bájtban */
+    public static final int MAX_FRAME = 1 << 20;
+
+    /** Fejléc hossza a hossz mező után: kérés azonosító + művelet */
+    static final int HEADER = Integer.BYTES + 1;
+
+    /** Egy lekérdezés legfeljebb ennyi üzenetet ad vissza */
+    public static final int MAX_PAGE = 500;
+
+    //kérések
+    /** Bejelentkezés: felhasználónév, jelszó -> OK(token) */
+    public static final byte LOGIN = 1;
+    /** Munkamenet folytatása: token -> OK(felhasználónév) */
+    public static final byte RESUME = 2;
+    /** Kijelentkezés -> OK */
+    public static final byte LOGOUT = 3;
+    /** Csoport üzenet: csoport UUID, szöveg -> SEND_RESULT */
+    public static final byte SEND_GROUP = 4;
+    /** Privát üzenet: címzett, szöveg -> SEND_RESULT */
+    public static final byte SEND_PRIVATE = 5;
+    /** Csoport üzenetei: csoport UUID, kezdő index -> MESSAGES */
+    public static final byte FETCH_GROUP = 6;
+    /** Privát üzenetek: partner, kezdő index -> MESSAGES */
+    public static final byte FETCH_PRIVATE = 7;
+    /** Élő kapcsolat ellenőrzése -> OK */
+    public static final byte PING = 8;
+
+    //válaszok
+    /** Sikeres kérés, egy szöveg adattal */
+    public static final byte OK = 64;
+    /** Sikertelen kérés, hibaüzenettel */
+    public static final byte ERROR = 65;
+    /** Küldés eredménye: SendResult sorszáma (byte) */
+    public static final byte SEND_RESULT = 66;
+    /** Üzenetek: darabszám, majd üzenetenként azonosító, küldő, időpont, szöveg */
+    public static final byte MESSAGES = 67;
+
+    private Protocol() {
+    }
+
+    /**
+     * Egy üzenet a hálózaton átküldött formában.
+     * @param id üzenet UUID
+     * @param sender küldő felhasználóneve
+     * @param timestamp küldés ideje
+     * @param content tartalom
+     */
+    public record RemoteMessage(UUID id, String sender, Instant timestamp, String content) { }
+
+    /**
+     * Keret összeállító: a fejlécet előre lefoglalja, a hosszt a végén írja be.
+     */
+    public static final class FrameWriter {
+        private byte[] buf = new byte[64];
+        private int pos;
+
+        /**
+         * Új keret.
+         * @param requestId kérés azonosító
+         * @param op művelet kód
+         */
+        public FrameWriter(int requestId, byte op) {
+            pos = Integer.BYTES;
+            putInt(requestId);
+            ensure(1);
+            buf[pos++] = op;
+        }
+
+        /**
+         * Egész szám írása.
+         * @param v érték
+         * @return ez az író
+         */
+        public FrameWriter putInt(int v) {
+            ensure(Integer.BYTES);
+            ByteBuffer.wrap(buf, pos, Integer.BYTES).putInt(v);
+            pos += Integer.BYTES;
+            return this;
+        }
+
+        /**
+         * Hosszú egész írása.
+         * @param v érték
+         * @return ez az író
+         */
+        public FrameWriter putLong(long v) {
+            ensure(Long.BYTES);
+            ByteBuffer.wrap(buf, pos, Long.BYTES).putLong(v);
+            pos += Long.BYTES;
+            return this;
+        }
+
+        /**
+         * Bájt írása.
+         * @param v érték
+         * @return ez az író
+         */
+        public FrameWriter putByte(byte v) {
+            ensure(1);
+            buf[pos++] = v;
+            return this;
+        }
+
+        /**
+         * UUID írása.
+         * @param id azonosító
+         * @return ez az író
+         */
+        public FrameWriter putUuid(UUID id) {
+            return putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        }
+
+        /**
+         * Szöveg írása (null üres szövegként).
+         * @param s szöveg
+         * @return ez az író
+         */
+        public FrameWriter putString(String s) {
+            byte[] bytes = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+            return this;
+        }
+
+        /**
+         * Aktuális hossz a hossz mezővel együtt.
+         * @return bájtok száma
+         */
+        public int size() {
+            return pos;
+        }
+
+        /**
+         * A kész keret.
+         * @return puffer írásra előkészítve
+         * @throws IllegalStateException ha a keret túl nagy
+         */
+        public ByteBuffer toBuffer() {
+            int length = pos - Integer.BYTES;
+            if (length > MAX_FRAME) throw new IllegalStateException("Túl nagy keret: " + length);
+            ByteBuffer.wrap(buf, 0, Integer.BYTES).putInt(length);
+            return ByteBuffer.wrap(buf, 0, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+
+    /**
+     * Beérkezett keret olvasója.
+     */
+    public static final class FrameReader {
+        private final ByteBuffer data;
+        private final int requestId;
+        private final byte op;
+
+        /**
+         * @param frame a keret a hossz mező nélkül
+         * @throws ProtocolException ha a fejléc hiányos
+         */
+        FrameReader(ByteBuffer frame) throws ProtocolException {
+            if (frame.remaining() < HEADER) throw new ProtocolException("Hiányos fejléc");
+            this.data = frame;
+            this.requestId = frame.getInt();
+            this.op = frame.get();
+        }
+
+        /**
+         * @return kérés azonosító
+         */
+        public int requestId() {
+            return requestId;
+        }
+
+        /**
+         * @return művelet kód
+         */
+        public byte op() {
+            return op;
+        }
+
+        /**
+         * @return következő egész
+         * @throws ProtocolException ha elfogyott az adat
+         */
+        public int getInt() throws ProtocolException {
+            try {
+                return data.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new ProtocolException("Rövid keret");
+            }
+        }
+
+        /**
+         * @return következő hosszú egész
+         * @throws ProtocolException ha elfogyott az adat
+         */
+        public long getLong() throws ProtocolException {
+            try {
+                return data.getLong();
+            } catch (BufferUnderflowException e) {
+                throw new ProtocolException("Rövid keret");
+            }
+        }
+
+        /**
+         * @return következő bájt
+         * @throws ProtocolException ha elfogyott az adat
+         */
+        public byte getByte() throws ProtocolException {
+            try {
+                return data.get();
+            } catch (BufferUnderflowException e) {
+                throw new ProtocolException("Rövid keret");
+            }
+        }
+
+        /**
+         * @return következő UUID
+         * @throws ProtocolException ha elfogyott az adat
+         */
+        public UUID getUuid() throws ProtocolException {
+            return new UUID(getLong(), getLong());
+        }
+
+        /**
+         * @return következő szöveg
+         * @throws ProtocolException ha elfogyott az adat vagy hibás a hossz
+         */
+        public String getString() throws ProtocolException {
+            int n = getInt();
+            if (n < 0 || n > data.remaining()) throw new ProtocolException("Hibás szöveghossz: " + n);
+            String s = new String(data.array(), data.arrayOffset() + data.position(), n, StandardCharsets.UTF_8);
+            data.position(data.position() + n);
+            return s;
+        }
+    }
+
+    /**
+     * Hibás vagy értelmezhetetlen keret.
+     */
+    public static final class ProtocolException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param message hiba leírása
+         */
+        public ProtocolException(String message) {
+            super(message);
+        }
+    }
+}
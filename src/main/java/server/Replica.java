@@ -0,0 +1,220 @@
+package server;
+
+import persistence.DataStore;
+import persistence.ReplicationLog.Mutation;
+import server.ReplicationLeader.Batch;
+import server.ReplicationLeader.Frame;
+import server.ReplicationLeader.Snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+
+/**
+ * Csak olvasható replika: az író {@link ReplicationLeader} végpontjáról tölti a módosításokat
+ * a saját adattár másolatába. Előzmény böngészésre és keresésre szolgál; írni az írón kell.
+ * Kapcsolat vesztésekor újracsatlakozik, és az utolsó alkalmazott pozíciótól folytatja.
+ */
+public class Replica implements Closeable {
+
+    private static final long RETRY_MIN_MILLIS = 100;
+    private static final long RETRY_MAX_MILLIS = 5_000;
+
+    /**
+     * A kapcsolatról csak a replikációs keretek és az adattár osztályai olvashatók be;
+     * minden más osztály (pl. ismert deszerializációs láncok elemei) elutasítva.
+     */
+    private static final ObjectInputFilter FRAMES = ObjectInputFilter.Config.createFilter(
+            "server.ReplicationLeader$*;persistence.*;model.*;"
+            + "java.lang.*;java.time.*;java.util.*;java.util.concurrent.*;java.util.concurrent.atomic.*;java.util.concurrent.locks.*;!*");
+
+    private final InetSocketAddress leader;
+    private final byte[] secret;
+    private volatile DataStore store = new DataStore();
+    private volatile Socket socket;
+    private volatile boolean running;
+    private Thread worker;
+
+    /** Következő alkalmazandó napló pozíció (-1: még nincs pillanatkép) */
+    private volatile long applied = -1;
+    private volatile long leaderHead;
+    private volatile long lagMillis;
+    private volatile long snapshots;
+
+    /**
+     * @param leader az író replikációs címe
+     * @param secret az íróval közös titok
+     * @throws IllegalArgumentException ha a titok üres
+     */
+    public Replica(InetSocketAddress leader, byte[] secret) {
+        this.leader = leader;
+        this.secret = ReplicationAuth.checkSecret(secret);
+    }
+
+    /**
+     * Követés indítása háttérszálon.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::run, "replica");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Az aktuális (csak olvasásra szánt) adattár; tábla frissítéskor lecserélődik.
+     * @return adattár
+     */
+    public DataStore getDataStore() {
+        return store;
+    }
+
+    /**
+     * Következő alkalmazandó napló pozíció.
+     * @return pozíció, -1 amíg nincs pillanatkép
+     */
+    public long getAppliedPosition() {
+        return applied;
+    }
+
+    /**
+     * Lemaradás bejegyzésekben az író legutóbb ismert napló végéhez képest.
+     * @return bejegyzések száma
+     */
+    public long getLagRecords() {
+        return applied < 0 ? leaderHead : Math.max(0, leaderHead - applied);
+    }
+
+    /**
+     * A legutóbbi keret késése (küldés és alkalmazás között, azonos gép órájával mérve pontos).
+     * @return késés ezredmásodpercben
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Eddig kapott pillanatképek száma (újraindulások).
+     * @return pillanatképek száma
+     */
+    public long getSnapshotCount() {
+        return snapshots;
+    }
+
+    /**
+     * Van-e élő kapcsolat az íróval.
+     * @return true ha kapcsolódva
+     */
+    public boolean isConnected() {
+        Socket s = socket;
+        return s != null && !s.isClosed();
+    }
+
+    /**
+     * Várakozás, amíg a replika eléri a megadott napló pozíciót.
+     * @param position várt pozíció
+     * @param timeout legfeljebb ennyi ideig
+     * @return true ha elérte
+     * @throws InterruptedException ha a várakozó szálat megszakítják
+     */
+    public boolean awaitPosition(long position, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            while (applied < position) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return false;
+                wait(Math.max(1, left / 1_000_000));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                //már zárt
+            }
+        }
+        Thread t;
+        synchronized (this) {
+            t = worker;
+        }
+        if (t != null) t.interrupt();
+    }
+
+    private void run() {
+        long backoff = RETRY_MIN_MILLIS;
+        while (running) {
+            try (Socket s = new Socket()) {
+                s.connect(leader);
+                s.setTcpNoDelay(true);
+                socket = s;
+                follow(s);
+            } catch (IOException | ClassNotFoundException e) {
+                if (!running) return;
+            }
+            socket = null;
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, RETRY_MAX_MILLIS);
+        }
+    }
+
+    private void follow(Socket s) throws IOException, ClassNotFoundException {
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(s.getInputStream()));
+        in.setObjectInputFilter(FRAMES);
+        //kölcsönös hitelesítés: az író is igazolja a titkot, mielőtt bármit beolvasnánk tőle
+        s.setSoTimeout((int) ReplicationLeader.HANDSHAKE_TIMEOUT_MILLIS);
+        if (!ReplicationAuth.respond(secret, in, out)) throw new IOException("Az író nem igazolta a közös titkot: " + leader);
+        s.setSoTimeout(0);
+        out.writeLong(applied);
+        out.flush();
+        while (running) {
+            Frame frame = (Frame) in.readObject();
+            switch (frame) {
+                case Snapshot snap -> {
+                    store = snap.store();
+                    snapshots++;
+                    advance(snap.position(), Math.max(leaderHead, snap.position()));
+                }
+                case Batch b -> {
+                    if (b.from() != applied) throw new IOException("Hézag a naplóban: " + b.from() + " != " + applied);
+                    DataStore current = store;
+                    for (Mutation m : b.records()) current.apply(m);
+                    if (b.tables() != null) {
+                        //új táblák, a meglévő üzenet változatok átvételével
+                        DataStore next = b.tables();
+                        next.adoptMessagesFrom(current);
+                        store = next;
+                    }
+                    advance(b.from() + b.records().size(), b.leaderHead());
+                }
+            }
+            lagMillis = Math.max(0, System.currentTimeMillis() - frame.sentAt());
+        }
+    }
+
+    private synchronized void advance(long position, long head) {
+        leaderHead = Math.max(head, position);
+        applied = position;
+        notifyAll();
+    }
+}
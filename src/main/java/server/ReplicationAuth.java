@@ -0,0 +1,88 @@
+package server;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Közös titkos kulcsos, kölcsönös kihívás-válasz a replikációs kapcsolat elején.
+ * Mindkét fél véletlen kihívást küld, a másik a kulccsal és a saját szerepével képzett
+ * HMAC-SHA256 értékkel felel (így egyik fél válasza sem tükrözhető vissza a másiknak);
+ * a kulcs maga nem megy át a hálózaton. Amíg a válasz nem ellenőrzött, egyik fél sem
+ * küld adatot és nem deszerializál a kapcsolatról.
+ */
+final class ReplicationAuth {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int CHALLENGE_BYTES = 32;
+    private static final int RESPONSE_BYTES = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    /** A válaszadó szerepe a MAC bemenetében */
+    private static final byte LEADER = 'L';
+    private static final byte REPLICA = 'R';
+
+    private ReplicationAuth() { }
+
+    //a titok másolata, üres titok nem fogadható el
+    static byte[] checkSecret(byte[] secret) {
+        if (secret == null || secret.length == 0) throw new IllegalArgumentException("Üres replikációs titok");
+        return secret.clone();
+    }
+
+    /**
+     * Író oldal: kihívás küldése, a replika válaszának ellenőrzése, majd a replika kihívására felelés.
+     * @return true ha a replika ismeri a titkot
+     */
+    static boolean challenge(byte[] secret, ObjectOutputStream out, ObjectInputStream in) throws IOException {
+        byte[] nonce = nonce();
+        out.write(nonce);
+        out.flush();
+        byte[] response = new byte[RESPONSE_BYTES];
+        in.readFully(response);
+        byte[] theirs = new byte[CHALLENGE_BYTES];
+        in.readFully(theirs);
+        if (!MessageDigest.isEqual(mac(secret, REPLICA, nonce), response)) return false;
+        out.write(mac(secret, LEADER, theirs));
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Replika oldal: felelés az író kihívására, saját kihívás küldése és az író válaszának ellenőrzése.
+     * @return true ha az író ismeri a titkot
+     */
+    static boolean respond(byte[] secret, ObjectInputStream in, ObjectOutputStream out) throws IOException {
+        byte[] theirs = new byte[CHALLENGE_BYTES];
+        in.readFully(theirs);
+        byte[] nonce = nonce();
+        out.write(mac(secret, REPLICA, theirs));
+        out.write(nonce);
+        out.flush();
+        byte[] response = new byte[RESPONSE_BYTES];
+        in.readFully(response);
+        return MessageDigest.isEqual(mac(secret, LEADER, nonce), response);
+    }
+
+    private static byte[] nonce() {
+        byte[] nonce = new byte[CHALLENGE_BYTES];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    private static byte[] mac(byte[] secret, byte role, byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+            mac.update(role);
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            //a HmacSHA256 minden JDK-ban kötelező
+            throw new IllegalStateException(e);
+        }
+    }
+}
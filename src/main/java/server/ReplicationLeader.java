@@ -0,0 +1,217 @@
+package server;
+
+import controller.AppController;
+import persistence.DataStore;
+import persistence.ReplicationLog;
+import persistence.ReplicationLog.Mutation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Az író folyamat replikációs végpontja: a csatlakozó replikáknak a módosítási naplót küldi.
+ * A replika a saját utolsó alkalmazott pozícióját küldi; ha az még megvan a naplóban, onnan
+ * folytatja, különben pillanatképet kap. Replikánként egy (virtuális) szál dolgozik, mert a
+ * replikák száma kicsi, és a küldés a napló várakozásán kívül nem blokkol mást.
+ * Pillanatkép és napló csak a közös titkot igazoló replikának megy ({@link ReplicationAuth}).
+ */
+public class ReplicationLeader implements Closeable {
+
+    /** Egy kötegben legfeljebb ennyi bejegyzés */
+    static final int MAX_BATCH = 1024;
+
+    /** Ennyi tétlenség után szívverés megy, hogy a replika mérhesse a lemaradást */
+    static final long HEARTBEAT_MILLIS = 500;
+
+    /** A hitelesítő válaszra legfeljebb ennyit várunk */
+    static final long HANDSHAKE_TIMEOUT_MILLIS = 5_000;
+
+    private final AppController controller;
+    private final ReplicationLog log;
+    private final InetSocketAddress bindAddress;
+    private final byte[] secret;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong snapshotsSent = new AtomicLong();
+    private ServerSocket acceptor;
+    private volatile boolean running;
+
+    /**
+     * Replikációs végpont; bekapcsolja a controller naplóját.
+     * @param controller az író controller
+     * @param bindAddress cím; 0-s port esetén szabad portot kap
+     * @param capacity a naplóban megtartott bejegyzések száma
+     * @param secret a replikákkal közös titok
+     * @throws IllegalArgumentException ha a titok üres
+     */
+    public ReplicationLeader(AppController controller, InetSocketAddress bindAddress, int capacity, byte[] secret) {
+        this.secret = ReplicationAuth.checkSecret(secret);
+        this.controller = controller;
+        this.log = controller.enableReplication(capacity);
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * Figyelés indítása.
+     * @throws IOException ha a port nem nyitható meg
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+        acceptor = new ServerSocket();
+        acceptor.bind(bindAddress);
+        running = true;
+        Thread.ofVirtual().name("replication-accept").start(this::acceptLoop);
+    }
+
+    /**
+     * A ténylegesen használt port.
+     * @return port, vagy -1 ha nem fut
+     */
+    public int getPort() {
+        ServerSocket a = acceptor;
+        return a == null ? -1 : a.getLocalPort();
+    }
+
+    /**
+     * Kapcsolódott replikák száma.
+     * @return replikák száma
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Eddig küldött pillanatképek száma.
+     * @return pillanatképek száma
+     */
+    public long getSnapshotsSent() {
+        return snapshotsSent.get();
+    }
+
+    /**
+     * A napló vége (a replikák lemaradása ehhez mérhető).
+     * @return napló pozíció
+     */
+    public long getHead() {
+        return log.head();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        try {
+            if (acceptor != null) acceptor.close();
+        } catch (IOException e) {
+            //már zárt
+        }
+        for (Socket s : followers) closeQuietly(s);
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = acceptor.accept();
+                s.setTcpNoDelay(true);
+                followers.add(s);
+                Thread.ofVirtual().name("replication-" + s.getPort()).start(() -> serve(s));
+            } catch (IOException e) {
+                if (running) System.err.println("Replikációs kapcsolat hiba: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            //hitelesítés előtt semmi nem megy ki, és csak primitív adatot olvasunk; néma kliens nem ülhet a kapcsolaton
+            socket.setSoTimeout((int) HANDSHAKE_TIMEOUT_MILLIS);
+            if (!ReplicationAuth.challenge(secret, out, in)) {
+                System.err.println("Elutasított replika (hibás titok): " + socket.getRemoteSocketAddress());
+                return;
+            }
+            long pos = in.readLong();
+            socket.setSoTimeout(0);
+            List<Mutation> batch = new ArrayList<>(MAX_BATCH);
+            while (running) {
+                batch.clear();
+                if (!log.read(pos, MAX_BATCH, batch)) {
+                    //lemaradt (vagy új) replika: pillanatkép, utána a napló folytatása
+                    ReplicationLog.Positioned<DataStore> snap = controller.getDataStore().replicationSnapshot();
+                    send(out, new Snapshot(snap.position(), snap.value(), System.currentTimeMillis()));
+                    snapshotsSent.incrementAndGet();
+                    pos = snap.position();
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    long head = log.await(pos, HEARTBEAT_MILLIS);
+                    if (head == pos) send(out, new Batch(pos, List.of(), null, head, System.currentTimeMillis()));
+                    continue;
+                }
+                //a táblák a küldéskori állapotukban, a köteggel együtt mennek: ez legalább a jelzés szerinti állapot
+                DataStore tables = batch.stream().anyMatch(m -> m instanceof ReplicationLog.TablesChanged)
+                        ? controller.getDataStore().tablesSnapshot() : null;
+                send(out, new Batch(pos, new ArrayList<>(batch), tables, log.head(), System.currentTimeMillis()));
+                pos += batch.size();
+            }
+        } catch (IOException e) {
+            //a replika bontott, újracsatlakozáskor a pozíciójától folytatja
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    private static void send(ObjectOutputStream out, Frame frame) throws IOException {
+        out.writeObject(frame);
+        //a hivatkozási tábla ürítése, különben minden elküldött objektum bent ragadna
+        out.reset();
+        out.flush();
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException e) {
+            //már zárt
+        }
+    }
+
+    /** A replikának küldött keret */
+    sealed interface Frame extends Serializable permits Snapshot, Batch {
+        /** @return küldés ideje (epoch ms) */
+        long sentAt();
+    }
+
+    /**
+     * Teljes pillanatkép.
+     * @param position a napló pozíció, ahonnan folytatni kell
+     * @param store az adattár
+     * @param sentAt küldés ideje
+     */
+    record Snapshot(long position, DataStore store, long sentAt) implements Frame { }
+
+    /**
+     * Naplóbejegyzések (üresen szívverés).
+     * @param from az első bejegyzés pozíciója
+     * @param records bejegyzések
+     * @param tables friss táblák üzenetek nélkül, ha a kötegben tábla változás volt (különben null)
+     * @param leaderHead a napló vége küldéskor
+     * @param sentAt küldés ideje
+     */
+    record Batch(long from, List<Mutation> records, DataStore tables, long leaderHead, long sentAt) implements Frame { }
+}
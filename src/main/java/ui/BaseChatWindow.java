@@ -1,25 +1,45 @@
 package ui;
 
 import controller.AppController;
+import controller.EventBus;
+import controller.MessagePage;
+import controller.SendResult;
 import model.Message;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 /**
  * Absztrakt chat ablak osztály - Template Method pattern.
  * Privát és csoport chat ablakok közös logikája.
+ * Az ablak csak a legfrissebb lappal nyílik; régebbi lapok a háttérben töltődnek,
+ * amikor a felhasználó a tetejéhez görget. Frissítés csak a saját beszélgetés eseményére
+ * történik (eseménybusz), tétlen ablak nem dolgozik.
  */
 public abstract class BaseChatWindow extends JFrame {
+    /** Egy lap mérete */
+    static final int PAGE_SIZE = 200;
+
+    //régebbi lapok lekérése az eseménykezelő szálon kívül
+    private static final ExecutorService PAGE_LOADER = Executors.newVirtualThreadPerTaskExecutor();
+
     protected final transient AppController controller;
     protected final String me;
-    protected final JTextArea chatArea = new JTextArea(20, 50);
+    private final PagedMessageModel messages = new PagedMessageModel();
+    protected final MessageListView chatView = new MessageListView(messages, 20, 50);
     protected final JTextField inputField = new JTextField(36);
     protected final JButton sendButton = new JButton("Küldés");
-    private Timer liveTimer;
-    private int lastCount = -1;
+    private transient EventBus.Subscription subscription;
+    private boolean opened;
+    private boolean loadingOlder;
+    //küldés folyamatban, addig újabb nem indul
+    private boolean sending;
+    private final transient Function<Message, String> lineFormatter;
     
     /**
      * Chat ablak konstruktor.
@@ -33,11 +53,14 @@ public abstract class BaseChatWindow extends JFrame {
         //paraméterek
         this.controller = controller;
         this.me = me;
+        this.lineFormatter = ChatUi.timedLine(this::resolveUser, me, "");
+        chatView.setFormatter(lineFormatter);
+        chatView.onNearTop(this::loadOlder);
         //UI
         initComponents();
         //eseménykezelők
         bindEvents();
-        //timer indítása
+        //leiratkozás bezáráskor (a feliratkozás az első betöltéskor történik)
         startLive();
         //méretezés
         pack();
@@ -46,19 +69,16 @@ public abstract class BaseChatWindow extends JFrame {
     }
 
     private void initComponents() {
-        //nem szerkeszthető a chat terület
-        chatArea.setEditable(false);
         //alsó panel
         JPanel bottom = new JPanel();
         bottom.add(inputField);
         bottom.add(sendButton);
         
         getContentPane().setLayout(new BorderLayout());
-        getContentPane().add(new JScrollPane(chatArea), BorderLayout.CENTER);
+        getContentPane().add(chatView, BorderLayout.CENTER);
         
         getContentPane().add(bottom, BorderLayout.SOUTH);
-        
-        applySendPermission();
+        //a küldési jogot az első betöltés állítja be: itt a leszármazott mezői még nincsenek kész
     }
 
     //események hozzárendelése
@@ -72,6 +92,8 @@ public abstract class BaseChatWindow extends JFrame {
 
     //üzenet küldése
     private void sendMessage() {
+        //előző küldés még folyamatban
+        if (sending) return;
         //szöveg kiolvasása
         String text = inputField.getText().trim();
         //üres szöveg ellenőrzése
@@ -87,10 +109,32 @@ public abstract class BaseChatWindow extends JFrame {
             );
             return;
         }
-        //üzenet küldése
-        boolean ok = sendInternal(text);
+        //üzenet küldése a háttérben; az eredményt az eseménykezelő szálon dolgozzuk fel
+        sending = true;
+        sendButton.setEnabled(false);
+        sendInternal(text).whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> {
+                sending = false;
+                if (!isDisplayable()) return;
+                applySendPermission();
+                if (error != null) error.printStackTrace();
+                onSendResult(error != null ? SendResult.FAILED : result);
+            }));
+    }
+
+    //küldés eredményének kezelése (eseménykezelő szálon)
+    private void onSendResult(SendResult result) {
         //hiba kezelés
-        if (!ok) {
+        if (result == SendResult.RATE_LIMITED) {
+            JOptionPane.showMessageDialog(
+                this,
+                UiMessages.SEND_RATE_LIMITED,
+                UiMessages.WARN_TITLE,
+                JOptionPane.WARNING_MESSAGE
+            );
+            return;
+        }
+        if (!result.isSent()) {
             JOptionPane.showMessageDialog(
                 this, 
                 UiMessages.SEND_FAILED,            
@@ -106,49 +150,72 @@ public abstract class BaseChatWindow extends JFrame {
         reloadMessages();
     }
 
-    //üzenetek újratöltése
+    //üzenetek frissítése: nyitáskor a legfrissebb lap, utána csak az újabb üzenetek
     protected void reloadMessages() {
-        //üzenetek lekérése
-        List<Message> msgs = fetchMessages();
-        
-        //üzenet renderelés
-        ChatUi.renderMessagesWithTime(chatArea, msgs, this::resolveUser, me, "");
-        
-        //üzenetszám frissítése
-        lastCount = msgs.size();
+        boolean atBottom = chatView.isAtBottom();
+        if (!opened) {
+            opened = true;
+            //előbb feliratkozás, így a lekérés utáni üzenet sem vész el
+            subscribe();
+            messages.reset(fetchPage(-PAGE_SIZE, Integer.MAX_VALUE));
+            atBottom = true;
+        } else {
+            //egy átfedő üzenettel kérünk, így a közbeni törlés kiderül
+            int from = Math.max(0, messages.end() - 1);
+            MessagePage newer = fetchPage(from, from + PAGE_SIZE + 1);
+            //túl sok új üzenet vagy törlés: a legfrissebb lap a betöltött mérettel
+            if (newer.end() < newer.total() || !messages.append(newer)) {
+                messages.reset(fetchPage(-Math.max(PAGE_SIZE, messages.getSize()), Integer.MAX_VALUE));
+                atBottom = true;
+            }
+        }
+        if (atBottom) {
+            chatView.scrollToBottom();
+            //a legutolsó üzenet látszik: olvasottnak jelöljük
+            int last = messages.getSize() - 1;
+            if (last >= 0) controller.markRead(me, conversationId(), messages.end() - 1, messages.getElementAt(last));
+        }
         
         //jogosultság frissítése
         applySendPermission();
     }
 
-    //élő frissítés indítása
+    //régebbi lap betöltése a háttérben
+    private void loadOlder() {
+        if (loadingOlder || messages.first() == 0) return;
+        loadingOlder = true;
+        int first = messages.first();
+        //az első betöltött üzenet is benne van, ehhez illesztünk
+        CompletableFuture.supplyAsync(() -> fetchPage(Math.max(0, first - PAGE_SIZE), first + 1), PAGE_LOADER)
+            .whenComplete((page, err) -> SwingUtilities.invokeLater(() -> {
+                loadingOlder = false;
+                //közben frissült a modell: a következő görgetés újra kéri
+                if (page == null || messages.first() != first) return;
+                int added = messages.prepend(page);
+                if (added < 0) {
+                    //közbeni törlés: újratöltés a már betöltött mérettel
+                    messages.reset(fetchPage(-(messages.getSize() + PAGE_SIZE), Integer.MAX_VALUE));
+                    return;
+                }
+                chatView.keepPositionAfterPrepend(added);
+            }));
+    }
+
+    //élő frissítés: a beszélgetés eseményei (új üzenet, törlés, szerep vagy barátság változás)
+    private void subscribe() {
+        subscription = controller.getEventBus().subscribe(conversationId(), new EdtEvents(events -> {
+            if (isDisplayable()) reloadMessages();
+        }));
+    }
+
+    //élő frissítés leállítása bezáráskor
     private void startLive() {
-        
-        liveTimer = new Timer(1500, e -> {
-            //üzenetek lekérése
-            List<Message> msgs = fetchMessages();
-            
-            //ha megváltozott az üzenetszám, újratöltés
-            if (msgs.size() != lastCount) {
-                reloadMessages();
-            } else {
-                //jogosultság ellenőrzés
-                applySendPermission();
-            }
-        });
-        
-        // ismétlődés beállítása
-        liveTimer.setRepeats(true);
-        
-        //indítás
-        liveTimer.start();
-        
         //ablak bezárás eseménykezelő
         addWindowListener(new java.awt.event.WindowAdapter() {
             //ablak bezárva
             @Override
             public void windowClosed(java.awt.event.WindowEvent e) { 
-                if (liveTimer != null) liveTimer.stop(); 
+                if (subscription != null) subscription.close();
             }
         });
     }
@@ -167,11 +234,13 @@ public abstract class BaseChatWindow extends JFrame {
         //controller függvénye
         return controller.getDataStore().getUsernameById(id);
     }
-    //üzenetek lekérése
-    protected abstract List<Message> fetchMessages();
+    //a megjelenített beszélgetés azonosítója (eseménybusz téma)
+    protected abstract UUID conversationId();
+    //üzenetek egy lapjának lekérése (háttérszálról is hívódik)
+    protected abstract MessagePage fetchPage(int from, int to);
     //küldési jogosultság ellenőrzése
     protected abstract boolean canSendNow();
-    //üzenet küldése
-    protected abstract boolean sendInternal(String text);
+    //üzenet küldése, a köteg mentése után teljesül
+    protected abstract CompletableFuture<SendResult> sendInternal(String text);
     //ezeket a metódusokat a leszármazott osztályok valósítják meg
 }
@@ -3,8 +3,6 @@ package ui;
 import model.Message;
 
 import javax.swing.*;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.UUID;
 import java.util.function.Function;
@@ -18,27 +16,21 @@ public final class ChatUi {
     
     /**
      * Üzenetek megjelenítése a chat területen.
+     * Növekményes: a már kint lévő üzenetek nem formázódnak újra, csak az újak kerülnek ki.
      * @param chatArea szövegterület
      * @param msgs üzenetek
      * @param usernameResolver UUID → felhasználónév függvény
      * @param prefixOrNull opcionális prefix
      */
     public static void renderMessages(JTextArea chatArea,List<Message> msgs,Function<UUID, String> usernameResolver,String prefixOrNull) {
-        //chat terület törlése
-        chatArea.setText("");
         //prefix beállítása
         final String prefix = prefixOrNull == null ? "" : prefixOrNull;
-        for (Message m : msgs) {
-            String who = usernameResolver.apply(m.getSenderId()); //függvény, ami UUID-ból nevet csinál
-            if (who == null) who = "?";
-            chatArea.append(String.format("%s%s: %s%n", prefix, who, m.getContent()));
-        }
-        
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        MessageRenderer.of(chatArea).render(msgs, List.of("plain", prefix), new LineFormatter(usernameResolver, null, prefix, false));
     }
     
     /**
      * Üzenetek megjelenítése időbélyeggel.
+     * Növekményes: a már kint lévő üzenetek nem formázódnak újra, csak az újak kerülnek ki.
      * @param chatArea szövegterület
      * @param msgs üzenetek
      * @param usernameResolver UUID → felhasználónév függvény
@@ -46,24 +38,31 @@ public final class ChatUi {
      * @param prefixOrNull opcionális prefix
      */
     public static void renderMessagesWithTime(JTextArea chatArea,List<Message> msgs,Function<UUID, String> usernameResolver,String me,String prefixOrNull) {
-        chatArea.setText("");
-        //dátum formázó létrehozása
-        final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
-        
         //prefix
         final String prefix = prefixOrNull == null ? "" : prefixOrNull;
-        
-        for (Message m : msgs) {
-            String who = usernameResolver.apply(m.getSenderId());
-            if (who == null) who = "?";
-            
-            String label = who.equals(me) ? "Én" : who;
-            String time = m.getTimestamp() == null ? "" : format.format(m.getTimestamp());
-            
-            chatArea.append(String.format("[%s] %s%s: %s%n", time, prefix, label, m.getContent()));
-        }
-        
-        //görgetés az aljára
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        MessageRenderer.of(chatArea).render(msgs, List.of("time", prefix, String.valueOf(me)), new LineFormatter(usernameResolver, me, prefix, true));
+    }
+
+    /**
+     * Egy üzenet sora küldővel (sortörés nélkül).
+     * A formázó egy ablakhoz tartozik: a neveket gyorsítótárazza, és nem szálbiztos.
+     * @param usernameResolver UUID → felhasználónév függvény
+     * @param prefixOrNull opcionális prefix
+     * @return sor formázó
+     */
+    public static Function<Message, String> plainLine(Function<UUID, String> usernameResolver, String prefixOrNull) {
+        return new LineFormatter(usernameResolver, null, prefixOrNull, false);
+    }
+
+    /**
+     * Egy üzenet sora időbélyeggel és küldővel (sortörés nélkül); a saját üzenet "Én" jelölést kap.
+     * A formázó egy ablakhoz tartozik: a neveket gyorsítótárazza, és nem szálbiztos.
+     * @param usernameResolver UUID → felhasználónév függvény
+     * @param me aktuális felhasználó
+     * @param prefixOrNull opcionális prefix
+     * @return sor formázó
+     */
+    public static Function<Message, String> timedLine(Function<UUID, String> usernameResolver, String me, String prefixOrNull) {
+        return new LineFormatter(usernameResolver, me, prefixOrNull, true);
     }
 }
@@ -0,0 +1,45 @@
+package ui;
+
+import controller.StoreEvent;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Eseménybusz feliratkozó, amely az eseménykezelő szálra továbbít, összevonva.
+ * A közzétevő szálon csak sorba tesz; egyszerre legfeljebb egy feldolgozás vár az EDT-n,
+ * és az addig érkezett események egy kötegben jutnak a kezelőhöz.
+ */
+final class EdtEvents implements Consumer<StoreEvent> {
+
+    private final Queue<StoreEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Consumer<List<StoreEvent>> handler;
+
+    /**
+     * @param handler az EDT-n hívott kezelő az összegyűlt eseményekkel
+     */
+    EdtEvents(Consumer<List<StoreEvent>> handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void accept(StoreEvent event) {
+        pending.add(event);
+        if (scheduled.compareAndSet(false, true)) SwingUtilities.invokeLater(this::drain);
+    }
+
+    private void drain() {
+        //a jelző előbb törlődik, így a közben érkező esemény új feldolgozást kér
+        scheduled.set(false);
+        List<StoreEvent> batch = new ArrayList<>();
+        StoreEvent e;
+        while ((e = pending.poll()) != null) batch.add(e);
+        if (!batch.isEmpty()) handler.accept(batch);
+    }
+}
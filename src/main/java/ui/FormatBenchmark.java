@@ -0,0 +1,111 @@
+package ui;
+
+import model.Message;
+
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Soronkénti memóriafoglalás és idő mérése az üzenet formázásnál.
+ * A régi (minden hívásnál új DateTimeFormatter, String.format, névfeloldás soronként) és
+ * az új, gyorsítótárazó formázót hasonlítja össze ugyanazon az üzenetsoron.
+ * Használat: {@code java ui.FormatBenchmark [sorok] [küldők]}
+ */
+public final class FormatBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    /** A formázás eredményének nyelője, hogy a JIT ne dobhassa ki a munkát */
+    private static volatile long sink;
+
+    private FormatBenchmark() {}
+
+    /**
+     * Mérés indítása.
+     * @param args sorok száma, különböző küldők száma (mind opcionális)
+     */
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int senders = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<Message> msgs = new ArrayList<>(lines);
+        Map<UUID, String> users = new HashMap<>();
+        UUID[] ids = new UUID[senders];
+        for (int i = 0; i < senders; i++) {
+            ids[i] = UUID.randomUUID();
+            users.put(ids[i], "user" + i);
+        }
+        UUID conv = UUID.randomUUID();
+        for (int i = 0; i < lines; i++) msgs.add(new Message(ids[i % senders], conv, "üzenet " + i));
+        Function<UUID, String> resolver = users::get;
+
+        System.out.printf("%d sor, %d küldő%n", lines, senders);
+        System.out.printf("%-22s %14s %12s%n", "formázó", "bájt/sor", "ns/sor");
+        for (int r = 0; r < ROUNDS; r++) {
+            boolean last = r == ROUNDS - 1;
+            //az első körök bemelegítés, csak az utolsó számít
+            measure("régi (String.format)", msgs, () -> legacyTimedLine(resolver, "user0"), last);
+            measure("új (apply)", msgs, () -> new LineFormatter(resolver, "user0", "", true), last);
+            measureAppend(msgs, new LineFormatter(resolver, "user0", "", true), last);
+        }
+    }
+
+    private static void measure(String name, List<Message> msgs, Supplier<Function<Message, String>> formatter, boolean print) {
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        Function<Message, String> f = formatter.get();
+        long total = 0;
+        for (Message m : msgs) total += f.apply(m).length();
+        long nanos = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        sink = total;
+        if (print) report(name, msgs.size(), bytes, nanos);
+    }
+
+    //a szövegterület útja: közös pufferbe írás, köztes sorok nélkül
+    private static void measureAppend(List<Message> msgs, LineFormatter f, boolean print) {
+        StringBuilder sb = new StringBuilder(64 * 1024);
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        long total = 0;
+        for (Message m : msgs) {
+            f.appendTo(sb, m);
+            total += sb.length();
+            sb.setLength(0);
+        }
+        long nanos = System.nanoTime() - start;
+        bytes = allocatedBytes() - bytes;
+        sink = total;
+        if (print) report("új (appendTo)", msgs.size(), bytes, nanos);
+    }
+
+    private static void report(String name, int lines, long bytes, long nanos) {
+        System.out.printf("%-22s %14.1f %12.1f%n", name, bytes / (double) lines, nanos / (double) lines);
+    }
+
+    //az aktuális szál eddigi foglalása (HotSpot kiterjesztés)
+    private static long allocatedBytes() {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    //a korábbi ChatUi.timedLine megvalósítás, összehasonlításhoz
+    private static Function<Message, String> legacyTimedLine(Function<UUID, String> usernameResolver, String me) {
+        final DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+        return m -> {
+            String who = usernameResolver.apply(m.getSenderId());
+            if (who == null) who = "?";
+            String label = who.equals(me) ? "Én" : who;
+            String time = m.getTimestamp() == null ? "" : format.format(m.getTimestamp());
+            return String.format("[%s] %s%s: %s", time, "", label, m.getContent());
+        };
+    }
+}
@@ -1,11 +1,12 @@
 package ui;
 
 import controller.AppController;
-import model.Message;
+import controller.MessagePage;
+import controller.SendResult;
 import model.Permissions;
 
-import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Csoport chat ablak.
@@ -28,8 +29,13 @@ public class GroupChatWindow extends BaseChatWindow {
     }
 
     @Override
-    protected List<Message> fetchMessages() {
-        return controller.getDataStore().getGroupMessages(groupId);
+    protected UUID conversationId() {
+        return groupId;
+    }
+
+    @Override
+    protected MessagePage fetchPage(int from, int to) {
+        return controller.getGroupMessagesPage(groupId, from, to);
     }
     
     @Override
@@ -38,7 +44,7 @@ public class GroupChatWindow extends BaseChatWindow {
     }
     
     @Override
-    protected boolean sendInternal(String text) {
-        return controller.sendGroupMessage(groupId, me, text);
+    protected CompletableFuture<SendResult> sendInternal(String text) {
+        return controller.sendGroupMessageAsync(groupId, me, text);
     }
 }
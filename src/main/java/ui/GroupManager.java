@@ -12,7 +12,6 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.Set;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.HashSet;
 
 
@@ -197,7 +196,7 @@ public class GroupManager extends JDialog {
     }
 
     /**
-     * Tag hozzáadása a csoporthoz.
+     * Tagok hozzáadása a csoporthoz (egy kötegben).
      * @param parent szülő ablak
      * @param model taglista modell
      * @param groupId csoport UUID
@@ -207,14 +206,16 @@ public class GroupManager extends JDialog {
             JOptionPane.showMessageDialog(parent, UiMessages.NO_PERM_ADD, UiMessages.WARN_TITLE, JOptionPane.WARNING_MESSAGE);
             return;
         }
-        Set<String> all = controller.getDataStore().getAllUsernames();
-        List<String> choices = new ArrayList<>(all);
-        choices.remove(username);
-        String picked = (String) JOptionPane.showInputDialog(parent, "Válassz felhasználót:", "Hozzáad", JOptionPane.PLAIN_MESSAGE, null, choices.toArray(), null);
-        if (picked != null) {
-            boolean ok = controller.addGroupMember(groupId, picked, "Résztvevő");
+        DataStore store = controller.getDataStore();
+        //név szerint szűrünk: a keresés közben törölt felhasználó sem okoz hibát
+        Set<String> members = controller.getGroupMembers(groupId);
+        //több név is kijelölhető, egy kötegben és egyetlen mentéssel kerülnek be
+        List<String> picked = UserPickerDialog.pickMany(parent, "Hozzáad", q -> store.searchUsernames(q, UserPickerDialog.MAX_RESULTS,
+                u -> u.equals(username) || members.contains(u)));
+        if (!picked.isEmpty()) {
+            boolean ok = controller.addGroupMembers(groupId, picked, "Résztvevő");
             if (!ok) JOptionPane.showMessageDialog(parent, "Hozzáadás sikertelen.", "Hiba", JOptionPane.ERROR_MESSAGE);
-            else model.addElement(picked + " (Résztvevő)");
+            else for (String u : picked) model.addElement(u + " (Résztvevő)");
         }
     }
 
@@ -250,15 +251,16 @@ public class GroupManager extends JDialog {
         }
         String role = JOptionPane.showInputDialog(parent, "Szerep neve:");
         if (role == null || role.isBlank()) return;
-        boolean ok = controller.addCustomRole(groupId, role);
+        Set<String> perms = promptPermissions(parent);
+        //szerep és jogosultságai egy tranzakcióban, egy mentéssel
+        boolean ok = controller.batch(tx -> {
+            tx.addCustomRole(groupId, role);
+            if (!perms.isEmpty()) tx.setRolePermissions(groupId, role, perms);
+        });
         if (!ok) {
             JOptionPane.showMessageDialog(parent, "Szerep hozzáadása sikertelen.", "Hiba", JOptionPane.ERROR_MESSAGE);
             return;
         }
-        Set<String> perms = promptPermissions(parent);
-        if (!perms.isEmpty()) {
-            controller.setRolePermissions(groupId, role, perms);
-        }
         JOptionPane.showMessageDialog(parent, "Szerep hozzáadva: " + role);
         
         // Frissítjük a taglistát hogy az új szerepek láthatóak legyenek
@@ -312,16 +314,17 @@ public class GroupManager extends JDialog {
      */
     private void refreshMemberList(DefaultListModel<String> model, UUID groupId) {
         model.clear();
-        Group group = controller.getDataStore().getGroup(groupId);
+        //egy adattár példányból olvasunk, egy közbeni újratöltés se keverje a két állapotot
+        DataStore store = controller.getDataStore();
+        Group group = store.getGroup(groupId);
         if (group == null) return;
         
-        for (Map.Entry<UUID, String> entry : group.getMemberRoles().entrySet()) {
-            String memberName = controller.getDataStore().getUsernameById(entry.getKey());
-            String roleName = entry.getValue();
+        group.forEachMember((memberId, roleName) -> {
+            String memberName = store.getUsernameById(memberId);
             if (memberName != null) {
                 model.addElement(memberName + " (" + roleName + ")");
             }
-        }
+        });
     }
 
     /**
@@ -0,0 +1,101 @@
+package ui;
+
+import model.Message;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Újrahasznosító üzenet sor formázó, egy ablakhoz (egy szálon, jellemzően az eseménykezelőn).
+ * A küldők megjelenített nevét azonosító szerint gyorsítótárazza, az időbélyeg szövegét
+ * percenként egyszer állítja elő (a formátum percre pontos), a sort pedig egy közös
+ * StringBuilder-be írja, így soronként csak maga a kész szöveg foglal memóriát.
+ */
+final class LineFormatter implements Function<Message, String> {
+
+    /** Közös időbélyeg formátum (szálbiztos, megváltozhatatlan) */
+    static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    /** Előállított percek gyorsítótára (közvetlen leképezés, kettő hatványa) */
+    private static final int TIME_SLOTS = 64;
+
+    private final Function<UUID, String> usernameResolver;
+    private final String me;
+    private final String prefix;
+    private final boolean timed;
+
+    private final Map<UUID, String> labels = new HashMap<>();
+    private final StringBuilder line = new StringBuilder(128);
+    private final long[] minutes = new long[TIME_SLOTS];
+    private final String[] times = new String[TIME_SLOTS];
+
+    /**
+     * @param usernameResolver UUID → felhasználónév függvény
+     * @param me aktuális felhasználó ("Én" jelölést kap), vagy null
+     * @param prefixOrNull opcionális prefix
+     * @param timed időbélyeggel kezdődjön-e a sor
+     */
+    LineFormatter(Function<UUID, String> usernameResolver, String me, String prefixOrNull, boolean timed) {
+        this.usernameResolver = usernameResolver;
+        this.me = me;
+        this.prefix = prefixOrNull == null ? "" : prefixOrNull;
+        this.timed = timed;
+    }
+
+    /**
+     * Egy üzenet sora (sortörés nélkül).
+     * @param m üzenet
+     * @return sor
+     */
+    @Override
+    public String apply(Message m) {
+        line.setLength(0);
+        appendTo(line, m);
+        return line.toString();
+    }
+
+    /**
+     * Egy üzenet sorának hozzáírása (sortörés nélkül), köztes szöveg nélkül.
+     * @param sb cél
+     * @param m üzenet
+     */
+    void appendTo(StringBuilder sb, Message m) {
+        if (timed) {
+            sb.append('[');
+            Instant ts = m.getTimestamp();
+            if (ts != null) sb.append(time(ts));
+            sb.append("] ");
+        }
+        sb.append(prefix).append(label(m.getSenderId())).append(": ").append(m.getContent());
+    }
+
+    //a küldő megjelenített neve, egyszer feloldva
+    private String label(UUID senderId) {
+        String label = labels.get(senderId);
+        if (label == null) {
+            String who = usernameResolver.apply(senderId);
+            if (who == null) who = "?";
+            label = who.equals(me) ? "Én" : who;
+            labels.put(senderId, label);
+        }
+        return label;
+    }
+
+    //az időbélyeg szövege, percenként egyszer formázva
+    private String time(Instant ts) {
+        long minute = Math.floorDiv(ts.getEpochSecond(), 60);
+        int slot = (int) minute & (TIME_SLOTS - 1);
+        String s = times[slot];
+        if (s == null || minutes[slot] != minute) {
+            s = TIME.format(ts);
+            minutes[slot] = minute;
+            times[slot] = s;
+        }
+        return s;
+    }
+}
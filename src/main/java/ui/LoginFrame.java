@@ -1,11 +1,12 @@
 package ui;
 
 import controller.AppController;
-import util.PasswordUtil;
 import controller.RegistrationResult;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Bejelentkezési ablak - regisztráció és bejelentkezés.
@@ -17,6 +18,7 @@ public class LoginFrame extends JFrame {
     private final JPasswordField passwordField = new JPasswordField(20);
     private final JButton loginButton = new JButton("Bejelentkezés");
     private final JButton registerButton = new JButton("Regisztráció");
+    private final JProgressBar progress = new JProgressBar();
     
     /**
      * Bejelentkezési ablak konstruktor.
@@ -87,6 +89,14 @@ public class LoginFrame extends JFrame {
         gbc.anchor = GridBagConstraints.CENTER;  //középre igazítás
         panel.add(buttons, gbc);
 
+        //folyamatjelző a háttérben futó jelszó műveletekhez
+        progress.setIndeterminate(true);
+        progress.setStringPainted(true);
+        progress.setVisible(false);
+        gbc.gridy = 3;  //4. sor
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        panel.add(progress, gbc);
+
         // panel a tartalom
         setContentPane(panel);
     }
@@ -109,44 +119,14 @@ public class LoginFrame extends JFrame {
                 return; 
             }
             
-            //regisztráció végrehajtása a controller segítségével
-            String hashedPw = PasswordUtil.hashPassword(pw);
-            RegistrationResult result = controller.registerUser(user, hashedPw);
-            
-            switch (result) {
-                case SUCCESS:
-                    JOptionPane.showMessageDialog(
-                        LoginFrame.this,
-                        "Sikeres regisztráció. Jelentkezz be.",
-                        "Siker",
-                        JOptionPane.INFORMATION_MESSAGE
-                    );
-                    break;
-                case USERNAME_TOO_SHORT:
-                    JOptionPane.showMessageDialog(
-                        LoginFrame.this,
-                        "A felhasználónév túl rövid (legalább 3 karakter).",
-                        "Hiba",
-                        JOptionPane.ERROR_MESSAGE
-                    );
-                    break;
-                case USERNAME_TOO_LONG:
-                    JOptionPane.showMessageDialog(
-                        LoginFrame.this,
-                        "A felhasználónév túl hosszú (maximum 20 karakter).",
-                        "Hiba",
-                        JOptionPane.ERROR_MESSAGE
-                    );
-                    break;
-                case USERNAME_ALREADY_TAKEN:
-                    JOptionPane.showMessageDialog(
-                        LoginFrame.this,
-                        "A felhasználónév már foglalt.",
-                        "Hiba",
-                        JOptionPane.ERROR_MESSAGE
-                    );
-                    break;
-            }
+            //regisztráció végrehajtása a controller segítségével, a hash-elés háttérszálon fut
+            setBusy(true, "Regisztráció...");
+            controller.registerUserAsync(user, pw).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    setBusy(false, null);
+                    if (error != null) showAuthError(error);
+                    else showRegistrationResult(result);
+                }));
         });
         //bejelentkezés gomb
         loginButton.addActionListener(e -> {
@@ -164,24 +144,87 @@ public class LoginFrame extends JFrame {
                 );
                 return;
             }
-            //hitelesítés a controller segítségével
-            boolean ok = controller.authenticateUser(user, pw);
-            //ha sikeres a bejelentkezés
-            if (ok) {
-                //mainframe létrehozása a felhasználóval
-                MainFrame main = new MainFrame(controller, user);
-                main.setVisible(true); 
-                
-                dispose(); //ablak bezárása
-            } else {
-                //sikertelen bejelentkezés
+            //hitelesítés a controller segítségével, háttérszálon; a helyi kliensnek nem kell munkamenet token
+            setBusy(true, "Bejelentkezés...");
+            controller.authenticateUserAsync(user, pw).whenComplete((ok, error) ->
+                SwingUtilities.invokeLater(() -> {
+                    setBusy(false, null);
+                    if (error != null) showAuthError(error);
+                    else onLoginResult(user, ok);
+                }));
+        });
+    }
+
+    //gombok tiltása és folyamatjelző a háttérművelet idejére
+    private void setBusy(boolean busy, String text) {
+        loginButton.setEnabled(!busy);
+        registerButton.setEnabled(!busy);
+        progress.setString(text);
+        progress.setVisible(busy);
+        pack();
+    }
+
+    private void showAuthError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        String text = cause instanceof RejectedExecutionException
+            ? "A szerver túlterhelt, próbáld újra később."
+            : "Váratlan hiba: " + cause.getMessage();
+        JOptionPane.showMessageDialog(LoginFrame.this, text, "Hiba", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void onLoginResult(String user, boolean ok) {
+        //ha sikeres a bejelentkezés
+        if (ok) {
+            //mainframe létrehozása a felhasználóval
+            MainFrame main = new MainFrame(controller, user);
+            main.setVisible(true); 
+            
+            dispose(); //ablak bezárása
+        } else {
+            //sikertelen bejelentkezés
+            JOptionPane.showMessageDialog(
+                LoginFrame.this,
+                "Hibás felhasználónév vagy jelszó.",
+                "Hiba",
+                JOptionPane.ERROR_MESSAGE
+            );
+        }
+    }
+
+    private void showRegistrationResult(RegistrationResult result) {
+        switch (result) {
+            case SUCCESS:
                 JOptionPane.showMessageDialog(
                     LoginFrame.this,
-                    "Hibás felhasználónév vagy jelszó.",
+                    "Sikeres regisztráció. Jelentkezz be.",
+                    "Siker",
+                    JOptionPane.INFORMATION_MESSAGE
+                );
+                break;
+            case USERNAME_TOO_SHORT:
+                JOptionPane.showMessageDialog(
+                    LoginFrame.this,
+                    "A felhasználónév túl rövid (legalább 3 karakter).",
                     "Hiba",
                     JOptionPane.ERROR_MESSAGE
                 );
-            }
-        });
+                break;
+            case USERNAME_TOO_LONG:
+                JOptionPane.showMessageDialog(
+                    LoginFrame.this,
+                    "A felhasználónév túl hosszú (maximum 20 karakter).",
+                    "Hiba",
+                    JOptionPane.ERROR_MESSAGE
+                );
+                break;
+            case USERNAME_ALREADY_TAKEN:
+                JOptionPane.showMessageDialog(
+                    LoginFrame.this,
+                    "A felhasználónév már foglalt.",
+                    "Hiba",
+                    JOptionPane.ERROR_MESSAGE
+                );
+                break;
+        }
     }
 }
@@ -1,6 +1,10 @@
 package ui;
 
 import controller.AppController;
+import controller.EventBus;
+import controller.SendResult;
+import controller.StoreEvent;
+import model.Group;
 import model.Message;
 import persistence.DataStore;
 import model.Permissions;
@@ -14,8 +18,12 @@ import java.util.UUID;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.awt.event.*;
 import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Főablak - barátok és csoportok kezelése két fülre bontva.
@@ -44,7 +52,7 @@ public class MainFrame extends JFrame {
     private final JTabbedPane leftTabs = new JTabbedPane();
     
     //chat előnézet területe
-    private final JTextArea chatArea = new JTextArea(20, 40);
+    private final MessageListView chatView = new MessageListView(20, 40);
     
     //üzenet beviteli mező és küldés gomb
     private final JTextField inputField = new JTextField(30);
@@ -73,6 +81,20 @@ public class MainFrame extends JFrame {
     private UUID lastPreviewGroupId = null;
     private int lastPreviewGroupCount = -1;
 
+    //eseménybusz feliratkozások: a saját felhasználó és a listákban szereplő beszélgetések
+    private transient EventBus.Subscription userSubscription;
+    private final transient Map<UUID, EventBus.Subscription> conversationSubscriptions = new HashMap<>();
+    private final transient EdtEvents conversationEvents = new EdtEvents(this::onConversationEvents);
+    //az előnézetben látható beszélgetés
+    private transient UUID previewTopic;
+    //az előnézet sorformázója és amihez készült (beszélgetés + prefix); frissítéskor újrahasznosítjuk
+    private transient Function<Message, String> previewFormat;
+    private transient List<Object> previewFormatKey;
+
+    //beszélgetés azonosító → lista elem, az új üzenet a listában előre kerül
+    private final Map<UUID, String> friendByConversation = new HashMap<>();
+    private final Map<UUID, GroupItem> groupByConversation = new HashMap<>();
+
     //főablak inicializálása
     public MainFrame(AppController controller, String username) {
         super("Offline Chat - " + username);
@@ -82,7 +104,7 @@ public class MainFrame extends JFrame {
         initComponents();     //UI komponensek elrendezése
         bindEvents();         //event kezelők hozzárendelése
         refreshFriends();     //barátok listájának betöltése
-        startLiveRefresh();   //automatikus frissítés indítása (1.5 mp)
+        startLiveRefresh();   //automatikus frissítés indítása (eseménybusz)
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         pack();
         setLocationRelativeTo(null);  //ablak középre igazítása
@@ -137,6 +159,9 @@ public class MainFrame extends JFrame {
         topLeft.add(leftButtons, BorderLayout.SOUTH);
         left.add(topLeft, BorderLayout.NORTH);
         
+        //olvasatlan jelzés a lista elemeken
+        friendsList.setCellRenderer(new UnreadRenderer<String>(f -> controller.getDataStore().getPrivateUnread(username, f)));
+        groupsList.setCellRenderer(new UnreadRenderer<GroupItem>(gi -> controller.getDataStore().getGroupUnread(username, gi.id)));
         //fülrendszer
         leftTabs.addTab("Barátok", new JScrollPane(friendsList));
         leftTabs.addTab("Csoportok", new JScrollPane(groupsList));
@@ -144,8 +169,7 @@ public class MainFrame extends JFrame {
 
         //jobb oldali panel
         JPanel right = new JPanel(new BorderLayout());
-        chatArea.setEditable(false);  // Csak olvasható
-        right.add(new JScrollPane(chatArea), BorderLayout.CENTER);
+        right.add(chatView, BorderLayout.CENTER);  // Virtualizált, csak olvasható
 
         //input panel
         JPanel input = new JPanel();
@@ -270,13 +294,16 @@ public class MainFrame extends JFrame {
     private void sendToFriend(String text) {
         String friend = requireSelectedFriend();
         if (friend == null) return;
-        boolean ok = controller.sendPrivateMessage(username, friend, text);
-        if (!ok) {
-            JOptionPane.showMessageDialog(MainFrame.this, "Nem sikerült üzenetet küldeni. Ellenőrizd, hogy barátok vagytok.", "Hiba", JOptionPane.ERROR_MESSAGE);
-        } else {
-            inputField.setText("");
-            loadFriendConversation(friend);
-        }
+        whenSent(controller.sendPrivateMessageAsync(username, friend, text), result -> {
+            if (result == SendResult.RATE_LIMITED) {
+                JOptionPane.showMessageDialog(MainFrame.this, UiMessages.SEND_RATE_LIMITED, UiMessages.WARN_TITLE, JOptionPane.WARNING_MESSAGE);
+            } else if (!result.isSent()) {
+                JOptionPane.showMessageDialog(MainFrame.this, "Nem sikerült üzenetet küldeni. Ellenőrizd, hogy barátok vagytok.", "Hiba", JOptionPane.ERROR_MESSAGE);
+            } else {
+                inputField.setText("");
+                loadFriendConversation(friend);
+            }
+        });
     }
     //csoport üzenet küldése
     private void sendToGroup(String text) {
@@ -286,13 +313,28 @@ public class MainFrame extends JFrame {
             JOptionPane.showMessageDialog(MainFrame.this, UiMessages.NO_PERM_SEND_GROUP, UiMessages.WARN_TITLE, JOptionPane.WARNING_MESSAGE);
             return;
         }
-        boolean ok = controller.sendGroupMessage(gi.id, username, text);
-        if (!ok) {
-                    JOptionPane.showMessageDialog(MainFrame.this, UiMessages.SEND_FAILED, UiMessages.ERR_TITLE, JOptionPane.ERROR_MESSAGE);
-        } else {
-            inputField.setText("");
-            loadGroupConversation(gi.id, gi.name);
-        }
+        whenSent(controller.sendGroupMessageAsync(gi.id, username, text), result -> {
+            if (result == SendResult.RATE_LIMITED) {
+                JOptionPane.showMessageDialog(MainFrame.this, UiMessages.SEND_RATE_LIMITED, UiMessages.WARN_TITLE, JOptionPane.WARNING_MESSAGE);
+            } else if (!result.isSent()) {
+                JOptionPane.showMessageDialog(MainFrame.this, UiMessages.SEND_FAILED, UiMessages.ERR_TITLE, JOptionPane.ERROR_MESSAGE);
+            } else {
+                inputField.setText("");
+                loadGroupConversation(gi.id, gi.name);
+            }
+        });
+    }
+
+    //küldés a háttérben: a gomb addig tiltva, az eredmény az eseménykezelő szálon érkezik
+    private void whenSent(CompletableFuture<SendResult> sending, Consumer<SendResult> onResult) {
+        sendButton.setEnabled(false);
+        sending.whenComplete((result, error) ->
+            SwingUtilities.invokeLater(() -> {
+                sendButton.setEnabled(true);
+                if (!isDisplayable()) return;
+                if (error != null) error.printStackTrace();
+                onResult.accept(error != null ? SendResult.FAILED : result);
+            }));
     }
     //barát hozzáadás/törlés
     private void bindAddRemoveFriendButtons() {
@@ -300,24 +342,121 @@ public class MainFrame extends JFrame {
         removeFriendButton.addActionListener(e -> removeSelectedFriend());
     }
 
-    //automatikus frissítés indítása
+    //automatikus frissítés indítása: csak a saját eseményekre dolgozik
     private void startLiveRefresh() {
-        final Timer timer = new Timer(1500, e -> onTimerTick());
-        timer.setRepeats(true);
-        timer.start();
-        //timer leállítása az ablak bezárásakor
+        userSubscription = controller.getEventBus().subscribe(username, new EdtEvents(this::onUserEvents));
+        //más folyamat mentése az értesítőn keresztül, újratöltés után eseményként érkezik
+        boolean notified = controller.startChangeListener();
+        //értesítő nélkül marad a fájlfigyelés; a sikeres újratöltés szintén eseményt küld
+        final Timer timer = notified ? null : new Timer(1500, e -> onTimerTick());
+        if (timer != null) {
+            timer.setRepeats(true);
+            timer.start();
+        }
+        //feliratkozások, timer és figyelő leállítása az ablak bezárásakor
         this.addWindowListener(new WindowAdapter() {
-            @Override public void windowClosed(WindowEvent e) { timer.stop(); }
+            @Override public void windowClosed(WindowEvent e) {
+                if (timer != null) timer.stop();
+                userSubscription.close();
+                conversationSubscriptions.values().forEach(EventBus.Subscription::close);
+                conversationSubscriptions.clear();
+                controller.stopChangeListener();
+            }
         });
     }
 
-    //timer tick
+    //timer tick (csak értesítő nélkül): az újratöltés háttérszálon fut
     private void onTimerTick() {
-        controller.reloadStore();              //adatok újratöltése fájlból
+        controller.reloadStoreAsync().whenComplete((reloaded, error) -> {
+            if (error != null) error.printStackTrace();
+        });
+    }
+
+    //a felhasználót érintő események (barátkérés, barátság, csoporttagság, olvasás, teljes újratöltés)
+    private void onUserEvents(List<StoreEvent> events) {
+        if (!isDisplayable()) return;
+        //csak olvasottság változott: elég az olvasatlan jelzéseket újrarajzolni
+        if (events.stream().allMatch(e -> e instanceof StoreEvent.ConversationRead)) {
+            friendsList.repaint();
+            groupsList.repaint();
+            return;
+        }
         refreshLists();                        //barát és csoport listák frissítése
         notifyIncomingRequestsIfNeeded();      //új barátkérés értesítés
-        refreshOpenPrivateWindows();           //nyitott chat ablakok frissítése
-        refreshPreviewAndButton();             //előnézet és gombok frissítése
+        for (StoreEvent e : events) {
+            //újratöltéskor az előnézet is változhatott
+            if (e instanceof StoreEvent.StoreReloaded) {
+                refreshPreviewAndButton();
+                break;
+            }
+        }
+    }
+
+    //a listákban szereplő beszélgetések eseményei: új üzenet előre hozza az elemet,
+    //az előnézetben látható beszélgetésnél az előnézet is frissül
+    private void onConversationEvents(List<StoreEvent> events) {
+        if (!isDisplayable()) return;
+        boolean preview = false;
+        for (StoreEvent e : events) {
+            if (e instanceof StoreEvent.MessageAdded m) moveToTop(m.conversation());
+            UUID c = conversationOf(e);
+            if (c == null || c.equals(previewTopic)) preview = true;
+        }
+        friendsList.repaint();
+        groupsList.repaint();
+        if (preview) refreshPreviewAndButton();
+    }
+
+    //az esemény beszélgetése, vagy null ha mindent érinthet
+    private static UUID conversationOf(StoreEvent e) {
+        return switch (e) {
+            case StoreEvent.MessageAdded m -> m.conversation();
+            case StoreEvent.MessageDeleted m -> m.conversation();
+            case StoreEvent.MemberRoleChanged m -> m.groupId();
+            case StoreEvent.FriendshipChanged f -> DataStore.privateConversationId(f.a(), f.b());
+            default -> null;
+        };
+    }
+
+    //a beszélgetés lista elemének áthelyezése a lista elejére, a kiválasztás megtartásával
+    private void moveToTop(UUID conversation) {
+        String friend = friendByConversation.get(conversation);
+        if (friend != null) moveToTop(friendsModel, friendsList, friend);
+        GroupItem gi = groupByConversation.get(conversation);
+        if (gi != null) moveToTop(groupsModel, groupsList, gi);
+    }
+
+    private static <T> void moveToTop(DefaultListModel<T> model, JList<T> list, T item) {
+        int i = model.indexOf(item);
+        if (i <= 0) return;
+        boolean selected = list.getSelectedIndex() == i;
+        model.remove(i);
+        model.add(0, item);
+        if (selected) list.setSelectedIndex(0);
+    }
+
+    //feliratkozás a listákban szereplő beszélgetésekre, a kikerültekről leiratkozás
+    private void syncConversationSubscriptions() {
+        Set<UUID> wanted = new HashSet<>(friendByConversation.keySet());
+        wanted.addAll(groupByConversation.keySet());
+        conversationSubscriptions.entrySet().removeIf(e -> {
+            if (wanted.contains(e.getKey())) return false;
+            e.getValue().close();
+            return true;
+        });
+        for (UUID c : wanted) {
+            conversationSubscriptions.computeIfAbsent(c, k -> controller.getEventBus().subscribe(k, conversationEvents));
+        }
+    }
+
+    //elemek sorrendje: a legutóbbi aktivitás elöl, üzenet nélküliek utána a megadott sorrendben
+    private <T> void sortByRecency(List<T> items, Map<UUID, T> byConversation) {
+        Map<T, Integer> rank = new HashMap<>();
+        for (UUID c : controller.getDataStore().getRecentConversations(username, Integer.MAX_VALUE)) {
+            T item = byConversation.get(c);
+            if (item != null) rank.put(item, rank.size());
+        }
+        items.sort(Comparator.comparingInt(item -> rank.getOrDefault(item, Integer.MAX_VALUE)));
     }
 
     //listák frissítése
@@ -339,13 +478,6 @@ public class MainFrame extends JFrame {
         }
     }
 
-    //nyitott privát chat ablakok frissítése
-    private void refreshOpenPrivateWindows() {
-        for (PrivateChatWindow w : openChats.values()) {
-            w.refreshIfVisible();
-        }
-    }
-
     //chat előnézet frissítése
     private void refreshPreviewAndButton() {
         //privát chat előnézet frissítése
@@ -379,22 +511,21 @@ public class MainFrame extends JFrame {
 
     private void showAddFriendDialog() {
         DataStore store = controller.getDataStore();
-        Set<String> all = store.getAllUsernames();
         Set<String> existing = store.getFriends(username);
-        List<String> choices = new ArrayList<>();
-        for (String u : all) {
-            if (!u.equals(username) && !existing.contains(u)) {
-                choices.add(u);
-            }
-        }
-        if (choices.isEmpty()) {
+        if (store.searchUsernames("", 1, u -> u.equals(username) || existing.contains(u)).isEmpty()) {
             JOptionPane.showMessageDialog(MainFrame.this, "Nincsenek elérhető felhasználók hozzáadáshoz.", "Info", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
-        String selected = (String) JOptionPane.showInputDialog(MainFrame.this, "Válassz felhasználót:", "Barát hozzáadása", JOptionPane.PLAIN_MESSAGE, null, choices.toArray(), choices.get(0));
+        //üres keresésnél a barátok barátai (ajánlások) jelennek meg elsőként
+        String selected = UserPickerDialog.pick(MainFrame.this, "Barát hozzáadása", q -> {
+            if (q.isBlank()) {
+                List<String> suggested = store.suggestFriends(username, UserPickerDialog.MAX_RESULTS);
+                if (!suggested.isEmpty()) return suggested;
+            }
+            return store.searchUsernames(q, UserPickerDialog.MAX_RESULTS, u -> u.equals(username) || existing.contains(u));
+        });
         if (selected != null) {
-            boolean ok = controller.getDataStore().sendFriendRequest(username, selected);
-            controller.saveStore();
+            boolean ok = controller.sendFriendRequest(username, selected);
             if (!ok) JOptionPane.showMessageDialog(MainFrame.this, "A kérés elküldése sikertelen vagy már létezik.", "Hiba", JOptionPane.ERROR_MESSAGE);
             else JOptionPane.showMessageDialog(MainFrame.this, "Barátkérés elküldve.", "Siker", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -408,8 +539,7 @@ public class MainFrame extends JFrame {
         }
         int confirm = JOptionPane.showConfirmDialog(MainFrame.this, "Tényleg törölni szeretnéd a barátot?", "Megerősítés", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            boolean ok = controller.getDataStore().removeFriend(username, sel);
-            controller.saveStore();
+            boolean ok = controller.removeFriend(username, sel);
             if (!ok) JOptionPane.showMessageDialog(MainFrame.this, "Nem sikerült eltávolítani a barátot.", "Hiba", JOptionPane.ERROR_MESSAGE);
             else refreshFriends();
         }
@@ -473,8 +603,7 @@ public class MainFrame extends JFrame {
         accept.addActionListener(ev -> {
             String sel = reqList.getSelectedValue();
             if (sel == null) return;
-            boolean ok = store.acceptFriendRequest(username, sel);
-            controller.saveStore();
+            boolean ok = controller.acceptFriendRequest(username, sel);
             if (!ok) JOptionPane.showMessageDialog(d, "Elfogadás sikertelen.", "Hiba", JOptionPane.ERROR_MESSAGE);
             else {
                 model.removeElement(sel);
@@ -485,8 +614,7 @@ public class MainFrame extends JFrame {
         reject.addActionListener(ev -> {
             String sel = reqList.getSelectedValue();
             if (sel == null) return;
-            boolean ok = store.rejectFriendRequest(username, sel);
-            controller.saveStore();
+            boolean ok = controller.rejectFriendRequest(username, sel);
             if (!ok) JOptionPane.showMessageDialog(d, "Elutasítás sikertelen.", "Hiba", JOptionPane.ERROR_MESSAGE);
             else model.removeElement(sel);
         });
@@ -519,8 +647,7 @@ public class MainFrame extends JFrame {
         cancel.addActionListener(ev -> {
             String sel = list.getSelectedValue();
             if (sel == null) return;
-            boolean ok = store.cancelOutgoingFriendRequest(username, sel);
-            controller.saveStore();
+            boolean ok = controller.cancelOutgoingFriendRequest(username, sel);
             if (!ok) JOptionPane.showMessageDialog(d, "Visszavonás sikertelen.", "Hiba", JOptionPane.ERROR_MESSAGE);
             else model.removeElement(sel);
         });
@@ -531,15 +658,30 @@ public class MainFrame extends JFrame {
     //barát chat előnézet betöltése és megjelenítése
     private void loadFriendConversation(String friend) {
         DataStore store = controller.getDataStore();
+        previewTopic = DataStore.privateConversationId(username, friend);
         List<Message> msgs = store.getPrivateMessages(username, friend);
-        ChatUi.renderMessages(chatArea, msgs, store::getUsernameById, "");
+        chatView.show(msgs, previewFormat(""));
+        if (!msgs.isEmpty()) controller.markRead(username, previewTopic, msgs.size() - 1, msgs.get(msgs.size() - 1));
+    }
+
+    //az előnézeti beszélgetés formázója; csak beszélgetés- vagy prefixváltáskor készül új
+    private Function<Message, String> previewFormat(String prefix) {
+        List<Object> key = List.of(previewTopic, prefix);
+        if (!key.equals(previewFormatKey)) {
+            previewFormatKey = key;
+            //a tárolót hívásonként kérjük el, újratöltés után is az aktuálisból olvas
+            previewFormat = ChatUi.plainLine(id -> controller.getDataStore().getUsernameById(id), prefix);
+        }
+        return previewFormat;
     }
 
     //csoport chat előnézet betöltése és megjelenítése
     private void loadGroupConversation(UUID groupId, String groupName) {
         DataStore store = controller.getDataStore();
+        previewTopic = groupId;
         List<Message> msgs = store.getGroupMessages(groupId);
-        ChatUi.renderMessages(chatArea, msgs, store::getUsernameById, "[" + groupName + "] ");
+        chatView.show(msgs, previewFormat("[" + groupName + "] "));
+        if (!msgs.isEmpty()) controller.markRead(username, groupId, msgs.size() - 1, msgs.get(msgs.size() - 1));
     }
 
     //barát lista frissítése
@@ -547,9 +689,13 @@ public class MainFrame extends JFrame {
         Set<String> friends = controller.getDataStore().getFriends(username);
         if (friends == null) return;
 
-        //rendezés abc sorrendbe
+        //rendezés abc sorrendbe, majd legutóbbi aktivitás szerint
         List<String> sorted = new ArrayList<>(friends);
         Collections.sort(sorted);
+        friendByConversation.clear();
+        for (String f : sorted) friendByConversation.put(DataStore.privateConversationId(username, f), f);
+        sortByRecency(sorted, friendByConversation);
+        syncConversationSubscriptions();
         
         //változás detektálása
         boolean changed = sorted.size() != friendsModel.size();
@@ -570,24 +716,27 @@ public class MainFrame extends JFrame {
 
     //csoport lista frissítése
     private void refreshGroups() {
-        Map<UUID, String> groups = controller.getDataStore().getAllGroups();
-        if (groups == null) return;
+        DataStore store = controller.getDataStore();
         
         //kiválasztás megőrzése
         GroupItem selected = groupsList.getSelectedValue();
         groupsModel.clear();
         
-        //szűrés: csak azok a csoportok, ahol tag a felhasználó
+        //csak azok a csoportok, ahol tag a felhasználó (fordított indexből)
         List<GroupItem> items = new ArrayList<>();
-        for (Map.Entry<UUID, String> e : groups.entrySet()) {
-            Set<String> members = controller.getGroupMembers(e.getKey());
-            if (members != null && members.contains(username)) {
-                items.add(new GroupItem(e.getKey(), e.getValue()));
+        for (UUID groupId : store.getGroupsOf(username)) {
+            Group g = store.getGroup(groupId);
+            if (g != null) {
+                items.add(new GroupItem(groupId, g.getName()));
             }
         }
         
-        //rendezés abc sorrendbee
+        //rendezés abc sorrendbe, majd legutóbbi aktivitás szerint
         items.sort(Comparator.comparing(a -> a.name.toLowerCase()));
+        groupByConversation.clear();
+        for (GroupItem gi : items) groupByConversation.put(gi.id, gi);
+        sortByRecency(items, groupByConversation);
+        syncConversationSubscriptions();
         for (GroupItem gi : items) groupsModel.addElement(gi);
         if (selected != null) groupsList.setSelectedValue(selected, true);
     }
@@ -0,0 +1,54 @@
+package ui;
+
+import model.Message;
+
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * Lusta lista modell egy beszélgetés üzeneteire.
+ * Nem másol: a kapott megváltozhatatlan üzenet változatot tartja, és csak a látható sorokat
+ * kérdezik le tőle. Hozzáfűzéskor csak az új tartományról értesít.
+ */
+final class MessageListModel extends AbstractListModel<Message> {
+
+    private List<Message> messages = List.of();
+
+    /**
+     * Új változat beállítása.
+     * @param next az aktuális üzenetek
+     * @return true ha csak hozzáfűzés történt
+     */
+    boolean update(List<Message> next) {
+        List<Message> prev = messages;
+        if (next == prev) return true;
+        messages = next;
+        int n = prev.size();
+        //a változatok közös előtagon osztoznak: ha az utolsó régi a helyén van, csak hozzáfűzés történt
+        if (n <= next.size() && (n == 0 || prev.get(n - 1).getId().equals(next.get(n - 1).getId()))) {
+            if (next.size() > n) fireIntervalAdded(this, n, next.size() - 1);
+            return true;
+        }
+        if (n > next.size()) fireIntervalRemoved(this, next.size(), n - 1);
+        if (!next.isEmpty()) fireContentsChanged(this, 0, next.size() - 1);
+        return false;
+    }
+
+    /**
+     * Az aktuális változat.
+     * @return üzenetek
+     */
+    List<Message> messages() {
+        return messages;
+    }
+
+    @Override
+    public int getSize() {
+        return messages.size();
+    }
+
+    @Override
+    public Message getElementAt(int index) {
+        return messages.get(index);
+    }
+}
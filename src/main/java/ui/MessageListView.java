@@ -0,0 +1,146 @@
+package ui;
+
+import model.Message;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Virtualizált üzenet nézet: rögzített sormagasságú JList lusta modellel.
+ * Csak a látható sorok formázódnak és rajzolódnak, így a memória és az elrendezés költsége
+ * nem nő az előzmények hosszával. A hosszú sor a cellában levágódik, teljes szövege
+ * buborékban látszik. Lapozó modellnél a tetejéhez közeledve jelez, hogy jöhet a régebbi lap.
+ */
+final class MessageListView extends JScrollPane {
+
+    /** Ennyi sorra a tetejétől már kérjük a régebbi lapot */
+    private static final int NEAR_TOP_ROWS = 5;
+
+    private final ListModel<Message> model;
+    private final JList<Message> list;
+    private Function<Message, String> formatter = Message::getContent;
+
+    /** A tetejére érés jelzése csak az első aljára görgetés után él (nyitáskor a nézet még a tetején áll) */
+    private boolean nearTopArmed;
+
+    /**
+     * Nézet a teljes üzenet változatot tartó lusta modellel (lásd show).
+     * @param rows látható sorok száma
+     * @param columns látható oszlopok száma (karakterben)
+     */
+    MessageListView(int rows, int columns) {
+        this(new MessageListModel(), rows, columns);
+    }
+
+    /**
+     * Nézet tetszőleges modellel.
+     * @param model üzenet modell
+     * @param rows látható sorok száma
+     * @param columns látható oszlopok száma (karakterben)
+     */
+    MessageListView(ListModel<Message> model, int rows, int columns) {
+        this.model = model;
+        this.list = new JList<>(model) {
+            @Override
+            public String getToolTipText(MouseEvent e) {
+                int i = locationToIndex(e.getPoint());
+                return i < 0 ? null : formatter.apply(model.getElementAt(i));
+            }
+        };
+        setViewportView(list);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        FontMetrics fm = list.getFontMetrics(list.getFont());
+        //rögzített méretek: a JList így nem méri végig az összes elemet
+        list.setFixedCellHeight(fm.getHeight() + 2);
+        list.setFixedCellWidth(fm.charWidth('m') * columns);
+        list.setVisibleRowCount(rows);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean selected, boolean focus) {
+                return super.getListCellRendererComponent(l, formatter.apply((Message) value), index, selected, focus);
+            }
+        });
+        ToolTipManager.sharedInstance().registerComponent(list);
+        //a cella szélessége a nézethez igazodik
+        getViewport().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                int w = getViewport().getWidth();
+                if (w > 0 && w != list.getFixedCellWidth()) list.setFixedCellWidth(w);
+            }
+        });
+    }
+
+    /**
+     * Üzenetek megjelenítése; ha a nézet az alján volt, ott is marad.
+     * @param msgs az aktuális üzenetek (megváltozhatatlan változat)
+     * @param lineFormatter egy üzenet sora
+     */
+    void show(List<Message> msgs, Function<Message, String> lineFormatter) {
+        boolean atBottom = isAtBottom();
+        setFormatter(lineFormatter);
+        boolean appended = ((MessageListModel) model).update(msgs);
+        if ((atBottom || !appended) && !msgs.isEmpty()) list.ensureIndexIsVisible(msgs.size() - 1);
+    }
+
+    /**
+     * Sorformázó beállítása.
+     * @param lineFormatter egy üzenet sora
+     */
+    void setFormatter(Function<Message, String> lineFormatter) {
+        if (lineFormatter == formatter) return;
+        formatter = lineFormatter;
+        list.repaint();
+    }
+
+    /**
+     * Jelzés, ha a felhasználó a lista tetejéhez közelít.
+     * @param onNearTop az eseménykezelő szálon hívott művelet
+     */
+    void onNearTop(Runnable onNearTop) {
+        getVerticalScrollBar().addAdjustmentListener((AdjustmentEvent e) -> {
+            JScrollBar bar = getVerticalScrollBar();
+            if (!nearTopArmed || bar.getMaximum() <= bar.getVisibleAmount()) return;
+            if (e.getValue() <= NEAR_TOP_ROWS * list.getFixedCellHeight()) onNearTop.run();
+        });
+    }
+
+    /**
+     * Görgetés az utolsó üzenetre, az elrendezés után.
+     */
+    void scrollToBottom() {
+        SwingUtilities.invokeLater(() -> {
+            int n = model.getSize();
+            if (n > 0) list.ensureIndexIsVisible(n - 1);
+            nearTopArmed = true;
+        });
+    }
+
+    /**
+     * A látott tartalom helyben tartása, miután a modell elejére sorok kerültek.
+     * @param rows az elé fűzött sorok száma
+     */
+    void keepPositionAfterPrepend(int rows) {
+        if (rows <= 0) return;
+        JViewport viewport = getViewport();
+        Point p = viewport.getViewPosition();
+        //a lista új méretének érvényesítése, különben a pozíció a régi magassághoz igazodna
+        validate();
+        viewport.setViewPosition(new Point(p.x, p.y + rows * list.getFixedCellHeight()));
+    }
+
+    /**
+     * Az utolsó sor látszik-e.
+     * @return true ha a nézet az alján áll
+     */
+    boolean isAtBottom() {
+        JScrollBar bar = getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+    }
+}
@@ -0,0 +1,151 @@
+package ui;
+
+import model.Message;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Növekményes üzenet megjelenítő egy szövegterülethez.
+ * Megjegyzi, mely üzenetek (azonosító szerint) és milyen hosszú sorokkal vannak már kint:
+ * hozzáfűzéskor csak az új sorok kerülnek a dokumentumba, törléskor csak a törölt sorok
+ * tűnnek el a helyükről. A teljes újrarajzolás csak más beszélgetésnél vagy más
+ * formázásnál történik.
+ */
+final class MessageRenderer {
+
+    private static final String CLIENT_KEY = MessageRenderer.class.getName();
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final JTextArea area;
+    private final List<UUID> shown = new ArrayList<>();
+    private int[] lineLengths = new int[64];
+
+    /** A kint lévő sorok formázását meghatározó kulcs (prefix, saját név, időbélyeg) */
+    private Object format;
+
+    private MessageRenderer(JTextArea area) {
+        this.area = area;
+    }
+
+    /**
+     * A szövegterülethez tartozó megjelenítő (első híváskor létrejön).
+     * @param area szövegterület
+     * @return megjelenítő
+     */
+    static MessageRenderer of(JTextArea area) {
+        Object r = area.getClientProperty(CLIENT_KEY);
+        if (r instanceof MessageRenderer renderer) return renderer;
+        MessageRenderer renderer = new MessageRenderer(area);
+        area.putClientProperty(CLIENT_KEY, renderer);
+        return renderer;
+    }
+
+    /**
+     * Üzenetek megjelenítése; csak az eltérés kerül a dokumentumba.
+     * @param msgs az aktuális üzenetek
+     * @param format a formázás kulcsa; eltérő kulcsnál teljes újrarajzolás
+     * @param line sor formázó (a sortörést a megjelenítő teszi hozzá)
+     * @return az újonnan formázott sorok száma
+     */
+    int render(List<Message> msgs, Object format, LineFormatter line) {
+        if (!format.equals(this.format)) {
+            this.format = format;
+            return replaceAll(msgs, line);
+        }
+        int n = shown.size();
+        //a változatok közös előtagon osztoznak: ha az utolsó kint lévő a helyén van, csak hozzáfűzés történt
+        if (n <= msgs.size() && (n == 0 || shown.get(n - 1).equals(msgs.get(n - 1).getId()))) {
+            if (n == msgs.size()) return 0;
+            appendFrom(msgs, n, line);
+            return msgs.size() - n;
+        }
+        return patch(msgs, line);
+    }
+
+    /**
+     * Elfelejti a kint lévő állapotot (a következő megjelenítés teljes lesz).
+     */
+    void reset() {
+        format = null;
+    }
+
+    //törölt sorok eltávolítása a helyükről, utána az új sorok hozzáfűzése
+    private int patch(List<Message> msgs, LineFormatter line) {
+        int n = shown.size();
+        boolean[] keep = new boolean[n];
+        //a megmaradó sorok a kért lista előtagját adják, a többi utánuk kerül ki
+        int j = 0;
+        for (int i = 0; i < n && j < msgs.size(); i++) {
+            if (shown.get(i).equals(msgs.get(j).getId())) {
+                keep[i] = true;
+                j++;
+            }
+        }
+        //más beszélgetés: teljes újrarajzolás
+        if (j == 0) return replaceAll(msgs, line);
+        Document doc = area.getDocument();
+        int offset = 0;
+        for (int i = 0; i < n; i++) offset += lineLengths[i];
+        //hátulról, így a korábbi sorok pozíciója nem változik
+        try {
+            int end = offset;
+            for (int i = n - 1; i >= 0; i--) {
+                offset -= lineLengths[i];
+                if (!keep[i]) {
+                    int start = offset;
+                    int len = end - start;
+                    //egymás melletti törölt sorok egy lépésben
+                    while (i > 0 && !keep[i - 1]) {
+                        i--;
+                        offset -= lineLengths[i];
+                        len += lineLengths[i];
+                        start = offset;
+                    }
+                    doc.remove(start, len);
+                }
+                end = offset;
+            }
+        } catch (BadLocationException e) {
+            return replaceAll(msgs, line);
+        }
+        int w = 0;
+        for (int i = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            shown.set(w, shown.get(i));
+            lineLengths[w++] = lineLengths[i];
+        }
+        shown.subList(w, n).clear();
+        if (j < msgs.size()) appendFrom(msgs, j, line);
+        return msgs.size() - j;
+    }
+
+    private int replaceAll(List<Message> msgs, LineFormatter line) {
+        shown.clear();
+        area.setText("");
+        appendFrom(msgs, 0, line);
+        return msgs.size();
+    }
+
+    //sorok összefűzése és egyetlen beszúrás a dokumentum végére
+    private void appendFrom(List<Message> msgs, int from, LineFormatter line) {
+        StringBuilder sb = new StringBuilder();
+        if (lineLengths.length < msgs.size()) lineLengths = Arrays.copyOf(lineLengths, Math.max(msgs.size(), lineLengths.length * 2));
+        for (int i = from; i < msgs.size(); i++) {
+            Message m = msgs.get(i);
+            int start = sb.length();
+            //közvetlenül a közös pufferbe, soronkénti köztes szöveg nélkül
+            line.appendTo(sb, m);
+            sb.append(NEWLINE);
+            lineLengths[shown.size()] = sb.length() - start;
+            shown.add(m.getId());
+        }
+        area.append(sb.toString());
+        area.setCaretPosition(area.getDocument().getLength());
+    }
+}
@@ -0,0 +1,106 @@
+package ui;
+
+import controller.MessagePage;
+import model.Message;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lapozó lista modell: a beszélgetésnek csak a betöltött, összefüggő szeletét tartja.
+ * Nyitáskor a legfrissebb lap kerül bele, régebbi lapok elé, újabb üzenetek mögé fűződnek.
+ * A szomszédos lapok illeszkedését az átfedő üzenet azonosítója ellenőrzi, így egy közbeni
+ * törlés nem hagy hézagot vagy ismétlést.
+ */
+final class PagedMessageModel extends AbstractListModel<Message> {
+
+    private final List<Message> items = new ArrayList<>();
+
+    /** Az első betöltött üzenet sorszáma a beszélgetésben */
+    private int first;
+
+    /**
+     * Az első betöltött üzenet sorszáma.
+     * @return sorszám
+     */
+    int first() {
+        return first;
+    }
+
+    /**
+     * Az utolsó betöltött utáni sorszám.
+     * @return sorszám
+     */
+    int end() {
+        return first + items.size();
+    }
+
+    /**
+     * Tartalom cseréje egy lapra.
+     * @param page az új tartalom
+     */
+    void reset(MessagePage page) {
+        int old = items.size();
+        items.clear();
+        items.addAll(page.messages());
+        first = page.from();
+        if (old > items.size()) fireIntervalRemoved(this, items.size(), old - 1);
+        if (!items.isEmpty()) fireContentsChanged(this, 0, items.size() - 1);
+    }
+
+    /**
+     * Régebbi lap elé fűzése. A lapnak az első betöltött üzenettel kell végződnie (átfedés).
+     * @param page a [first - n, first + 1) lap
+     * @return az elé fűzött sorok száma, vagy -1 ha a lap nem illeszkedik
+     */
+    int prepend(MessagePage page) {
+        List<Message> older = page.messages();
+        if (items.isEmpty() || page.end() != first + 1 || older.isEmpty()
+                || !older.get(older.size() - 1).getId().equals(items.get(0).getId())) {
+            return -1;
+        }
+        int n = older.size() - 1;
+        if (n == 0) return 0;
+        items.addAll(0, older.subList(0, n));
+        first -= n;
+        fireIntervalAdded(this, 0, n - 1);
+        return n;
+    }
+
+    /**
+     * Újabb üzenetek mögé fűzése. Nem üres modellnél a lapnak az utolsó betöltött üzenettel
+     * kell kezdődnie (átfedés).
+     * @param page a [end - 1, ...) lap, üres modellnél a [end, ...) lap
+     * @return false ha a lap nem illeszkedik
+     */
+    boolean append(MessagePage page) {
+        List<Message> newer = page.messages();
+        int skip = 0;
+        if (!items.isEmpty()) {
+            if (page.from() != end() - 1 || newer.isEmpty()
+                    || !newer.get(0).getId().equals(items.get(items.size() - 1).getId())) {
+                return false;
+            }
+            skip = 1;
+        } else if (page.from() != end()) {
+            return false;
+        }
+        int n = newer.size() - skip;
+        if (n <= 0) return true;
+        int at = items.size();
+        items.addAll(newer.subList(skip, newer.size()));
+        fireIntervalAdded(this, at, at + n - 1);
+        return true;
+    }
+
+    @Override
+    public int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public Message getElementAt(int index) {
+        return items.get(index);
+    }
+}
@@ -1,9 +1,12 @@
 package ui;
 
 import controller.AppController;
-import model.Message;
+import controller.MessagePage;
+import controller.SendResult;
+import persistence.DataStore;
 
-import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Privát chat ablak két felhasználó között.
@@ -25,8 +28,13 @@ public class PrivateChatWindow extends BaseChatWindow {
     }
 
     @Override
-    protected List<Message> fetchMessages() {
-        return controller.getDataStore().getPrivateMessages(me, other);
+    protected UUID conversationId() {
+        return DataStore.privateConversationId(me, other);
+    }
+
+    @Override
+    protected MessagePage fetchPage(int from, int to) {
+        return controller.getPrivateMessagesPage(me, other, from, to);
     }
 
     @Override
@@ -35,8 +43,8 @@ public class PrivateChatWindow extends BaseChatWindow {
     }
 
     @Override
-    protected boolean sendInternal(String text) {
-        return controller.sendPrivateMessage(me, other, text);
+    protected CompletableFuture<SendResult> sendInternal(String text) {
+        return controller.sendPrivateMessageAsync(me, other, text);
     }
 
     /**
@@ -19,6 +19,8 @@ public final class UiMessages {
     public static final String SELECT_GROUP = "Válassz egy csoportot.";
     /** Küldés sikertelen */
     public static final String SEND_FAILED = "Küldés sikertelen.";
+    /** Túl sok üzenet rövid idő alatt */
+    public static final String SEND_RATE_LIMITED = "Túl sok üzenet rövid idő alatt, várj egy kicsit.";
     /** Nincs jogosultság csoport üzenet küldésre */
     public static final String NO_PERM_SEND_GROUP = "Nincs jogosultságod üzenetet küldeni ebbe a csoportba.";
     /** Nincs jogosultság tag eltávolítására */
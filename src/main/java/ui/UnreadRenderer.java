@@ -0,0 +1,34 @@
+package ui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * Lista elem megjelenítő olvasatlan üzenet jelzéssel: "név (3)", félkövéren.
+ * A számot rajzoláskor kérdezi le, így csak a látható elemekre kerül sor.
+ * @param <T> lista elem típusa
+ */
+final class UnreadRenderer<T> extends DefaultListCellRenderer {
+
+    private final transient ToIntFunction<T> unread;
+
+    /**
+     * @param unread elem → olvasatlan üzenetek száma
+     */
+    UnreadRenderer(ToIntFunction<T> unread) {
+        this.unread = unread;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        int n = value == null ? 0 : unread.applyAsInt((T) value);
+        if (n > 0) {
+            setText(value + " (" + n + ")");
+            setFont(getFont().deriveFont(Font.BOLD));
+        }
+        return this;
+    }
+}
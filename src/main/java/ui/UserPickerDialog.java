@@ -0,0 +1,133 @@
+package ui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/**
+ * Felhasználó választó dialógus gépelés közbeni kereséssel.
+ * A találatokat a megadott keresőfüggvény adja (pl. DataStore felhasználónév index),
+ * így a lista sosem tartalmazza az összes felhasználót.
+ */
+public class UserPickerDialog extends JDialog {
+
+    /** Egyszerre megjelenített találatok maximális száma */
+    public static final int MAX_RESULTS = 50;
+
+    private final transient Function<String, List<String>> search;
+    private final JTextField queryField = new JTextField(20);
+    private final DefaultListModel<String> resultModel = new DefaultListModel<>();
+    private final JList<String> resultList = new JList<>(resultModel);
+    private final boolean multiple;
+    private final transient List<String> selected = new ArrayList<>();
+
+    /**
+     * Felhasználó választó dialógus konstruktor.
+     * @param owner szülő ablak
+     * @param title ablak címe
+     * @param search keresőfüggvény: szöveg → legfeljebb MAX_RESULTS találat
+     */
+    public UserPickerDialog(Window owner, String title, Function<String, List<String>> search) {
+        this(owner, title, search, false);
+    }
+
+    private UserPickerDialog(Window owner, String title, Function<String, List<String>> search, boolean multiple) {
+        super(owner, title, ModalityType.APPLICATION_MODAL);
+        this.search = search;
+        this.multiple = multiple;
+        initComponents();
+        updateResults();
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Dialógus megjelenítése és a kiválasztott név visszaadása.
+     * @param owner szülő komponens
+     * @param title ablak címe
+     * @param search keresőfüggvény
+     * @return kiválasztott felhasználónév vagy null
+     */
+    public static String pick(Component owner, String title, Function<String, List<String>> search) {
+        List<String> picked = show(owner, title, search, false);
+        return picked.isEmpty() ? null : picked.get(0);
+    }
+
+    /**
+     * Dialógus megjelenítése több név kijelölésével (Ctrl/Shift + kattintás).
+     * @param owner szülő komponens
+     * @param title ablak címe
+     * @param search keresőfüggvény
+     * @return kiválasztott felhasználónevek, mégse esetén üres
+     */
+    public static List<String> pickMany(Component owner, String title, Function<String, List<String>> search) {
+        return show(owner, title, search, true);
+    }
+
+    private static List<String> show(Component owner, String title, Function<String, List<String>> search, boolean multiple) {
+        Window w = owner == null ? null : SwingUtilities.getWindowAncestor(owner);
+        if (owner instanceof Window) w = (Window) owner;
+        UserPickerDialog d = new UserPickerDialog(w, title, search, multiple);
+        d.setVisible(true);
+        return d.selected;
+    }
+
+    private void initComponents() {
+        resultList.setSelectionMode(multiple ? ListSelectionModel.MULTIPLE_INTERVAL_SELECTION : ListSelectionModel.SINGLE_SELECTION);
+        resultList.setVisibleRowCount(10);
+
+        JPanel top = new JPanel(new BorderLayout(4, 4));
+        top.add(new JLabel("Keresés:"), BorderLayout.WEST);
+        top.add(queryField, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel();
+        JButton ok = new JButton("OK");
+        JButton cancel = new JButton("Mégse");
+        buttons.add(ok);
+        buttons.add(cancel);
+
+        JPanel main = new JPanel(new BorderLayout(4, 4));
+        main.setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 6));
+        main.add(top, BorderLayout.NORTH);
+        main.add(new JScrollPane(resultList), BorderLayout.CENTER);
+        main.add(buttons, BorderLayout.SOUTH);
+        setContentPane(main);
+
+        //minden leütésre új keresés
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) { updateResults(); }
+            @Override public void removeUpdate(DocumentEvent e) { updateResults(); }
+            @Override public void changedUpdate(DocumentEvent e) { updateResults(); }
+        });
+        //enter a keresőmezőben: első (vagy kijelölt) találat
+        queryField.addActionListener(e -> accept());
+        resultList.addMouseListener(new MouseAdapter() {
+            @Override public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) accept();
+            }
+        });
+        ok.addActionListener(e -> accept());
+        cancel.addActionListener(e -> dispose());
+    }
+
+    //találatok frissítése a keresőmező alapján
+    private void updateResults() {
+        List<String> found = search.apply(queryField.getText());
+        resultModel.clear();
+        for (String name : found) resultModel.addElement(name);
+        if (!resultModel.isEmpty()) resultList.setSelectedIndex(0);
+    }
+
+    private void accept() {
+        List<String> values = resultList.getSelectedValuesList();
+        if (values.isEmpty()) return;
+        selected.addAll(values);
+        dispose();
+    }
+}
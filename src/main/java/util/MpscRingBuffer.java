@@ -0,0 +1,123 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Korlátos, zármentes, több termelős - egy fogyasztós gyűrűpuffer.
+ * A termelők CAS-sal foglalnak helyet a farok számlálón, a rekeszek sorszáma jelzi,
+ * mikor írható és mikor olvasható egy hely. A fogyasztói oldalt egyetlen szál hívhatja.
+ *
+ * @param <E> elemek típusa
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+
+    /** Rekeszenkénti sorszám: == pozíció: írható, == pozíció + 1: olvasható */
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /** Következő olvasandó pozíció, csak a fogyasztó írja */
+    private volatile long head;
+
+    /**
+     * Gyűrűpuffer létrehozása.
+     * @param capacity kapacitás (felfelé kettő hatványára kerekítve)
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("Túl kicsi kapacitás: " + capacity);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+    }
+
+    /**
+     * Elem beszúrása, ha van hely (bármely szálról hívható).
+     * @param e elem (nem lehet null)
+     * @return false ha a puffer tele van
+     */
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        while (true) {
+            long t = tail.get();
+            int idx = (int) t & mask;
+            long diff = sequences.getAcquire(idx) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    items.setPlain(idx, e);
+                    //publikálás: a fogyasztó innentől olvashatja
+                    sequences.setRelease(idx, t + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Következő elem kivétele (csak a fogyasztó szál hívhatja).
+     * @return elem vagy null, ha nincs olvasható elem
+     */
+    public E poll() {
+        long h = head;
+        int idx = (int) h & mask;
+        if (sequences.getAcquire(idx) != h + 1) return null;
+        E e = items.getPlain(idx);
+        items.setPlain(idx, null);
+        //a rekesz egy körrel később újra írható
+        sequences.setRelease(idx, h + mask + 1);
+        head = h + 1;
+        return e;
+    }
+
+    /**
+     * Legfeljebb limit elem kivétele egy menetben (csak a fogyasztó szál hívhatja).
+     * @param sink az elemeket fogadó művelet
+     * @param limit maximális darabszám
+     * @return kivett elemek száma
+     */
+    public int drain(Consumer<? super E> sink, int limit) {
+        int n = 0;
+        E e;
+        while (n < limit && (e = poll()) != null) {
+            sink.accept(e);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Hozzávetőleges elemszám (konkurens használat mellett csak becslés).
+     * @return elemek száma
+     */
+    public int size() {
+        long n = tail.get() - head;
+        return (int) Math.max(0, Math.min(n, mask + 1L));
+    }
+
+    /**
+     * Üres-e a puffer (hozzávetőleges).
+     * @return true ha nincs elem
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * A puffer kapacitása.
+     * @return kapacitás
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
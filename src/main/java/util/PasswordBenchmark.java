@@ -0,0 +1,72 @@
+package util;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bcrypt áteresztőképesség mérése költségszintenként, a hitelesítési kapacitás méretezéséhez.
+ * Használat: {@code java util.PasswordBenchmark [minCost] [maxCost] [szálak]}
+ */
+public final class PasswordBenchmark {
+
+    private static final String PASSWORD = "benchmark-jelszo";
+
+    private PasswordBenchmark() {}
+
+    /**
+     * Mérés indítása.
+     * @param args minimális költség, maximális költség, szálak száma (mind opcionális)
+     * @throws Exception ha egy mérő szál hibára fut
+     */
+    public static void main(String[] args) throws Exception {
+        int minCost = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int maxCost = args.length > 1 ? Integer.parseInt(args[1]) : 13;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("bcrypt, %d szál, keret: %d ms%n", threads, PasswordUtil.configuredBudget().toMillis());
+        System.out.printf("%5s %12s %12s %12s %12s%n", "cost", "hash ms", "verify ms", "hash/s", "verify/s");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int c = minCost; c <= maxCost; c++) {
+                final int cost = c;
+                String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost));
+                double hashMs = PasswordUtil.measureNanos(cost) / 1e6;
+                double verifyMs = measureVerifyNanos(hash) / 1e6;
+                //legalább fél másodpercnyi munka szálanként, de legalább egy művelet
+                int perThread = Math.max(1, (int) (500 / Math.max(hashMs, 0.001)));
+                double hashRate = throughput(pool, threads, perThread, () -> BCrypt.hashpw(PASSWORD, BCrypt.gensalt(cost)));
+                double verifyRate = throughput(pool, threads, perThread, () -> BCrypt.checkpw(PASSWORD, hash));
+                System.out.printf("%5d %12.2f %12.2f %12.1f %12.1f%n", cost, hashMs, verifyMs, hashRate, verifyRate);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.printf("kalibrált költség: %d%n", PasswordUtil.calibrate(PasswordUtil.configuredBudget()));
+    }
+
+    private static long measureVerifyNanos(String hash) {
+        BCrypt.checkpw(PASSWORD, hash);
+        long start = System.nanoTime();
+        BCrypt.checkpw(PASSWORD, hash);
+        return System.nanoTime() - start;
+    }
+
+    //műveletek másodpercenként, az összes szálon együtt
+    private static double throughput(ExecutorService pool, int threads, int perThread, Runnable op) throws Exception {
+        List<Future<?>> running = new ArrayList<>(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            running.add(pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) op.run();
+            }));
+        }
+        for (Future<?> f : running) f.get();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return threads * (double) perThread / seconds;
+    }
+}
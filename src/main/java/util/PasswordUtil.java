@@ -2,20 +2,45 @@ package util;
 
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.time.Duration;
+import java.util.Arrays;
+
 /**
  * Jelszókezelő utility osztály bcrypt titkosítással.
+ * A hash költségét induláskor a géphez kalibráljuk: a legnagyobb költség, amelynél egy
+ * ellenőrzés még belefér a késleltetési keretbe. A költséget a hash maga tárolja,
+ * így a régebbi, gyengébb hash-ek bejelentkezéskor felismerhetők és újrahash-elhetők.
  */
 public final class PasswordUtil {
 
+    /** Alapértelmezett (kalibrálás előtti) költség */
+    public static final int DEFAULT_COST = 10;
+
+    /** Ennél kisebb költséget a kalibrálás sem választ */
+    public static final int MIN_COST = 10;
+
+    /** Legnagyobb választható költség */
+    public static final int MAX_COST = 16;
+
+    /** Rendszer tulajdonság a késleltetési keret megadására (ezredmásodperc) */
+    public static final String BUDGET_PROPERTY = "offlinechat.auth.budgetMs";
+
+    private static final long DEFAULT_BUDGET_MS = 250;
+
+    /** Mérés alapköltsége; ebből extrapolálunk, mert költségenként duplázódik az idő */
+    private static final int PROBE_COST = 6;
+
+    private static volatile int targetCost = DEFAULT_COST;
+
     private PasswordUtil() {}
     
     /**
-     * Bcrypt hash generálása a jelszóból.
+     * Bcrypt hash generálása a jelszóból az aktuális célköltséggel.
      * @param plainPassword egyszerű szöveges jelszó
      * @return bcrypt hash
      */
     public static String hashPassword(String plainPassword) {
-        return BCrypt.hashpw(plainPassword, BCrypt.gensalt());
+        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(targetCost));
     }
     
     /**
@@ -27,4 +52,90 @@ public final class PasswordUtil {
     public static boolean checkPassword(String plainPassword, String hashedPassword) {
         return BCrypt.checkpw(plainPassword, hashedPassword);
     }
+
+    /**
+     * A hash-ben tárolt költség ($2a$NN$...).
+     * @param hashedPassword bcrypt hash
+     * @return költség, vagy -1 ha nem értelmezhető
+     */
+    public static int costOf(String hashedPassword) {
+        if (hashedPassword == null || hashedPassword.length() < 7 || hashedPassword.charAt(0) != '$') return -1;
+        int sep = hashedPassword.indexOf('$', 1);
+        if (sep < 0 || sep + 3 >= hashedPassword.length() || hashedPassword.charAt(sep + 3) != '$') return -1;
+        try {
+            return Integer.parseInt(hashedPassword.substring(sep + 1, sep + 3));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Kell-e újrahash-elni: a tárolt költség kisebb a mostani célnál.
+     * @param hashedPassword bcrypt hash
+     * @return true ha gyengébb a célköltségnél
+     */
+    public static boolean needsRehash(String hashedPassword) {
+        return costOf(hashedPassword) < targetCost;
+    }
+
+    /**
+     * Az új hash-ekhez használt költség.
+     * @return célköltség
+     */
+    public static int getTargetCost() {
+        return targetCost;
+    }
+
+    /**
+     * Célköltség kézi beállítása.
+     * @param cost költség (4..31)
+     */
+    public static void setTargetCost(int cost) {
+        if (cost < 4 || cost > 31) throw new IllegalArgumentException("Érvénytelen bcrypt költség: " + cost);
+        targetCost = cost;
+    }
+
+    /**
+     * A beállított késleltetési keret (rendszer tulajdonságból, alapértelmezés 250 ms).
+     * @return késleltetési keret
+     */
+    public static Duration configuredBudget() {
+        return Duration.ofMillis(Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MS));
+    }
+
+    /**
+     * Kalibrálás: a legnagyobb költség MIN_COST és MAX_COST között, amelynél egy ellenőrzés
+     * becsült ideje a keret alatt marad, és beállítja célköltségnek.
+     * @param budget egy ellenőrzés megengedett ideje
+     * @return a választott költség
+     */
+    public static int calibrate(Duration budget) {
+        double probeNanos = measureNanos(PROBE_COST);
+        int cost = MIN_COST;
+        //minden költséglépés duplázza az időt
+        while (cost < MAX_COST && probeNanos * Math.pow(2, cost + 1 - PROBE_COST) <= budget.toNanos()) {
+            cost++;
+        }
+        targetCost = cost;
+        return cost;
+    }
+
+    /**
+     * Egy hash idejének mediánja az adott költségen (a hash és az ellenőrzés azonos munka).
+     * @param cost bcrypt költség
+     * @return idő nanoszekundumban
+     */
+    public static long measureNanos(int cost) {
+        String salt = BCrypt.gensalt(cost);
+        //bemelegítés
+        BCrypt.hashpw("kalibracio", salt);
+        long[] samples = new long[5];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("kalibracio", salt);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
 }
@@ -1,16 +1,66 @@
 import controller.AppController;
+import controller.AuthService;
+import controller.EventBus;
+import controller.MessageEvent;
+import controller.MessagePage;
+import controller.RateLimiter;
 import controller.RegistrationResult;
+import controller.SendResult;
+import controller.SessionManager;
+import controller.StoreEvent;
+import model.Group;
+import model.MemberTable;
 import model.Message;
 import model.Permissions;
+import persistence.ChangeRing;
 import persistence.DataStore;
+import persistence.FileManager;
+import persistence.IdBitmap;
+import persistence.ReplicationLog;
+import persistence.ShardedStorage;
+import persistence.UsernameIndex;
+import server.ChatClient;
+import server.ChatServer;
+import server.Protocol;
+import server.Replica;
+import server.ReplicationLeader;
+import ui.ChatUi;
+import util.MpscRingBuffer;
 import util.PasswordUtil;
 import org.junit.jupiter.api.AfterEach;
+import org.mindrot.jbcrypt.BCrypt;
 import org.junit.jupiter.api.Test;
+import javax.swing.JTextArea;
 
 import java.io.File;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.net.InetSocketAddress;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +70,7 @@ class ApplicationTest {
 
     private void cleanup() {
         if (DATA_FILE.exists()) DATA_FILE.delete();
+        new File(DATA_FILE.getPath() + ".events").delete();
     }
 
     private String hash(String pw) {
@@ -82,8 +133,8 @@ class ApplicationTest {
         store.acceptFriendRequest("bob", "tesztElek");
         c.saveStore();
         
-        assertTrue(c.sendPrivateMessage("tesztElek", "bob", "sziahalo"));
-        assertTrue(c.sendPrivateMessage("bob", "tesztElek", "helobelo"));
+        assertEquals(SendResult.SENT, c.sendPrivateMessage("tesztElek", "bob", "sziahalo"));
+        assertEquals(SendResult.SENT, c.sendPrivateMessage("bob", "tesztElek", "helobelo"));
         
         List<Message> msgs = store.getPrivateMessages("tesztElek", "bob");
         assertEquals(2, msgs.size());
@@ -98,7 +149,7 @@ class ApplicationTest {
         assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
         assertEquals(RegistrationResult.SUCCESS, c.registerUser("bob", hash("jelszo123")));
 
-        assertFalse(c.sendPrivateMessage("tesztElek", "bob", "szia"));
+        assertEquals(SendResult.FORBIDDEN, c.sendPrivateMessage("tesztElek", "bob", "szia"));
     }
 
     @Test
@@ -152,7 +203,7 @@ class ApplicationTest {
         assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
         
         UUID gid = c.createGroup("Beszelgetes", "tesztElek");
-        assertTrue(c.sendGroupMessage(gid, "tesztElek", "sziasztok"));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "sziasztok"));
         DataStore store = c.getDataStore();
         
         List<Message> msgs = store.getGroupMessages(gid);
@@ -176,7 +227,7 @@ class ApplicationTest {
         
         //olvasó nem küldhet és nem törölhet
         assertFalse(c.hasGroupPermission(gid, "bob", Permissions.GROUP_SEND_MESSAGE));
-        assertFalse(c.sendGroupMessage(gid, "bob", "teszt"));
+        assertEquals(SendResult.FORBIDDEN, c.sendGroupMessage(gid, "bob", "teszt"));
     }
 
     @Test
@@ -285,4 +336,1141 @@ class ApplicationTest {
         assertEquals(1, msgs.size());
         assertEquals("tartos uzenet", msgs.get(0).getContent());
     }
+
+    @Test
+    void testMemberTableOrderAndRoles() {
+        MemberTable table = new MemberTable();
+        UUID a = new UUID(5, 1);
+        UUID b = new UUID(1, 9);
+        UUID c = new UUID(-1, 0);
+        table.put(a, "Olvasó");
+        table.put(c, "Adminisztrátor");
+        table.put(b, "Résztvevő");
+        table.put(a, "Résztvevő");
+
+        assertEquals(3, table.size());
+        assertEquals(List.of(b, a, c), table.getMemberIds());
+        assertEquals("Résztvevő", table.getRole(a));
+        assertEquals("Adminisztrátor", table.getRole(c));
+        assertTrue(table.remove(b));
+        assertFalse(table.contains(b));
+        assertNull(table.getRole(b));
+        assertEquals(List.of(a, c), table.getMemberIds());
+
+        //a csoport élete során több száz szerepnév is előfordulhat, ha egyszerre kevés van használatban
+        for (int i = 0; i < 600; i++) {
+            table.put(a, "Egyedi" + i);
+            table.put(new UUID(7, i % 3), "Vendég" + i);
+        }
+        assertEquals("Egyedi599", table.getRole(a));
+        assertEquals("Adminisztrátor", table.getRole(c));
+        assertEquals("Vendég599", table.getRole(new UUID(7, 599 % 3)));
+        assertEquals("Vendég597", table.getRole(new UUID(7, 597 % 3)));
+    }
+
+    @Test
+    void testGroupsOfReverseIndex() {
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("bob", hash("jelszo123")));
+
+        UUID g1 = c.createGroup("Elso", "tesztElek");
+        UUID g2 = c.createGroup("Masodik", "tesztElek");
+        assertTrue(c.addGroupMember(g1, "bob", "Résztvevő"));
+        DataStore store = c.getDataStore();
+        assertEquals(Set.of(g1, g2), store.getGroupsOf("tesztElek"));
+        assertEquals(Set.of(g1), store.getGroupsOf("bob"));
+
+        assertTrue(c.removeGroupMember(g1, "bob"));
+        assertTrue(store.getGroupsOf("bob").isEmpty());
+        assertTrue(c.deleteGroup(g2, "tesztElek"));
+        assertEquals(Set.of(g1), store.getGroupsOf("tesztElek"));
+
+        //betöltés után az index újraépül
+        AppController c2 = new AppController();
+        assertEquals(Set.of(g1), c2.getDataStore().getGroupsOf("tesztElek"));
+    }
+
+    @Test
+    void testReadOnlyViewsAndVersion() {
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("bob", hash("jelszo123")));
+        DataStore store = c.getDataStore();
+
+        Set<String> friends = store.getFriends("tesztElek");
+        assertThrows(UnsupportedOperationException.class, () -> friends.add("bob"));
+
+        long before = store.getVersion();
+        assertEquals(before, store.getVersion());
+        assertTrue(store.sendFriendRequest("tesztElek", "bob"));
+        assertTrue(store.acceptFriendRequest("bob", "tesztElek"));
+        assertTrue(store.getVersion() > before);
+        //a nézet élő, másolás nélkül látja a változást
+        assertTrue(friends.contains("bob"));
+
+        long afterFriends = store.getVersion();
+        assertFalse(store.removeFriend("tesztElek", "nincsilyen"));
+        assertEquals(afterFriends, store.getVersion());
+    }
+
+    @Test
+    void testUsernameIndexSearch() {
+        UsernameIndex index = new UsernameIndex();
+        for (String n : List.of("bob", "Bobby", "alice", "jakab", "rambo", "Bo")) {
+            index.add(n);
+        }
+        //prefix találatok elöl, kis-nagybetű függetlenül
+        assertEquals(List.of("Bo", "bob", "Bobby", "rambo"), index.search("bo", 10, null));
+        assertEquals(List.of("Bo", "bob"), index.search("BO", 2, null));
+        //részszöveg és szűrés
+        assertEquals(List.of("jakab"), index.search("kab", 10, null));
+        assertEquals(List.of("jakab"), index.search("akab", 10, null));
+        assertEquals(List.of("bob", "Bobby"), index.search("ob", 10, null));
+        assertEquals(List.of("rambo"), index.search("mbo", 10, null));
+        assertTrue(index.search("kabx", 10, null).isEmpty());
+        assertTrue(index.search("bab", 10, null).isEmpty());
+        assertEquals(List.of("Bobby", "rambo"), index.search("bo", 10, n -> n.length() <= 3));
+        assertEquals(3, index.search("", 3, null).size());
+    }
+
+    @Test
+    void testIdBitmapSetAlgebra() {
+        IdBitmap a = new IdBitmap();
+        IdBitmap b = new IdBitmap();
+        //sűrű tároló (bitmap) és ritka tárolók vegyesen
+        for (int i = 0; i < 10_000; i += 2) a.add(i);
+        for (int i = 0; i < 10_000; i += 3) b.add(i);
+        a.add(1 << 20);
+        b.add(1 << 20);
+        b.add(7 << 16);
+
+        assertEquals(5001, a.cardinality());
+        assertTrue(a.contains(1 << 20));
+        assertFalse(a.contains(3));
+        IdBitmap both = IdBitmap.and(a, b);
+        assertEquals(1668, both.cardinality());
+        assertTrue(both.contains(6) && both.contains(1 << 20));
+        assertEquals(5001 - 1668, IdBitmap.andNot(a, b).cardinality());
+        assertEquals(5001 + 3336 - 1668, IdBitmap.or(a, b).cardinality());
+
+        for (int i = 0; i < 10_000; i += 2) assertTrue(a.remove(i));
+        assertEquals(1, a.cardinality());
+        int[] rest = new int[1];
+        a.forEach(x -> rest[0] = x);
+        assertEquals(1 << 20, rest[0]);
+    }
+
+    @Test
+    void testMutualFriendsAndSuggestions() {
+        cleanup();
+        AppController c = new AppController();
+        for (String u : List.of("anna", "bela", "cili", "dani")) {
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser(u, "x"));
+        }
+        DataStore store = c.getDataStore();
+        befriend(store, "anna", "bela");
+        befriend(store, "anna", "cili");
+        befriend(store, "bela", "cili");
+        befriend(store, "bela", "dani");
+        befriend(store, "cili", "dani");
+
+        assertEquals(Set.of("cili"), store.getMutualFriends("anna", "bela"));
+        assertEquals(List.of("dani"), store.suggestFriends("anna", 5));
+        assertTrue(store.suggestFriends("dani", 5).contains("anna"));
+
+        UUID gid = c.createGroup("Csapat", "dani");
+        assertTrue(c.addGroupMember(gid, "cili", "Résztvevő"));
+        assertEquals(List.of("cili", "dani"), store.getFriendsInGroup("bela", gid));
+        assertEquals(List.of("cili"), store.getFriendsInGroup("anna", gid));
+    }
+
+    private void befriend(DataStore store, String a, String b) {
+        assertTrue(store.sendFriendRequest(a, b));
+        assertTrue(store.acceptFriendRequest(b, a));
+    }
+
+    @Test
+    void testConcurrentWritesAreNotLost() throws Exception {
+        DataStore store = new DataStore();
+        int threads = 8;
+        int perThread = 500;
+        for (int t = 0; t < threads; t++) store.registerUser("u" + t, "x");
+        UUID gid = store.createGroup("Közös", "u0");
+        long before = store.getVersion();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int me = t;
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                String self = "u" + me;
+                String peer = "u" + ((me + 1) % threads);
+                for (int i = 0; i < perThread; i++) {
+                    //saját beszélgetés, közös csoport és táblaírás vegyesen
+                    store.sendPrivateMessage(UUID.randomUUID(), self, peer + "#" + me, "p" + i);
+                    store.sendGroupMessage(UUID.randomUUID(), gid, self + ":" + i);
+                    store.registerUser(self + "_" + i, "x");
+                    store.getGroupMessages(gid).size();
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join(TimeUnit.SECONDS.toMillis(30));
+            assertFalse(w.isAlive());
+        }
+
+        assertEquals(threads * perThread, store.getGroupMessages(gid).size());
+        for (int t = 0; t < threads; t++) {
+            String peer = "u" + ((t + 1) % threads);
+            assertEquals(perThread, store.getPrivateMessages("u" + t, peer + "#" + t).size());
+        }
+        assertEquals(threads + threads * perThread, store.getAllUsernames().size());
+        assertEquals(threads * perThread, store.searchUsernames("_", Integer.MAX_VALUE, null).size());
+        assertEquals(before + 3L * threads * perThread, store.getVersion());
+    }
+
+    @Test
+    void testLookupsTolerateNullKeys() {
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("anna", "x"));
+        DataStore store = c.getDataStore();
+        //a chat ablakok a mezőik beállítása előtt is kérdezhetnek: null-ra "nincs" a válasz
+        assertFalse(c.hasGroupPermission(null, "anna", Permissions.GROUP_SEND_MESSAGE));
+        assertFalse(store.areFriends("anna", null));
+        assertNull(store.getGroup(null));
+        assertNull(store.getUserByName(null));
+        assertNull(store.getUsernameById(null));
+        assertTrue(store.getIncomingFriendRequests(null).isEmpty());
+        assertTrue(store.getGroupsOf(null).isEmpty());
+        assertTrue(store.getGroupMessages(null).isEmpty());
+        assertTrue(store.getPrivateMessages("anna", null).isEmpty());
+        assertNull(store.getLastRead(null, null));
+    }
+
+    @Test
+    void testMessageSnapshotsAreStable() {
+        DataStore store = new DataStore();
+        store.registerUser("anna", "x");
+        store.registerUser("bela", "x");
+        UUID gid = store.createGroup("Kör", "anna");
+        UUID anna = store.getUserByName("anna").getId();
+        store.sendGroupMessage(anna, gid, "egy");
+        store.sendPrivateMessage(anna, "anna", "bela", "szia");
+
+        List<Message> pinned = store.getGroupMessages(gid);
+        DataStore frozen = store.snapshot();
+        store.sendGroupMessage(anna, gid, "ketto");
+        for (Message m : pinned) {
+            //bejárás közbeni írás sem okoz ConcurrentModificationException-t
+            store.sendGroupMessage(anna, gid, "bejaras közben " + m.getContent());
+        }
+        store.deleteGroupMessage(gid, pinned.get(0).getId());
+        assertThrows(UnsupportedOperationException.class, () -> pinned.add(pinned.get(0)));
+
+        assertEquals(1, pinned.size());
+        assertEquals("egy", pinned.get(0).getContent());
+        assertEquals(2, store.getGroupMessages(gid).size());
+        assertEquals(1, frozen.getGroupMessages(gid).size());
+        assertEquals(1, frozen.getPrivateMessages("bela", "anna").size());
+
+        //a pillanatkép csoportja független az élő csoporttól
+        store.addGroupMember(gid, "bela", "Olvasó");
+        assertFalse(frozen.getGroup(gid).isMember(store.getUserByName("bela").getId()));
+        assertTrue(frozen.getVersion() < store.getVersion());
+    }
+
+    @Test
+    void testBackgroundSavesAreCoalesced() {
+        cleanup();
+        //kézzel léptetett executor: a feladatok csak runAll hívásra futnak
+        ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        AppController c = new AppController(DATA_FILE, queue::add);
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+        UUID gid = c.createGroup("Hatter", "tesztElek");
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "elso"));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "masodik"));
+        assertEquals(1, queue.size());
+        assertFalse(DATA_FILE.exists());
+
+        //függő mentés mellett nincs újratöltés
+        assertFalse(c.reloadStore());
+        while (!queue.isEmpty()) queue.poll().run();
+        assertTrue(DATA_FILE.exists());
+
+        DataStore loaded = new AppController().getDataStore();
+        assertEquals(2, loaded.getGroupMessages(gid).size());
+
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "harmadik"));
+        assertTrue(c.flush());
+        assertEquals(3, new AppController().getDataStore().getGroupMessages(gid).size());
+        queue.clear();
+    }
+
+    @Test
+    void testMpscRingBufferOrderAndCapacity() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(5);
+        assertEquals(8, ring.capacity());
+        for (int i = 0; i < 8; i++) assertTrue(ring.offer(i));
+        assertFalse(ring.offer(8));
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(8));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(8, ring.drain(drained::add, 100));
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), drained);
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void testConcurrentSendsAreBatched() throws Exception {
+        cleanup();
+        AtomicInteger saves = new AtomicInteger();
+        AppController c = new AppController(DATA_FILE, r -> {
+            saves.incrementAndGet();
+            r.run();
+        });
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", "x"));
+        UUID gid = c.createGroup("Terheles", "tesztElek");
+        int threads = 8;
+        int perThread = 100;
+        for (int t = 0; t < threads; t++) {
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser("kuldo" + t, "x"));
+            assertTrue(c.addGroupMember(gid, "kuldo" + t, "Résztvevő"));
+        }
+        //terheléses csoport: a küldési keret ne szóljon közbe
+        c.setGroupSendLimit(gid, 1_000_000, 1_000_000);
+        int before = saves.get();
+
+        List<Thread> senders = new ArrayList<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            String me = "kuldo" + t;
+            Thread w = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    if (c.sendGroupMessage(gid, me, me + ":" + i) != SendResult.SENT) failed.incrementAndGet();
+                }
+            });
+            senders.add(w);
+            w.start();
+        }
+        for (Thread w : senders) w.join(TimeUnit.SECONDS.toMillis(60));
+
+        int total = threads * perThread;
+        assertEquals(0, failed.get());
+        List<Message> msgs = c.getDataStore().getGroupMessages(gid);
+        assertEquals(total, msgs.size());
+        //egy küldő üzenetei a küldés sorrendjében
+        int[] next = new int[threads];
+        for (Message m : msgs) {
+            String[] parts = m.getContent().split(":");
+            int t = Integer.parseInt(parts[0].substring("kuldo".length()));
+            assertEquals(next[t]++, Integer.parseInt(parts[1]));
+        }
+        assertTrue(saves.get() - before < total);
+        assertEquals(total, new AppController().getDataStore().getGroupMessages(gid).size());
+
+        //a mentés hibája (akár Error) nem állítja le a véglegesítő szálat
+        cleanup();
+        AtomicBoolean broken = new AtomicBoolean();
+        AppController fragile = new AppController(DATA_FILE, r -> {
+            if (broken.get()) throw new AssertionError("lemez");
+            r.run();
+        });
+        assertEquals(RegistrationResult.SUCCESS, fragile.registerUser("tesztElek", "x"));
+        UUID g = fragile.createGroup("Torekeny", "tesztElek");
+        broken.set(true);
+        assertEquals(SendResult.FAILED, fragile.sendGroupMessageAsync(g, "tesztElek", "elveszhet").get(5, TimeUnit.SECONDS));
+        broken.set(false);
+        assertEquals(SendResult.SENT, fragile.sendGroupMessageAsync(g, "tesztElek", "megmarad").get(5, TimeUnit.SECONDS));
+        assertEquals(2, new AppController().getDataStore().getGroupMessages(g).size());
+    }
+
+    @Test
+    void testAsyncAuthenticationWithAdmissionControl() {
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUserAsync("tesztElek", "jelszo123").join());
+        assertEquals(RegistrationResult.USERNAME_ALREADY_TAKEN, c.registerUserAsync("tesztElek", "masik").join());
+        assertEquals(RegistrationResult.USERNAME_TOO_SHORT, c.registerUserAsync("ab", "jelszo123").join());
+        assertTrue(c.authenticateUserAsync("tesztElek", "jelszo123").join());
+        assertFalse(c.authenticateUserAsync("tesztElek", "rossz").join());
+        assertFalse(c.authenticateUserAsync("nincsIlyen", "jelszo123").join());
+
+        //egy munkaszál: legfeljebb négy kérés fogadható be egyszerre
+        AuthService auth = new AuthService(1);
+        String stored = hash("jelszo123");
+        List<CompletableFuture<Boolean>> burst = new ArrayList<>();
+        for (int i = 0; i < 8; i++) burst.add(auth.verify("jelszo123", stored));
+        int rejected = 0;
+        for (CompletableFuture<Boolean> f : burst) {
+            try {
+                assertTrue(f.join());
+            } catch (CompletionException e) {
+                assertInstanceOf(RejectedExecutionException.class, e.getCause());
+                rejected++;
+            }
+        }
+        assertEquals(4, rejected);
+        assertEquals(4, auth.availableSlots());
+        auth.shutdown();
+    }
+
+    @Test
+    void testCostCalibrationAndRehashOnLogin() throws Exception {
+        cleanup();
+        int original = PasswordUtil.getTargetCost();
+        try {
+            assertEquals(4, PasswordUtil.costOf(BCrypt.hashpw("x", BCrypt.gensalt(4))));
+            assertEquals(-1, PasswordUtil.costOf("nem hash"));
+            //szűk keret mellett is a biztonsági minimum marad
+            assertEquals(PasswordUtil.MIN_COST, PasswordUtil.calibrate(Duration.ofNanos(1)));
+
+            PasswordUtil.setTargetCost(4);
+            //a mentések sorban maradnak, a háttér mentés nem írhat a következő teszt fájljába
+            ArrayDeque<Runnable> saves = new ArrayDeque<>();
+            AppController c = new AppController(DATA_FILE, saves::add);
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+            String weak = c.getDataStore().getUserByName("tesztElek").getPasswordHash();
+            assertEquals(4, PasswordUtil.costOf(weak));
+
+            PasswordUtil.setTargetCost(5);
+            assertTrue(PasswordUtil.needsRehash(weak));
+            UUID id = c.getDataStore().getUserByName("tesztElek").getId();
+            assertTrue(c.authenticateUserAsync("tesztElek", "jelszo123").join());
+            //az újrahash-elés a háttérben fut
+            long deadline = System.currentTimeMillis() + 5000;
+            while (PasswordUtil.costOf(c.getDataStore().getUserByName("tesztElek").getPasswordHash()) != 5
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, PasswordUtil.costOf(c.getDataStore().getUserByName("tesztElek").getPasswordHash()));
+            assertEquals(id, c.getDataStore().getUserByName("tesztElek").getId());
+            assertTrue(c.authenticateUser("tesztElek", "jelszo123"));
+            assertFalse(c.getDataStore().updatePasswordHash("tesztElek", weak, "ervenytelen"));
+        } finally {
+            PasswordUtil.setTargetCost(original);
+        }
+    }
+
+    @Test
+    void testSessionTokensExpireOnTimingWheel() {
+        AtomicLong now = new AtomicLong(0);
+        SessionManager sessions = new SessionManager(Duration.ofSeconds(10), Duration.ofSeconds(1), now::get);
+        String a = sessions.open("anna");
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        String b = sessions.open("bela");
+        assertNotEquals(a, b);
+        assertEquals("anna", sessions.validate(a));
+        assertNull(sessions.validate("hamis"));
+
+        //anna lejárt, bela még él; a kerék a következő műveletnél takarít
+        now.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertEquals(1, sessions.size());
+        assertNull(sessions.validate(a));
+        assertEquals("bela", sessions.validate(b));
+        assertTrue(sessions.close(b));
+        assertNull(sessions.validate(b));
+
+        //több fordulatnyi ugrás után is minden lejárt token eltűnik
+        for (int i = 0; i < 100; i++) sessions.open("u" + i);
+        now.addAndGet(Duration.ofMinutes(5).toNanos());
+        assertEquals(0, sessions.size());
+
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+        assertNull(c.loginAsync("tesztElek", "rossz").join());
+        String token = c.loginAsync("tesztElek", "jelszo123").join();
+        assertEquals("tesztElek", c.resumeSession(token));
+        assertTrue(c.logout(token));
+        assertNull(c.resumeSession(token));
+    }
+
+    @Test
+    void testSendRateLimiting() {
+        AtomicLong now = new AtomicLong(0);
+        RateLimiter limiter = new RateLimiter(new RateLimiter.Limit(2, 3), now::get);
+        UUID quiet = UUID.randomUUID();
+        limiter.setGroupLimit(quiet, new RateLimiter.Limit(1, 1));
+        for (int i = 0; i < 3; i++) assertTrue(limiter.tryAcquire("anna", null));
+        assertFalse(limiter.tryAcquire("anna", null));
+        //más felhasználó vödre független
+        assertTrue(limiter.tryAcquire("bela", null));
+        //fél másodperc alatt egy token termelődik (2/mp)
+        now.addAndGet(500_000_000L);
+        assertTrue(limiter.tryAcquire("anna", null));
+        assertFalse(limiter.tryAcquire("anna", null));
+        //felülírt csoportban külön, szigorúbb vödör
+        assertTrue(limiter.tryAcquire("bela", quiet));
+        assertFalse(limiter.tryAcquire("bela", quiet));
+        assertTrue(limiter.tryAcquire("bela", null));
+
+        cleanup();
+        AppController c = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", "x"));
+        UUID gid = c.createGroup("Zajos", "tesztElek");
+        c.setGroupSendLimit(gid, 0.001, 2);
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "egy"));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "ketto"));
+        assertEquals(SendResult.RATE_LIMITED, c.sendGroupMessage(gid, "tesztElek", "harom"));
+        assertEquals(SendResult.INVALID, c.sendGroupMessage(gid, "tesztElek", " "));
+        assertEquals(2, c.getDataStore().getGroupMessages(gid).size());
+    }
+
+    @Test
+    void testBatchCommitsOnceAndRollsBack() {
+        cleanup();
+        ArrayDeque<Runnable> queue = new ArrayDeque<>();
+        AppController c = new AppController(DATA_FILE, queue::add);
+        for (String n : List.of("tesztElek", "anna", "bela", "cili")) {
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser(n, "x"));
+        }
+        UUID gid = c.createGroup("Kotegelt", "tesztElek");
+        while (!queue.isEmpty()) queue.poll().run();
+        DataStore store = c.getDataStore();
+        Group g = store.getGroup(gid);
+
+        //tömeges felvétel egyetlen mentéssel
+        assertTrue(c.addGroupMembers(gid, List.of("anna", "bela"), "Résztvevő"));
+        assertEquals(1, queue.size());
+        assertEquals(3, g.getMemberCount());
+
+        //a hibás művelet az egész köteget visszavonja
+        long version = store.getVersion();
+        assertFalse(c.batch(tx -> tx
+                .addCustomRole(gid, "moderator")
+                .setRolePermissions(gid, "moderator", Set.of(Permissions.GROUP_DELETE_MESSAGES))
+                .addGroupMember(gid, "cili", "moderator")
+                .removeGroupMember(gid, "anna")
+                .addGroupMember(gid, "nincsIlyen", "Résztvevő")
+                .removeGroupMember(gid, "bela")));
+        assertFalse(g.getRoles().contains("moderator"));
+        assertFalse(g.isMember(store.getUserByName("cili").getId()));
+        assertTrue(g.isMember(store.getUserByName("anna").getId()));
+        assertTrue(g.isMember(store.getUserByName("bela").getId()));
+        assertNotEquals(version, store.getVersion());
+        assertEquals(1, queue.size());
+
+        //ismeretlen szereppel senki sem kerül be
+        assertFalse(c.addGroupMembers(gid, List.of("cili"), "nincsSzerep"));
+        assertEquals(3, g.getMemberCount());
+
+        //használatban lévő szerep nem törölhető, alapértelmezett sem
+        assertTrue(c.batch(tx -> tx.addCustomRole(gid, "moderator").setGroupMemberRole(gid, "anna", "moderator")));
+        assertFalse(g.removeRole("moderator"));
+        assertFalse(g.removeRole("Résztvevő"));
+        g.setMemberRole(store.getUserByName("anna").getId(), "Résztvevő");
+        assertTrue(g.removeRole("moderator"));
+        queue.clear();
+    }
+
+    @Test
+    void testNioServerRoundTrip() throws Exception {
+        cleanup();
+        AppController c = new AppController(DATA_FILE, Runnable::run);
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", hash("jelszo123")));
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("anna", hash("jelszo456")));
+        UUID gid = c.createGroup("Halozat", "tesztElek");
+        assertTrue(c.addGroupMember(gid, "anna", "Résztvevő"));
+
+        try (ChatServer server = new ChatServer(c, new InetSocketAddress("127.0.0.1", 0))) {
+            server.start();
+            int port = server.getPort();
+            String token;
+            try (ChatClient elek = new ChatClient("127.0.0.1", port);
+                 ChatClient anna = new ChatClient("127.0.0.1", port)) {
+                //bejelentkezés nélkül nincs küldés és olvasás
+                assertEquals(SendResult.FORBIDDEN, elek.sendGroupMessage(gid, "hello"));
+                assertNull(elek.fetchGroupMessages(gid, 0));
+                assertNull(elek.login("tesztElek", "rossz"));
+                token = elek.login("tesztElek", "jelszo123");
+                assertNotNull(token);
+                assertNotNull(anna.login("anna", "jelszo456"));
+
+                assertEquals(SendResult.SENT, elek.sendGroupMessage(gid, "hello"));
+                assertEquals(SendResult.SENT, anna.sendGroupMessage(gid, "szia"));
+                assertEquals(SendResult.INVALID, anna.sendGroupMessage(gid, " "));
+                List<Protocol.RemoteMessage> page = anna.fetchGroupMessages(gid, 0);
+                assertEquals(2, page.size());
+                assertEquals("tesztElek", page.get(0).sender());
+                assertEquals("szia", page.get(1).content());
+                assertEquals(1, anna.fetchGroupMessages(gid, 1).size());
+                //a privát üzenethez barátság kell
+                assertEquals(SendResult.FORBIDDEN, anna.sendPrivateMessage("tesztElek", "titok"));
+            }
+
+            //újracsatlakozás tokennel, jelszó nélkül; sok egyidejű kapcsolat egy szálon
+            List<ChatClient> clients = new ArrayList<>();
+            try {
+                for (int i = 0; i < 50; i++) clients.add(new ChatClient("127.0.0.1", port));
+                for (ChatClient cl : clients) assertTrue(cl.ping());
+                assertEquals("tesztElek", clients.get(0).resume(token));
+                assertEquals(2, clients.get(0).fetchGroupMessages(gid, 0).size());
+                assertNull(clients.get(1).resume("hamis"));
+            } finally {
+                for (ChatClient cl : clients) cl.close();
+            }
+            assertTrue(server.getRequestCount() > 50);
+        }
+        assertEquals(2, new AppController().getDataStore().getGroupMessages(gid).size());
+    }
+
+    @Test
+    void testChangeRingAcrossInstances() throws Exception {
+        File ringFile = File.createTempFile("changes", ".events");
+        ringFile.delete();
+        try {
+            //két példány ugyanazon a fájlon, mintha két folyamat lenne
+            ChangeRing a = ChangeRing.open(ringFile, 8);
+            ChangeRing b = ChangeRing.open(ringFile, 1024);
+            assertEquals(8, b.capacity());
+            assertFalse(b.hasNew());
+            UUID conv = UUID.randomUUID();
+            a.publish(conv);
+            a.publish(null);
+            assertTrue(b.hasNew());
+            List<ChangeRing.Change> seen = new ArrayList<>();
+            assertEquals(2, b.poll(seen::add));
+            assertEquals(conv, seen.get(0).conversation());
+            assertNull(seen.get(1).conversation());
+            //saját esemény nem jön vissza
+            assertEquals(0, a.poll(seen::add));
+            assertFalse(a.hasNew());
+
+            //lemaradt olvasó egyetlen "bármi változhatott" eseményt kap
+            for (int i = 0; i < 20; i++) a.publish(conv);
+            seen.clear();
+            assertEquals(1, b.poll(seen::add));
+            assertNull(seen.get(0).conversation());
+            assertFalse(b.hasNew());
+
+            //elhalt író: a lefoglalt, félkész rekesz időkorlát után átléphető
+            try (FileChannel ch = FileChannel.open(ringFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer raw = ch.map(FileChannel.MapMode.READ_WRITE, 0, 128 + 8 * 32);
+                raw.order(ByteOrder.nativeOrder());
+                long tail = raw.getLong(64);
+                raw.putLong(128 + (int) (tail & 7) * 32, -(tail + 1));
+                raw.putLong(64, tail + 1);
+            }
+            a.publish(conv);
+            seen.clear();
+            assertEquals(0, b.poll(seen::add));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (seen.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+                b.poll(seen::add);
+            }
+            assertEquals(2, seen.size());
+            assertNull(seen.get(0).conversation());
+            assertEquals(conv, seen.get(1).conversation());
+        } finally {
+            ringFile.delete();
+        }
+
+        cleanup();
+        AppController writer = new AppController();
+        AppController reader = new AppController();
+        assertFalse(reader.hasPendingChanges());
+        assertEquals(RegistrationResult.SUCCESS, writer.registerUser("tesztElek", "x"));
+        assertTrue(reader.hasPendingChanges());
+        //betekintés: nem fogyasztja el, a saját mentés pedig nem számít
+        assertTrue(reader.hasPendingChanges());
+        assertFalse(writer.hasPendingChanges());
+
+        //a figyelő dolgozza fel a függő és az új értesítéseket
+        Semaphore reloads = new Semaphore(0);
+        assertTrue(reader.startChangeListener(reloads::release));
+        try {
+            assertTrue(reloads.tryAcquire(5, TimeUnit.SECONDS));
+            assertNotNull(reader.getDataStore().getUserByName("tesztElek"));
+            assertFalse(reader.hasPendingChanges());
+            UUID gid = writer.createGroup("Ertesito", "tesztElek");
+            assertTrue(reloads.tryAcquire(5, TimeUnit.SECONDS));
+            assertNotNull(reader.getDataStore().getGroup(gid));
+        } finally {
+            reader.stopChangeListener();
+        }
+    }
+
+    @Test
+    void testReplicaFollowsLeader() throws Exception {
+        ReplicationLog small = new ReplicationLog(4);
+        DataStore ds = new DataStore();
+        ds.setJournal(small);
+        assertTrue(ds.registerUser("anna", "x"));
+        UUID g0 = ds.createGroup("Naplo", "anna");
+        for (int i = 0; i < 6; i++) assertTrue(ds.sendGroupMessage(ds.getUserByName("anna").getId(), g0, "m" + i));
+        List<ReplicationLog.Mutation> out = new ArrayList<>();
+        //a régi bejegyzések kiestek, pillanatkép kell
+        assertFalse(small.read(0, 10, out));
+        assertTrue(small.read(small.head() - 2, 10, out));
+        assertEquals(2, out.size());
+        ReplicationLog.Positioned<DataStore> snap = ds.replicationSnapshot();
+        assertEquals(small.head(), snap.position());
+        assertEquals(6, snap.value().getGroupMessages(g0).size());
+
+        //párhuzamos írók külön beszélgetésekben: minden bejegyzés pontosan egyszer, hézag nélkül
+        ReplicationLog wide = new ReplicationLog(1 << 12);
+        ds.setJournal(wide);
+        UUID anna = ds.getUserByName("anna").getId();
+        List<UUID> convs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) convs.add(ds.createGroup("Par" + i, "anna"));
+        long start = wide.head();
+        List<Thread> writers = new ArrayList<>();
+        for (UUID conv : convs) {
+            writers.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 200; i++) ds.sendGroupMessage(anna, conv, "p" + i);
+            }));
+        }
+        for (Thread t : writers) t.join();
+        List<ReplicationLog.Mutation> all = new ArrayList<>();
+        assertTrue(wide.read(start, 10_000, all));
+        assertEquals(800, all.size());
+        for (UUID conv : convs) {
+            List<String> inOrder = all.stream().filter(m -> m instanceof ReplicationLog.GroupMessage g && g.groupId().equals(conv))
+                    .map(m -> ((ReplicationLog.GroupMessage) m).message().getContent()).toList();
+            assertEquals(ds.getGroupMessages(conv).stream().map(Message::getContent).toList(), inOrder);
+        }
+
+        cleanup();
+        AppController c = new AppController(DATA_FILE, Runnable::run);
+        assertEquals(RegistrationResult.SUCCESS, c.registerUser("tesztElek", "x"));
+        UUID gid = c.createGroup("Replikalt", "tesztElek");
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "elso"));
+        byte[] secret = "kozos-titok".getBytes(StandardCharsets.UTF_8);
+        try (ReplicationLeader leader = new ReplicationLeader(c, new InetSocketAddress("127.0.0.1", 0), 1024, secret)) {
+            leader.start();
+            //hibás titokkal nincs pillanatkép
+            try (Replica intruder = new Replica(new InetSocketAddress("127.0.0.1", leader.getPort()),
+                    "rossz".getBytes(StandardCharsets.UTF_8))) {
+                intruder.start();
+                assertFalse(intruder.awaitPosition(0, Duration.ofMillis(300)));
+                assertEquals(0, leader.getSnapshotsSent());
+            }
+            try (Replica replica = new Replica(new InetSocketAddress("127.0.0.1", leader.getPort()), secret)) {
+                replica.start();
+                //első kapcsolódás: pillanatkép
+                assertTrue(replica.awaitPosition(0, Duration.ofSeconds(5)));
+                assertEquals(1, replica.getSnapshotCount());
+                assertEquals(1, replica.getDataStore().getGroupMessages(gid).size());
+
+                //utána a napló: üzenetek egyenként, tábla változás egészben
+                assertEquals(RegistrationResult.SUCCESS, c.registerUser("anna", "x"));
+                assertTrue(c.addGroupMember(gid, "anna", "Résztvevő"));
+                assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "anna", "masodik"));
+                UUID first = c.getDataStore().getGroupMessages(gid).get(0).getId();
+                assertTrue(c.deleteGroupMessage(gid, first, "tesztElek"));
+                assertTrue(replica.awaitPosition(leader.getHead(), Duration.ofSeconds(5)));
+                DataStore r = replica.getDataStore();
+                assertEquals(List.of("masodik"), r.getGroupMessages(gid).stream().map(Message::getContent).toList());
+                assertEquals(c.getDataStore().getGroupMessages(gid).get(0).getId(), r.getGroupMessages(gid).get(0).getId());
+                assertTrue(r.getGroup(gid).isMember(r.getUserByName("anna").getId()));
+                assertEquals(1, replica.getSnapshotCount());
+                assertEquals(0, replica.getLagRecords());
+
+                //a törölt csoport üzenetei a replikáról is eltűnnek
+                assertTrue(c.deleteGroup(gid, "tesztElek"));
+                assertTrue(replica.awaitPosition(leader.getHead(), Duration.ofSeconds(5)));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (replica.getDataStore().getGroup(gid) != null && System.currentTimeMillis() < deadline) Thread.sleep(10);
+                assertNull(replica.getDataStore().getGroup(gid));
+                assertTrue(replica.getDataStore().getGroupMessages(gid).isEmpty());
+            }
+        }
+    }
+
+    @Test
+    void testShardedStorageWritesOnlyDirtyShards() throws Exception {
+        File dir = Files.createTempDirectory("shards").toFile();
+        File base = new File(dir, "chat.dat");
+        //régi egyfájlos mentés átvétele
+        DataStore legacy = new DataStore();
+        assertTrue(legacy.registerUser("tesztElek", "x"));
+        assertTrue(FileManager.save(legacy, base));
+
+        ShardedStorage storage = new ShardedStorage(base, 8);
+        AppController c = new AppController(storage, Runnable::run);
+        assertNotNull(c.getDataStore().getUserByName("tesztElek"));
+        List<UUID> groups = new ArrayList<>();
+        for (int i = 0; i < 16; i++) groups.add(c.createGroup("G" + i, "tesztElek"));
+        for (UUID gid : groups) assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "hello"));
+
+        //egy beszélgetés változása csak a saját shardját írja újra
+        long before = storage.getShardWrites();
+        UUID target = groups.get(3);
+        assertEquals(SendResult.SENT, c.sendGroupMessage(target, "tesztElek", "masodik"));
+        assertEquals(before + 1, storage.getShardWrites());
+
+        //értesítés után a másik példány csak az érintett beszélgetést olvassa újra, az adattár marad
+        AppController other = new AppController(new ShardedStorage(base, 8), Runnable::run);
+        DataStore kept = other.getDataStore();
+        CountDownLatch notified = new CountDownLatch(1);
+        assertTrue(other.startChangeListener(notified::countDown));
+        try {
+            assertEquals(SendResult.SENT, c.sendGroupMessage(target, "tesztElek", "harmadik"));
+            assertTrue(notified.await(5, TimeUnit.SECONDS));
+            assertSame(kept, other.getDataStore());
+            assertEquals(3, kept.getGroupMessages(target).size());
+        } finally {
+            other.stopChangeListener();
+        }
+
+        //sérült shard csak a saját beszélgetéseit viszi magával
+        int broken = ShardedStorage.shardOf(target, 8);
+        Files.write(storage.shardFile(broken).toPath(), new byte[] {1, 2, 3});
+        DataStore reloaded = new ShardedStorage(base, 8).load();
+        assertNotNull(reloaded);
+        for (UUID gid : groups) {
+            int expected = ShardedStorage.shardOf(gid, 8) == broken ? 0 : gid.equals(target) ? 3 : 1;
+            assertEquals(expected, reloaded.getGroupMessages(gid).size());
+        }
+        assertEquals(16, reloaded.getAllGroups().size());
+        //a sérült fájl félrekerül; a shard új üzenetei ettől még mentődnek
+        ShardedStorage recovering = new ShardedStorage(base, 8);
+        DataStore survivor = recovering.load();
+        assertTrue(recovering.isQuarantined(broken));
+        assertFalse(storage.shardFile(broken).exists());
+        survivor.sendGroupMessage(survivor.getUserByName("tesztElek").getId(), target, "újra");
+        assertTrue(recovering.save(survivor));
+        assertTrue(storage.shardFile(broken).exists());
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(new File(storage.shardFile(broken).getPath() + ".corrupt").toPath()));
+        assertEquals(List.of("újra"), new ShardedStorage(base, 8).load().getGroupMessages(target).stream().map(Message::getContent).toList());
+        for (File f : dir.listFiles()) {
+            if (f.isDirectory()) for (File g : f.listFiles()) g.delete();
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    void testIncrementalRendering() {
+        JTextArea area = new JTextArea();
+        UUID conv = UUID.randomUUID();
+        //soronként külön küldő, így a névfeloldások száma a formázott sorokat számolja
+        List<Message> msgs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) msgs.add(new Message(UUID.randomUUID(), conv, "m" + i));
+        AtomicInteger resolved = new AtomicInteger();
+        Function<UUID, String> resolver = id -> {
+            resolved.incrementAndGet();
+            return "anna";
+        };
+        ChatUi.renderMessages(area, msgs, resolver, "");
+        assertEquals(3, resolved.get());
+
+        //csak az új sor formázódik
+        msgs.add(new Message(UUID.randomUUID(), conv, "m3"));
+        ChatUi.renderMessages(area, msgs, resolver, "");
+        assertEquals(4, resolved.get());
+        String nl = System.lineSeparator();
+        assertEquals("anna: m0" + nl + "anna: m1" + nl + "anna: m2" + nl + "anna: m3" + nl, area.getText());
+
+        //törlés a helyén, újraformázás nélkül
+        msgs.remove(1);
+        msgs.remove(2);
+        ChatUi.renderMessages(area, msgs, resolver, "");
+        assertEquals(4, resolved.get());
+        assertEquals("anna: m0" + nl + "anna: m2" + nl, area.getText());
+
+        //más prefix (másik beszélgetés előnézete): teljes újrarajzolás
+        ChatUi.renderMessages(area, msgs, resolver, "[G] ");
+        assertEquals(6, resolved.get());
+        assertEquals("[G] anna: m0" + nl + "[G] anna: m2" + nl, area.getText());
+    }
+
+    @Test
+    void testMessagePages() {
+        UUID anna = UUID.randomUUID();
+        UUID conv = UUID.randomUUID();
+        List<Message> log = new ArrayList<>();
+        for (int i = 0; i < 10; i++) log.add(new Message(anna, conv, "m" + i));
+
+        //legfrissebb lap a végétől számítva
+        MessagePage latest = MessagePage.of(log, -4, Integer.MAX_VALUE);
+        assertEquals(6, latest.from());
+        assertEquals(10, latest.end());
+        assertEquals(10, latest.total());
+        assertEquals("m6", latest.messages().get(0).getContent());
+
+        //régebbi lap az átfedő üzenettel, az elején levágva
+        MessagePage older = MessagePage.of(log, Math.max(0, latest.from() - 8), latest.from() + 1);
+        assertEquals(0, older.from());
+        assertEquals(7, older.messages().size());
+        assertEquals(latest.messages().get(0).getId(), older.messages().get(6).getId());
+
+        //túllógó és üres lapok
+        assertEquals(0, MessagePage.of(log, 12, 20).messages().size());
+        assertEquals(0, MessagePage.of(List.of(), -4, Integer.MAX_VALUE).from());
+    }
+
+    @Test
+    void testUnreadCountsAndRecentConversations() throws Exception {
+        DataStore store = new DataStore();
+        store.registerUser("anna", "x");
+        store.registerUser("bela", "x");
+        store.registerUser("cili", "x");
+        UUID anna = store.getUserByName("anna").getId();
+        UUID bela = store.getUserByName("bela").getId();
+        UUID gid = store.createGroup("Kör", "anna");
+        store.addGroupMember(gid, "bela", "Olvasó");
+        UUID withBela = DataStore.privateConversationId("anna", "bela");
+        UUID withCili = DataStore.privateConversationId("cili", "anna");
+
+        store.sendPrivateMessage(anna, "anna", "cili", "régi");
+        Thread.sleep(2);
+        store.sendGroupMessage(anna, gid, "csoport");
+        //az index a meglévő naplókból épül, utána lépésenként frissül
+        assertEquals(List.of(gid, withCili), store.getRecentConversations("anna", 10));
+        Thread.sleep(2);
+        store.sendPrivateMessage(bela, "bela", "anna", "szia");
+        store.sendPrivateMessage(bela, "bela", "anna", "itt vagy?");
+        assertEquals(List.of(withBela, gid, withCili), store.getRecentConversations("anna", 10));
+        assertEquals(List.of(withBela), store.getRecentConversations("anna", 1));
+        assertEquals(List.of(withBela, gid), store.getRecentConversations("bela", 10));
+
+        //olvasatlan: az utoljára látott üzenet után érkezettek
+        List<Message> chat = store.getPrivateMessages("anna", "bela");
+        assertEquals(2, store.getPrivateUnread("anna", "bela"));
+        assertTrue(store.markRead("anna", withBela, 0, chat.get(0)));
+        assertEquals(1, store.getPrivateUnread("anna", "bela"));
+        assertFalse(store.markRead("anna", withBela, 0, chat.get(0)));
+        assertTrue(store.markRead("anna", withBela, 1, chat.get(1)));
+        assertFalse(store.markRead("anna", withBela, 0, chat.get(0)));
+        assertEquals(0, store.getPrivateUnread("anna", "bela"));
+        assertEquals(1, store.getGroupUnread("bela", gid));
+
+        //törlés után sem csúszik el: a jel üzenetre mutat, nem sorszámra
+        Thread.sleep(2);
+        store.sendGroupMessage(anna, gid, "második");
+        Thread.sleep(2);
+        store.sendGroupMessage(anna, gid, "harmadik");
+        List<Message> groupLog = store.getGroupMessages(gid);
+        assertTrue(store.markRead("bela", gid, 1, groupLog.get(1)));
+        assertEquals(1, store.getGroupUnread("bela", gid));
+        store.deleteGroupMessage(gid, groupLog.get(0).getId());
+        assertEquals(1, store.getGroupUnread("bela", gid));
+        //maga a látott üzenet törlődik: az utána jövők maradnak olvasatlanok
+        store.deleteGroupMessage(gid, groupLog.get(1).getId());
+        assertEquals(1, store.getGroupUnread("bela", gid));
+
+        //új tag a csoport eddigi aktivitását kapja
+        store.addGroupMember(gid, "cili", "Olvasó");
+        assertEquals(List.of(gid, withCili), store.getRecentConversations("cili", 10));
+        assertTrue(store.getLastActivity("cili", gid) > 0);
+        assertEquals(store.getLastActivity("anna", gid), store.getLastActivity("cili", gid));
+        //kilépett tag listájából a csoport kiesik
+        store.removeGroupMember(gid, "cili");
+        assertEquals(List.of(withCili), store.getRecentConversations("cili", 10));
+        store.addGroupMember(gid, "cili", "Olvasó");
+
+        //az olvasottság mentődik, az index betöltés után újraépül
+        File f = Files.createTempFile("unread", ".dat").toFile();
+        assertTrue(FileManager.save(store.snapshot(), f));
+        DataStore loaded = FileManager.load(f);
+        assertEquals(chat.get(1).getId(), loaded.getLastRead("anna", withBela));
+        assertEquals(0, loaded.getPrivateUnread("anna", "bela"));
+        assertEquals(List.of(gid, withBela, withCili), loaded.getRecentConversations("anna", 10));
+        f.delete();
+
+        //a jelölés nem ment azonnal és a többi folyamatot nem értesíti; kilépéskor mentődik
+        cleanup();
+        AppController writer = new AppController();
+        AppController reader = new AppController();
+        assertEquals(RegistrationResult.SUCCESS, writer.registerUser("tesztElek", "x"));
+        UUID g = writer.createGroup("Olvasas", "tesztElek");
+        assertEquals(SendResult.SENT, writer.sendGroupMessage(g, "tesztElek", "hello"));
+        //a függő értesítéseket a figyelő dolgozza fel
+        assertTrue(reader.startChangeListener());
+        long drained = System.currentTimeMillis() + 5000;
+        while (reader.hasPendingChanges() && System.currentTimeMillis() < drained) Thread.sleep(10);
+        reader.stopChangeListener();
+        assertFalse(reader.hasPendingChanges());
+        Message hello = writer.getDataStore().getGroupMessages(g).get(0);
+        assertTrue(writer.markRead("tesztElek", g, 0, hello));
+        assertEquals(0, writer.getDataStore().getGroupUnread("tesztElek", g));
+        assertNull(new AppController().getDataStore().getLastRead("tesztElek", g));
+        assertTrue(writer.flush());
+        assertFalse(reader.hasPendingChanges());
+        assertEquals(hello.getId(), new AppController().getDataStore().getLastRead("tesztElek", g));
+    }
+
+    @Test
+    void testLineFormatterCachesNames() {
+        UUID anna = UUID.randomUUID();
+        UUID bela = UUID.randomUUID();
+        UUID conv = UUID.randomUUID();
+        AtomicInteger resolved = new AtomicInteger();
+        Function<UUID, String> resolver = id -> {
+            resolved.incrementAndGet();
+            return id.equals(anna) ? "anna" : "bela";
+        };
+        Function<Message, String> line = ChatUi.timedLine(resolver, "anna", "[G] ");
+        Message first = new Message(anna, conv, "szia");
+        for (int i = 0; i < 50; i++) {
+            line.apply(new Message(anna, conv, "a" + i));
+            line.apply(new Message(bela, conv, "b" + i));
+        }
+        //küldőnként egy feloldás
+        assertEquals(2, resolved.get());
+
+        String time = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault()).format(first.getTimestamp());
+        assertEquals("[" + time + "] [G] Én: szia", line.apply(first));
+        assertEquals("bela: x", ChatUi.plainLine(resolver, "").apply(new Message(bela, conv, "x")));
+    }
+
+    @Test
+    void testEventBusRoutesByTopic() {
+        cleanup();
+        AppController c = new AppController();
+        for (String n : List.of("tesztElek", "anna", "bela")) {
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser(n, "x"));
+        }
+        EventBus bus = c.getEventBus();
+        List<StoreEvent> annaEvents = new ArrayList<>();
+        List<StoreEvent> belaEvents = new ArrayList<>();
+        bus.subscribe("anna", annaEvents::add);
+        bus.subscribe("bela", belaEvents::add);
+
+        UUID gid = c.createGroup("Esemenyek", "tesztElek");
+        List<StoreEvent> groupEvents = new ArrayList<>();
+        EventBus.Subscription groupSub = bus.subscribe(gid, groupEvents::add);
+
+        //üzenet csak a beszélgetés témáján, sorszámmal
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "szia"));
+        assertEquals(List.of(new StoreEvent.MessageAdded(gid, 0)), groupEvents);
+        assertTrue(annaEvents.isEmpty());
+
+        //tagság a csoport és a tag témáján
+        assertTrue(c.addGroupMember(gid, "anna", "Résztvevő"));
+        assertEquals(new StoreEvent.MemberRoleChanged(gid, "anna"), groupEvents.get(1));
+        assertEquals(List.of(new StoreEvent.MemberRoleChanged(gid, "anna")), annaEvents);
+
+        //sikertelen köteg nem küld eseményt
+        assertFalse(c.batch(tx -> tx.addGroupMember(gid, "bela", "Résztvevő").addGroupMember(gid, "nincsIlyen", "Résztvevő")));
+        assertTrue(belaEvents.isEmpty());
+        assertEquals(2, groupEvents.size());
+
+        //törlés egyszer jelez; a már nem létező üzenet törlése sikertelen és csendes
+        UUID first = c.getDataStore().getGroupMessages(gid).get(0).getId();
+        assertTrue(c.deleteGroupMessage(gid, first, "tesztElek"));
+        assertEquals(new StoreEvent.MessageDeleted(gid, first), groupEvents.get(2));
+        assertFalse(c.deleteGroupMessage(gid, first, "tesztElek"));
+        assertEquals(3, groupEvents.size());
+
+        //barátkérés a címzettnek, barátság és privát üzenet a privát beszélgetésen
+        UUID priv = DataStore.privateConversationId("anna", "bela");
+        List<StoreEvent> privEvents = new ArrayList<>();
+        bus.subscribe(priv, privEvents::add);
+        assertTrue(c.sendFriendRequest("anna", "bela"));
+        assertEquals(List.of(new StoreEvent.FriendRequestReceived("bela", "anna")), belaEvents);
+        assertTrue(c.acceptFriendRequest("bela", "anna"));
+        assertEquals(new StoreEvent.FriendshipChanged("bela", "anna"), privEvents.get(0));
+        assertEquals(SendResult.SENT, c.sendPrivateMessage("anna", "bela", "hello"));
+        assertEquals(new StoreEvent.MessageAdded(priv, 0), privEvents.get(1));
+
+        //leiratkozás után csend
+        groupSub.close();
+        assertEquals(0, bus.subscriberCount(gid));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "még"));
+        assertEquals(3, groupEvents.size());
+    }
+
+    @Test
+    void testMessageEventStreams() throws Exception {
+        cleanup();
+        AppController c = new AppController();
+        for (String n : List.of("tesztElek", "anna", "bela")) {
+            assertEquals(RegistrationResult.SUCCESS, c.registerUser(n, "x"));
+        }
+        assertTrue(c.sendFriendRequest("anna", "bela"));
+        assertTrue(c.acceptFriendRequest("bela", "anna"));
+        UUID gid = c.createGroup("Folyam", "tesztElek");
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "korábbi"));
+
+        //csak a feliratkozás utáni események, sorszámmal és tartalommal
+        BlockingQueue<MessageEvent> group = new LinkedBlockingQueue<>();
+        Flow.Subscription[] groupSub = new Flow.Subscription[1];
+        c.groupMessageEvents(gid).subscribe(collector(group, groupSub, Long.MAX_VALUE));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "új"));
+        MessageEvent.Added added = (MessageEvent.Added) group.poll(5, TimeUnit.SECONDS);
+        assertNotNull(added);
+        assertEquals(1, added.seq());
+        assertEquals("új", added.message().getContent());
+        assertTrue(c.deleteGroupMessage(gid, added.message().getId(), "tesztElek"));
+        assertEquals(new MessageEvent.Deleted(gid, added.message().getId()), group.poll(5, TimeUnit.SECONDS));
+
+        //postaláda: a saját üzenet kimarad, az új csoport tagság után a csoport is benne van
+        BlockingQueue<MessageEvent> inbox = new LinkedBlockingQueue<>();
+        c.inboxEvents("bela").subscribe(collector(inbox, new Flow.Subscription[1], Long.MAX_VALUE));
+        assertEquals(SendResult.SENT, c.sendPrivateMessage("bela", "anna", "saját"));
+        assertEquals(SendResult.SENT, c.sendPrivateMessage("anna", "bela", "neked"));
+        assertTrue(c.addGroupMember(gid, "bela", "Résztvevő"));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "mindenkinek"));
+        assertEquals("neked", ((MessageEvent.Added) inbox.poll(5, TimeUnit.SECONDS)).message().getContent());
+        assertEquals("mindenkinek", ((MessageEvent.Added) inbox.poll(5, TimeUnit.SECONDS)).message().getContent());
+        assertEquals("mindenkinek", ((MessageEvent.Added) group.poll(5, TimeUnit.SECONDS)).message().getContent());
+
+        //kérés nélküli feliratkozó nem tartja fel a küldőt; a túlcsorduló rész helyén hézag jelzés
+        BlockingQueue<MessageEvent> slow = new LinkedBlockingQueue<>();
+        Flow.Subscription[] slowSub = new Flow.Subscription[1];
+        c.privateMessageEvents("anna", "bela", 4).subscribe(collector(slow, slowSub, 0));
+        for (int i = 0; i < 6; i++) {
+            assertEquals(SendResult.SENT, c.sendPrivateMessage("anna", "bela", "sok " + i));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (slowSub[0] == null && System.nanoTime() < deadline) Thread.sleep(1);
+        assertTrue(slow.isEmpty());
+        slowSub[0].request(10);
+        assertEquals(new MessageEvent.FellBehind(4), slow.poll(5, TimeUnit.SECONDS));
+        assertEquals("sok 4", ((MessageEvent.Added) slow.poll(5, TimeUnit.SECONDS)).message().getContent());
+        assertEquals("sok 5", ((MessageEvent.Added) slow.poll(5, TimeUnit.SECONDS)).message().getContent());
+
+        //lemondás után nincs több esemény és a busz feliratkozás is megszűnik
+        slowSub[0].cancel();
+        groupSub[0].cancel();
+        assertEquals(1, c.getEventBus().subscriberCount(gid));
+        assertEquals(SendResult.SENT, c.sendGroupMessage(gid, "tesztElek", "vége"));
+        assertNull(group.poll(100, TimeUnit.MILLISECONDS));
+
+        //érvénytelen kérés: a hiba a kézbesítő körben érkezik, nem a kérő hívásán belül
+        BlockingQueue<Boolean> errors = new LinkedBlockingQueue<>();
+        AtomicInteger requesting = new AtomicInteger();
+        c.groupMessageEvents(gid).subscribe(new Flow.Subscriber<MessageEvent>() {
+            @Override public void onSubscribe(Flow.Subscription s) {
+                requesting.incrementAndGet();
+                s.request(0);
+                requesting.decrementAndGet();
+            }
+            @Override public void onNext(MessageEvent item) { }
+            @Override public void onError(Throwable t) {
+                errors.add(t instanceof IllegalArgumentException && requesting.get() == 0);
+            }
+            @Override public void onComplete() { }
+        });
+        assertEquals(Boolean.TRUE, errors.poll(5, TimeUnit.SECONDS));
+        assertNull(errors.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    //sorba gyűjtő feliratkozó, feliratkozáskor a megadott mennyiséget kéri
+    private static Flow.Subscriber<MessageEvent> collector(BlockingQueue<MessageEvent> out, Flow.Subscription[] sub, long initial) {
+        return new Flow.Subscriber<>() {
+            @Override public void onSubscribe(Flow.Subscription s) {
+                sub[0] = s;
+                if (initial > 0) s.request(initial);
+            }
+            @Override public void onNext(MessageEvent item) { out.add(item); }
+            @Override public void onError(Throwable t) { t.printStackTrace(); }
+            @Override public void onComplete() { }
+        };
+    }
 }